@@ -0,0 +1,81 @@
+package uk.gov.ida.verifyserviceprovider.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.saml.saml2.core.Assertion;
+import uk.gov.ida.verifyserviceprovider.benchmarks.TranslateResponseFixture.TranslationPath;
+import uk.gov.ida.verifyserviceprovider.services.AssertionClassifier;
+import uk.gov.ida.verifyserviceprovider.services.AssertionClassifier.AssertionType;
+import uk.gov.ida.verifyserviceprovider.services.ClassifiedAssertions;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static uk.gov.ida.saml.core.test.TestEntityIds.STUB_COUNTRY_ONE;
+
+/**
+ * Compares classifying the decrypted assertions of a non-matching response the way the
+ * translation path used to (a country lookup per assertion, then one groupingBy for the
+ * authn assertion and another for the matching dataset assertion) with the single pass
+ * done by AssertionClassifier#classifyAssertions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AssertionClassificationBenchmark {
+
+    @Param({"NON_MATCHING_IDP", "EIDAS"})
+    public TranslationPath path;
+
+    private final AssertionClassifier assertionClassifier = new AssertionClassifier();
+    private final List<String> countryEntityIds = ImmutableList.of(STUB_COUNTRY_ONE, "http://another-country.example.com");
+    private List<Assertion> assertions;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        TranslateResponseFixture fixture = TranslateResponseFixture.create(path);
+        assertions = fixture.decrypt(fixture.validateSignature(fixture.parse()));
+    }
+
+    @Benchmark
+    public Object repeatedClassification() {
+        boolean isCountryAttributeQuery = assertions.stream()
+                .anyMatch(assertion -> countryEntityIds.contains(assertion.getIssuer().getValue()));
+        if (isCountryAttributeQuery) {
+            return assertions.get(0);
+        }
+
+        Map<AssertionType, List<Assertion>> authnAssertionMap = assertions.stream()
+                .collect(Collectors.groupingBy(assertionClassifier::classifyAssertion));
+        Map<AssertionType, List<Assertion>> mdsAssertionMap = assertions.stream()
+                .collect(Collectors.groupingBy(assertionClassifier::classifyAssertion));
+        return new Assertion[]{
+                authnAssertionMap.get(AssertionType.AUTHN_ASSERTION).get(0),
+                mdsAssertionMap.get(AssertionType.MDS_ASSERTION).get(0)
+        };
+    }
+
+    @Benchmark
+    public ClassifiedAssertions singlePassClassification() {
+        Set<String> countryIssuers = new HashSet<>(countryEntityIds);
+        return assertionClassifier.classifyAssertions(assertions, countryIssuers::contains);
+    }
+}
@@ -0,0 +1,97 @@
+package uk.gov.ida.verifyserviceprovider.benchmarks;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.core.AttributeStatement;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.saml.core.test.builders.AddressAttributeBuilder_1_1;
+import uk.gov.ida.saml.core.test.builders.AddressAttributeValueBuilder_1_1;
+import uk.gov.ida.saml.core.test.builders.AttributeStatementBuilder;
+import uk.gov.ida.saml.core.test.builders.SimpleStringAttributeBuilder;
+import uk.gov.ida.verifyserviceprovider.dto.Attributes;
+import uk.gov.ida.verifyserviceprovider.services.AttributeTranslationService;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static common.uk.gov.ida.verifyserviceprovider.utils.SamlResponseHelper.createVerifiedAttribute;
+import static uk.gov.ida.saml.core.test.builders.AttributeStatementBuilder.anAttributeStatement;
+
+/**
+ * Translates the attribute statement of an MSA ACCOUNT_CREATION assertion carrying every
+ * user account creation attribute, with an address history of the given length.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AttributeTranslationBenchmark {
+
+    @Param({"1", "5"})
+    public int addressHistoryLength;
+
+    private AttributeStatement attributeStatement;
+
+    @Setup
+    public void setUp() {
+        IdaSamlBootstrap.bootstrap();
+
+        Attribute currentAddress = new AddressAttributeBuilder_1_1()
+                .addAddress(address("10 Whitechapel High St", DateTime.parse("2017-07-03")).build())
+                .buildCurrentAddress();
+        currentAddress.setName("currentaddress");
+
+        AddressAttributeBuilder_1_1 addressHistoryBuilder = new AddressAttributeBuilder_1_1();
+        for (int i = 0; i < addressHistoryLength; i++) {
+            addressHistoryBuilder.addAddress(address(i + " Old Road", DateTime.parse("2010-01-01").plusYears(i)).build());
+        }
+        Attribute addressHistory = addressHistoryBuilder.buildPreviousAddress();
+        addressHistory.setName("addresshistory");
+
+        AttributeStatementBuilder builder = anAttributeStatement()
+                .addAttribute(stringAttribute("firstname", "Joe"))
+                .addAttribute(createVerifiedAttribute("firstname_verified", true))
+                .addAttribute(stringAttribute("middlename", "Bob"))
+                .addAttribute(createVerifiedAttribute("middlename_verified", false))
+                .addAttribute(stringAttribute("surname", "Bloggs"))
+                .addAttribute(createVerifiedAttribute("surname_verified", true))
+                .addAttribute(stringAttribute("dateofbirth", "1977-07-21"))
+                .addAttribute(createVerifiedAttribute("dateofbirth_verified", true))
+                .addAttribute(currentAddress)
+                .addAttribute(createVerifiedAttribute("currentaddress_verified", true))
+                .addAttribute(addressHistory)
+                .addAttribute(stringAttribute("cycle_3", "123456"));
+        attributeStatement = builder.build();
+    }
+
+    @Benchmark
+    public Attributes translateAttributes() {
+        return AttributeTranslationService.translateAttributes(attributeStatement);
+    }
+
+    private static Attribute stringAttribute(String name, String value) {
+        return new SimpleStringAttributeBuilder().withName(name).withSimpleStringValue(value).build();
+    }
+
+    private static AddressAttributeValueBuilder_1_1 address(String firstLine, DateTime from) {
+        return new AddressAttributeValueBuilder_1_1()
+                .addLines(Arrays.asList(firstLine, "London"))
+                .withPostcode("E1 8DX")
+                .withFrom(from)
+                .withTo(from.plusYears(1))
+                .withVerified(true);
+    }
+}
@@ -0,0 +1,104 @@
+package uk.gov.ida.verifyserviceprovider.benchmarks;
+
+import org.apache.commons.codec.binary.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.opensaml.security.credential.BasicCredential;
+import org.opensaml.security.crypto.KeySupport;
+import org.opensaml.xmlsec.algorithm.descriptors.DigestSHA256;
+import org.opensaml.xmlsec.algorithm.descriptors.SignatureRSASHA256;
+import org.opensaml.xmlsec.signature.Signature;
+import uk.gov.ida.common.shared.security.PrivateKeyFactory;
+import uk.gov.ida.common.shared.security.PublicKeyFactory;
+import uk.gov.ida.common.shared.security.X509CertificateFactory;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.saml.security.EncryptionCredentialResolver;
+import uk.gov.ida.saml.security.IdaKeyStore;
+import uk.gov.ida.saml.security.IdaKeyStoreCredentialRetriever;
+import uk.gov.ida.saml.security.SignatureFactory;
+import uk.gov.ida.shared.utils.manifest.ManifestReader;
+import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
+import uk.gov.ida.verifyserviceprovider.factories.EncrypterFactory;
+import uk.gov.ida.verifyserviceprovider.factories.saml.AuthnRequestFactory;
+
+import java.net.URI;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.HUB_TEST_PUBLIC_ENCRYPTION_CERT;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PRIVATE_SIGNING_KEY;
+
+/**
+ * Compares building the SignatureFactory for every AuthnRequest, as AuthnRequestFactory
+ * used to, with reusing one per signing key, and measures a whole AuthnRequest build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AuthnRequestSignatureBenchmark {
+
+    private static final String HUB_ENTITY_ID = "hub-entity-id";
+
+    private KeyPair signingKeyPair;
+    private SignatureFactory signatureFactory;
+    private AuthnRequestFactory authnRequestFactory;
+
+    @Setup
+    public void setUp() throws Exception {
+        IdaSamlBootstrap.bootstrap();
+        PrivateKey privateKey = new PrivateKeyFactory().createPrivateKey(Base64.decodeBase64(TEST_RP_PRIVATE_SIGNING_KEY));
+        signingKeyPair = new KeyPair(KeySupport.derivePublicKey(privateKey), privateKey);
+        signatureFactory = createSignatureFactory(signingKeyPair);
+
+        EncryptionCredentialResolver encryptionCredentialResolver = mock(EncryptionCredentialResolver.class);
+        when(encryptionCredentialResolver.getEncryptingCredential(HUB_ENTITY_ID)).thenReturn(
+                new BasicCredential(new PublicKeyFactory(new X509CertificateFactory()).createPublicKey(HUB_TEST_PUBLIC_ENCRYPTION_CERT))
+        );
+        ManifestReader manifestReader = mock(ManifestReader.class);
+        when(manifestReader.getAttributeValueFor(any(), any())).thenReturn("benchmark");
+
+        authnRequestFactory = new AuthnRequestFactory(
+                URI.create("http://example.com/SAML2/SSO"),
+                signingKeyPair,
+                manifestReader,
+                new EncrypterFactory(encryptionCredentialResolver, HUB_ENTITY_ID, () -> HUB_ENTITY_ID)
+        );
+    }
+
+    @Benchmark
+    public Signature createSignaturePerRequest() {
+        return createSignatureFactory(signingKeyPair).createSignature();
+    }
+
+    @Benchmark
+    public Signature createSignatureFromCachedFactory() {
+        return signatureFactory.createSignature();
+    }
+
+    @Benchmark
+    public AuthnRequest buildAuthnRequest() {
+        return authnRequestFactory.build(LevelOfAssurance.LEVEL_2, "http://service-entity-id");
+    }
+
+    private static SignatureFactory createSignatureFactory(KeyPair keyPair) {
+        IdaKeyStore keyStore = new IdaKeyStore(keyPair, Collections.emptyList());
+        return new SignatureFactory(new IdaKeyStoreCredentialRetriever(keyStore), new SignatureRSASHA256(), new DigestSHA256());
+    }
+}
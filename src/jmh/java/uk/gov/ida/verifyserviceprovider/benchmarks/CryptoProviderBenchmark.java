@@ -0,0 +1,146 @@
+package uk.gov.ida.verifyserviceprovider.benchmarks;
+
+import org.apache.commons.codec.binary.Base64;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.security.crypto.KeySupport;
+import uk.gov.ida.common.shared.security.PrivateKeyFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PRIVATE_ENCRYPTION_KEY;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PRIVATE_SIGNING_KEY;
+
+/**
+ * Compares the JVM's default JCE providers (SunJCE for ciphers, SunRsaSign for signatures) with
+ * BouncyCastle for the operations behind translating a response and generating an AuthnRequest,
+ * using the test RP keys, which are the same size as the keys the VSP is given.
+ *
+ * The algorithms are the JCE names that can be pinned with crypto.preferredProviders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CryptoProviderBenchmark {
+
+    private static final String RSA_OAEP = "RSA/ECB/OAEPWithSHA1AndMGF1Padding";
+    private static final String AES_GCM = "AES/GCM/NoPadding";
+    private static final String AES_CBC = "AES/CBC/ISO10126Padding";
+    private static final String RSA_SHA256 = "SHA256withRSA";
+    private static final int ASSERTION_SIZE = 8 * 1024;
+
+    @Param({"default", "BC"})
+    public String provider;
+
+    private Provider cipherProvider;
+    private Provider signatureProvider;
+    private PrivateKey encryptionKey;
+    private PrivateKey signingKey;
+    private PublicKey signingPublicKey;
+    private byte[] wrappedKey;
+    private SecretKey assertionKey;
+    private byte[] iv;
+    private byte[] gcmCiphertext;
+    private byte[] cbcCiphertext;
+    private byte[] signedContent;
+    private byte[] signature;
+
+    @Setup
+    public void setUp() throws Exception {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        cipherProvider = Security.getProvider("default".equals(provider) ? "SunJCE" : provider);
+        signatureProvider = Security.getProvider("default".equals(provider) ? "SunRsaSign" : provider);
+
+        PrivateKeyFactory privateKeyFactory = new PrivateKeyFactory();
+        encryptionKey = privateKeyFactory.createPrivateKey(Base64.decodeBase64(TEST_RP_PRIVATE_ENCRYPTION_KEY));
+        signingKey = privateKeyFactory.createPrivateKey(Base64.decodeBase64(TEST_RP_PRIVATE_SIGNING_KEY));
+        signingPublicKey = KeySupport.derivePublicKey(signingKey);
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+        assertionKey = keyGenerator.generateKey();
+        Cipher wrapper = Cipher.getInstance(RSA_OAEP, "SunJCE");
+        wrapper.init(Cipher.WRAP_MODE, KeySupport.derivePublicKey(encryptionKey));
+        wrappedKey = wrapper.wrap(assertionKey);
+
+        SecureRandom random = new SecureRandom();
+        byte[] assertion = new byte[ASSERTION_SIZE];
+        random.nextBytes(assertion);
+        iv = new byte[16];
+        random.nextBytes(iv);
+        Cipher gcm = Cipher.getInstance(AES_GCM, "SunJCE");
+        gcm.init(Cipher.ENCRYPT_MODE, assertionKey, new GCMParameterSpec(128, iv, 0, 12));
+        gcmCiphertext = gcm.doFinal(assertion);
+        Cipher cbc = Cipher.getInstance(AES_CBC, "SunJCE");
+        cbc.init(Cipher.ENCRYPT_MODE, assertionKey, new IvParameterSpec(iv));
+        cbcCiphertext = cbc.doFinal(assertion);
+
+        signedContent = new byte[2 * 1024];
+        random.nextBytes(signedContent);
+        signature = rsaSha256Sign();
+    }
+
+    @Benchmark
+    public Key rsaOaepUnwrap() throws Exception {
+        Cipher cipher = Cipher.getInstance(RSA_OAEP, cipherProvider);
+        cipher.init(Cipher.UNWRAP_MODE, encryptionKey);
+        return cipher.unwrap(wrappedKey, "AES", Cipher.SECRET_KEY);
+    }
+
+    @Benchmark
+    public byte[] aesGcmDecrypt() throws Exception {
+        Cipher cipher = Cipher.getInstance(AES_GCM, cipherProvider);
+        cipher.init(Cipher.DECRYPT_MODE, assertionKey, new GCMParameterSpec(128, iv, 0, 12));
+        return cipher.doFinal(gcmCiphertext);
+    }
+
+    @Benchmark
+    public byte[] aesCbcDecrypt() throws Exception {
+        Cipher cipher = Cipher.getInstance(AES_CBC, cipherProvider);
+        cipher.init(Cipher.DECRYPT_MODE, assertionKey, new IvParameterSpec(iv));
+        return cipher.doFinal(cbcCiphertext);
+    }
+
+    @Benchmark
+    public byte[] rsaSha256Sign() throws Exception {
+        Signature signer = Signature.getInstance(RSA_SHA256, signatureProvider);
+        signer.initSign(signingKey);
+        signer.update(signedContent);
+        return signer.sign();
+    }
+
+    @Benchmark
+    public boolean rsaSha256Verify() throws Exception {
+        Signature verifier = Signature.getInstance(RSA_SHA256, signatureProvider);
+        verifier.initVerify(signingPublicKey);
+        verifier.update(signedContent);
+        return verifier.verify(signature);
+    }
+}
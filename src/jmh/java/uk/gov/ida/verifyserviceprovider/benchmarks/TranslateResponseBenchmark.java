@@ -0,0 +1,46 @@
+package uk.gov.ida.verifyserviceprovider.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.gov.ida.verifyserviceprovider.benchmarks.TranslateResponseFixture.TranslationPath;
+import uk.gov.ida.verifyserviceprovider.dto.TranslatedResponseBody;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the whole of ResponseService#convertTranslatedResponseBody, i.e. what
+ * /translate-response does once the request body has been deserialised.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TranslateResponseBenchmark {
+
+    @Param({"MATCHING", "ACCOUNT_CREATION", "NON_MATCHING_IDP", "EIDAS"})
+    public TranslationPath path;
+
+    private TranslateResponseFixture fixture;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        fixture = TranslateResponseFixture.create(path);
+    }
+
+    @Benchmark
+    public TranslatedResponseBody translateResponse() {
+        return fixture.translate();
+    }
+}
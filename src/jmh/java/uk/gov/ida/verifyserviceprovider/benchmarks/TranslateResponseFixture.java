@@ -0,0 +1,352 @@
+package uk.gov.ida.verifyserviceprovider.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.EncryptedAssertion;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.core.Subject;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.crypto.KeySupport;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.saml.core.extensions.IdaAuthnContext;
+import uk.gov.ida.saml.core.test.PrivateKeyStoreFactory;
+import uk.gov.ida.saml.core.test.TestCredentialFactory;
+import uk.gov.ida.saml.core.test.TestEntityIds;
+import uk.gov.ida.saml.core.test.builders.SimpleStringAttributeBuilder;
+import uk.gov.ida.saml.metadata.factories.MetadataSignatureTrustEngineFactory;
+import uk.gov.ida.saml.security.AssertionDecrypter;
+import uk.gov.ida.saml.security.MetadataBackedSignatureValidator;
+import uk.gov.ida.saml.security.SamlMessageSignatureValidator;
+import uk.gov.ida.saml.security.validators.ValidatedResponse;
+import uk.gov.ida.saml.security.validators.signature.SamlResponseSignatureValidator;
+import uk.gov.ida.saml.serializers.XmlObjectToBase64EncodedStringTransformer;
+import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
+import uk.gov.ida.verifyserviceprovider.dto.TranslatedResponseBody;
+import uk.gov.ida.verifyserviceprovider.factories.saml.ResponseFactory;
+import uk.gov.ida.verifyserviceprovider.factories.saml.SignatureValidatorFactory;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryIssuers;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryMetadataRepository;
+import uk.gov.ida.verifyserviceprovider.saml.InstrumentedParserPool;
+import uk.gov.ida.verifyserviceprovider.services.AssertionService;
+import uk.gov.ida.verifyserviceprovider.services.ClassifyingAssertionService;
+import uk.gov.ida.verifyserviceprovider.services.EidasAssertionService;
+import uk.gov.ida.verifyserviceprovider.services.IdpAssertionService;
+import uk.gov.ida.verifyserviceprovider.services.ResponseService;
+import uk.gov.ida.verifyserviceprovider.utils.DateTimeComparator;
+import uk.gov.ida.verifyserviceprovider.validators.InstantValidator;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static common.uk.gov.ida.verifyserviceprovider.utils.SamlResponseHelper.createVerifiedAttribute;
+import static java.util.Collections.singletonList;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.HUB_TEST_PRIVATE_SIGNING_KEY;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.HUB_TEST_PUBLIC_SIGNING_CERT;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.STUB_COUNTRY_PUBLIC_PRIMARY_CERT;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.STUB_IDP_PUBLIC_PRIMARY_CERT;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.STUB_IDP_PUBLIC_PRIMARY_PRIVATE_KEY;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_MS_PRIVATE_SIGNING_KEY;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_MS_PUBLIC_SIGNING_CERT;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PRIVATE_ENCRYPTION_KEY;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PUBLIC_ENCRYPTION_CERT;
+import static uk.gov.ida.saml.core.test.TestEntityIds.HUB_ENTITY_ID;
+import static uk.gov.ida.saml.core.test.TestEntityIds.STUB_COUNTRY_ONE;
+import static uk.gov.ida.saml.core.test.TestEntityIds.STUB_IDP_ONE;
+import static uk.gov.ida.saml.core.test.TestEntityIds.TEST_RP;
+import static uk.gov.ida.saml.core.test.TestEntityIds.TEST_RP_MS;
+import static uk.gov.ida.saml.core.test.builders.AssertionBuilder.anAssertion;
+import static uk.gov.ida.saml.core.test.builders.AttributeStatementBuilder.anAttributeStatement;
+import static uk.gov.ida.saml.core.test.builders.AudienceRestrictionBuilder.anAudienceRestriction;
+import static uk.gov.ida.saml.core.test.builders.AuthnContextBuilder.anAuthnContext;
+import static uk.gov.ida.saml.core.test.builders.AuthnContextClassRefBuilder.anAuthnContextClassRef;
+import static uk.gov.ida.saml.core.test.builders.AuthnStatementBuilder.anAuthnStatement;
+import static uk.gov.ida.saml.core.test.builders.ConditionsBuilder.aConditions;
+import static uk.gov.ida.saml.core.test.builders.IPAddressAttributeBuilder.anIPAddress;
+import static uk.gov.ida.saml.core.test.builders.IssuerBuilder.anIssuer;
+import static uk.gov.ida.saml.core.test.builders.NameIdBuilder.aNameId;
+import static uk.gov.ida.saml.core.test.builders.ResponseBuilder.aResponse;
+import static uk.gov.ida.saml.core.test.builders.SignatureBuilder.aSignature;
+import static uk.gov.ida.saml.core.test.builders.SubjectBuilder.aSubject;
+import static uk.gov.ida.saml.core.test.builders.SubjectConfirmationBuilder.aSubjectConfirmation;
+import static uk.gov.ida.saml.core.test.builders.SubjectConfirmationDataBuilder.aSubjectConfirmationData;
+import static uk.gov.ida.saml.core.test.builders.metadata.EntityDescriptorBuilder.anEntityDescriptor;
+import static uk.gov.ida.saml.core.test.builders.metadata.IdpSsoDescriptorBuilder.anIdpSsoDescriptor;
+import static uk.gov.ida.saml.core.test.builders.metadata.KeyDescriptorBuilder.aKeyDescriptor;
+import static uk.gov.ida.saml.core.test.builders.metadata.SPSSODescriptorBuilder.anSpServiceDescriptor;
+import static uk.gov.ida.verifyserviceprovider.builders.AssertionHelper.anEidasEncryptedAssertion;
+import static uk.gov.ida.verifyserviceprovider.builders.AssertionHelper.anEidasSignature;
+
+/**
+ * Builds the collaborators of the /translate-response pipeline for one path, together with
+ * a freshly signed and encrypted response for it, so benchmarks can drive either the whole
+ * pipeline or a single stage of it.
+ *
+ * Responses are only valid for a few minutes (see InstantValidator), so benchmarks should
+ * create a new fixture per iteration rather than per trial.
+ */
+public class TranslateResponseFixture {
+
+    public enum TranslationPath {MATCHING, ACCOUNT_CREATION, NON_MATCHING_IDP, EIDAS}
+
+    private static final String SERVICE_ENTITY_ID = TEST_RP;
+    private static final String PID = "some-pid";
+    private static final DateTimeComparator DATE_TIME_COMPARATOR = new DateTimeComparator(Duration.standardSeconds(30));
+    private static final XmlObjectToBase64EncodedStringTransformer<XMLObject> TO_BASE64 = new XmlObjectToBase64EncodedStringTransformer<>();
+    private static final Credential ENCRYPTING_CREDENTIAL = new TestCredentialFactory(TEST_RP_PUBLIC_ENCRYPTION_CERT, TEST_RP_PRIVATE_ENCRYPTION_KEY).getEncryptingCredential();
+    private static final Credential HUB_SIGNING_CREDENTIAL = new TestCredentialFactory(HUB_TEST_PUBLIC_SIGNING_CERT, HUB_TEST_PRIVATE_SIGNING_KEY).getSigningCredential();
+
+    public final Function<String, Response> stringToResponseTransformer;
+    public final SamlResponseSignatureValidator responseSignatureValidator;
+    public final AssertionDecrypter assertionDecrypter;
+    public final AssertionService<? extends TranslatedResponseBody> assertionService;
+    public final ResponseService<? extends TranslatedResponseBody> responseService;
+
+    public final String samlResponse;
+    public final String requestId;
+    public final LevelOfAssurance levelOfAssurance = LevelOfAssurance.LEVEL_1;
+    public final String entityId = SERVICE_ENTITY_ID;
+
+    private TranslateResponseFixture(
+            ResponseFactory responseFactory,
+            ExplicitKeySignatureTrustEngine hubSignatureTrustEngine,
+            AssertionService<? extends TranslatedResponseBody> assertionService,
+            String requestId,
+            Response response
+    ) {
+        this.stringToResponseTransformer = ResponseFactory.createStringToResponseTransformer(new InstrumentedParserPool(
+                ResponseFactory.PARSER_POOL_NAME,
+                InstrumentedParserPool.DEFAULT_MAX_POOL_SIZE,
+                new MetricRegistry()
+        ));
+        this.responseSignatureValidator = new SamlResponseSignatureValidator(new SamlMessageSignatureValidator(
+                MetadataBackedSignatureValidator.withoutCertificateChainValidation(hubSignatureTrustEngine)
+        ));
+        this.assertionDecrypter = responseFactory.createAssertionDecrypter();
+        this.assertionService = assertionService;
+        this.responseService = new ResponseService<>(
+                stringToResponseTransformer,
+                assertionDecrypter,
+                assertionService,
+                responseSignatureValidator,
+                new InstantValidator(DATE_TIME_COMPARATOR)
+        );
+        this.requestId = requestId;
+        this.samlResponse = TO_BASE64.apply(response);
+    }
+
+    public static TranslateResponseFixture create(TranslationPath path) throws Exception {
+        IdaSamlBootstrap.bootstrap();
+
+        PrivateKey privateKey = new PrivateKeyStoreFactory().create(TestEntityIds.TEST_RP).getEncryptionPrivateKeys().get(0);
+        ResponseFactory responseFactory = new ResponseFactory(singletonList(new KeyPair(KeySupport.derivePublicKey(privateKey), privateKey)));
+        ExplicitKeySignatureTrustEngine hubSignatureTrustEngine = hubSignatureTrustEngine();
+        String requestId = "_" + UUID.randomUUID();
+
+        switch (path) {
+            case MATCHING:
+                return new TranslateResponseFixture(responseFactory, hubSignatureTrustEngine, msaAssertionService(responseFactory), requestId,
+                        aHubResponse(requestId, singletonList(anMsaAssertion(requestId, false))));
+            case ACCOUNT_CREATION:
+                return new TranslateResponseFixture(responseFactory, hubSignatureTrustEngine, msaAssertionService(responseFactory), requestId,
+                        aHubResponse(requestId, singletonList(anMsaAssertion(requestId, true))));
+            case NON_MATCHING_IDP:
+                return new TranslateResponseFixture(responseFactory, hubSignatureTrustEngine, classifyingAssertionService(responseFactory, hubSignatureTrustEngine), requestId,
+                        aHubResponse(requestId, ImmutableList.of(anIdpAuthnAssertion(requestId), anIdpMatchingDatasetAssertion(requestId))));
+            case EIDAS:
+                return new TranslateResponseFixture(responseFactory, hubSignatureTrustEngine, classifyingAssertionService(responseFactory, hubSignatureTrustEngine), requestId,
+                        aHubResponse(requestId, singletonList(anEidasEncryptedAssertion(requestId, STUB_COUNTRY_ONE, anEidasSignature()))));
+            default:
+                throw new IllegalArgumentException("Unknown translation path " + path);
+        }
+    }
+
+    public TranslatedResponseBody translate() {
+        return responseService.convertTranslatedResponseBody(samlResponse, requestId, levelOfAssurance, entityId);
+    }
+
+    public Response parse() {
+        return stringToResponseTransformer.apply(samlResponse);
+    }
+
+    public ValidatedResponse validateSignature(Response response) {
+        return responseSignatureValidator.validate(response, SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+    }
+
+    public List<Assertion> decrypt(ValidatedResponse validatedResponse) {
+        return assertionDecrypter.decryptAssertions(validatedResponse);
+    }
+
+    public TranslatedResponseBody translateAssertions(List<Assertion> assertions) {
+        return assertionService.translateSuccessResponse(assertions, requestId, levelOfAssurance, entityId);
+    }
+
+    private static AssertionService<? extends TranslatedResponseBody> msaAssertionService(ResponseFactory responseFactory) throws Exception {
+        ExplicitKeySignatureTrustEngine msaSignatureTrustEngine = signatureTrustEngineFor(anEntityDescriptor()
+                .withEntityId(TEST_RP_MS)
+                .withIdpSsoDescriptor(anIdpSsoDescriptor()
+                        .withoutDefaultSigningKey()
+                        .addKeyDescriptor(aKeyDescriptor().withX509ForSigning(TEST_RP_MS_PUBLIC_SIGNING_CERT).build())
+                        .build())
+                .setAddDefaultSpServiceDescriptor(false)
+                .build());
+        return responseFactory.createMsaAssertionService(msaSignatureTrustEngine, new SignatureValidatorFactory(), DATE_TIME_COMPARATOR);
+    }
+
+    private static AssertionService<? extends TranslatedResponseBody> classifyingAssertionService(
+            ResponseFactory responseFactory,
+            ExplicitKeySignatureTrustEngine hubSignatureTrustEngine
+    ) throws Exception {
+        IdpAssertionService idpAssertionService = responseFactory.createIdpAssertionService(
+                hubSignatureTrustEngine,
+                new SignatureValidatorFactory(),
+                DATE_TIME_COMPARATOR,
+                SERVICE_ENTITY_ID
+        );
+        EidasCountryMetadataRepository eidasMetadataRepository = eidasMetadataRepository();
+        EidasCountryIssuers eidasCountryIssuers = new EidasCountryIssuers(eidasMetadataRepository::getResolverEntityIds, new MetricRegistry());
+        eidasCountryIssuers.refresh();
+        EidasAssertionService eidasAssertionService = responseFactory.createEidasAssertionService(
+                true,
+                DATE_TIME_COMPARATOR,
+                () -> Optional.of(eidasMetadataRepository),
+                eidasCountryIssuers
+        );
+        return new ClassifyingAssertionService(idpAssertionService, eidasAssertionService);
+    }
+
+    private static EidasCountryMetadataRepository eidasMetadataRepository() throws Exception {
+        ExplicitKeySignatureTrustEngine countrySignatureTrustEngine = signatureTrustEngineFor(anEntityDescriptor()
+                .withEntityId(STUB_COUNTRY_ONE)
+                .withIdpSsoDescriptor(anIdpSsoDescriptor()
+                        .withoutDefaultSigningKey()
+                        .addKeyDescriptor(aKeyDescriptor().withX509ForSigning(STUB_COUNTRY_PUBLIC_PRIMARY_CERT).build())
+                        .build())
+                .setAddDefaultSpServiceDescriptor(false)
+                .build());
+
+        EidasCountryMetadataRepository repository = mock(EidasCountryMetadataRepository.class);
+        when(repository.getResolverEntityIds()).thenReturn(singletonList(STUB_COUNTRY_ONE));
+        when(repository.getSignatureTrustEngine(STUB_COUNTRY_ONE)).thenReturn(Optional.of(countrySignatureTrustEngine));
+        return repository;
+    }
+
+    private static ExplicitKeySignatureTrustEngine hubSignatureTrustEngine() throws Exception {
+        return signatureTrustEngineFor(anEntityDescriptor()
+                .withEntityId(HUB_ENTITY_ID)
+                .addSpServiceDescriptor(anSpServiceDescriptor()
+                        .withoutDefaultSigningKey()
+                        .addKeyDescriptor(aKeyDescriptor().withX509ForSigning(HUB_TEST_PUBLIC_SIGNING_CERT).build())
+                        .build())
+                .withIdpSsoDescriptor(anIdpSsoDescriptor()
+                        .withoutDefaultSigningKey()
+                        .addKeyDescriptor(aKeyDescriptor().withX509ForSigning(STUB_IDP_PUBLIC_PRIMARY_CERT).build())
+                        .build())
+                .build());
+    }
+
+    private static ExplicitKeySignatureTrustEngine signatureTrustEngineFor(EntityDescriptor entityDescriptor) throws Exception {
+        MetadataResolver metadataResolver = mock(MetadataResolver.class);
+        when(metadataResolver.resolve(any())).thenReturn(ImmutableList.of(entityDescriptor));
+        return new MetadataSignatureTrustEngineFactory().createSignatureTrustEngine(metadataResolver);
+    }
+
+    private static Response aHubResponse(String requestId, List<EncryptedAssertion> encryptedAssertions) throws Exception {
+        uk.gov.ida.saml.core.test.builders.ResponseBuilder responseBuilder = aResponse()
+                .withId("_" + UUID.randomUUID())
+                .withInResponseTo(requestId)
+                .withIssuer(anIssuer().withIssuerId(HUB_ENTITY_ID).build())
+                .withNoDefaultAssertion()
+                .withSigningCredential(HUB_SIGNING_CREDENTIAL);
+        encryptedAssertions.forEach(responseBuilder::addEncryptedAssertion);
+        return responseBuilder.build();
+    }
+
+    private static EncryptedAssertion anMsaAssertion(String requestId, boolean accountCreation) {
+        uk.gov.ida.saml.core.test.builders.AssertionBuilder assertionBuilder = anAssertion()
+                .withIssuer(anIssuer().withIssuerId(TEST_RP_MS).build())
+                .withSubject(aSubjectFor(requestId))
+                .withConditions(aConditions()
+                        .withoutDefaultAudienceRestriction()
+                        .addAudienceRestriction(anAudienceRestriction().withAudienceId(SERVICE_ENTITY_ID).build())
+                        .build())
+                .addAuthnStatement(anAuthnStatementAtLevel2())
+                .withSignature(aSignatureFrom(TEST_RP_MS_PUBLIC_SIGNING_CERT, TEST_RP_MS_PRIVATE_SIGNING_KEY));
+        if (accountCreation) {
+            assertionBuilder.addAttributeStatement(anAttributeStatement()
+                    .addAttribute(new SimpleStringAttributeBuilder().withName("firstname").withSimpleStringValue("Bob").build())
+                    .addAttribute(createVerifiedAttribute("firstname_verified", true))
+                    .addAttribute(new SimpleStringAttributeBuilder().withName("surname").withSimpleStringValue("Smith").build())
+                    .addAttribute(createVerifiedAttribute("surname_verified", true))
+                    .addAttribute(new SimpleStringAttributeBuilder().withName("dateofbirth").withSimpleStringValue("1970-01-01").build())
+                    .addAttribute(createVerifiedAttribute("dateofbirth_verified", true))
+                    .addAttribute(new SimpleStringAttributeBuilder().withName("cycle_3").withSimpleStringValue("cycle-3-value").build())
+                    .build());
+        }
+        return assertionBuilder.buildWithEncrypterCredential(ENCRYPTING_CREDENTIAL);
+    }
+
+    private static EncryptedAssertion anIdpAuthnAssertion(String requestId) {
+        return anAssertion()
+                .withIssuer(anIssuer().withIssuerId(STUB_IDP_ONE).build())
+                .withSubject(aSubjectFor(requestId))
+                .withConditions(aConditions().build())
+                .addAuthnStatement(anAuthnStatementAtLevel2())
+                .addAttributeStatement(anAttributeStatement().addAttribute(anIPAddress().build()).build())
+                .withSignature(aSignatureFrom(STUB_IDP_PUBLIC_PRIMARY_CERT, STUB_IDP_PUBLIC_PRIMARY_PRIVATE_KEY))
+                .buildWithEncrypterCredential(ENCRYPTING_CREDENTIAL);
+    }
+
+    private static EncryptedAssertion anIdpMatchingDatasetAssertion(String requestId) {
+        return anAssertion()
+                .withIssuer(anIssuer().withIssuerId(STUB_IDP_ONE).build())
+                .withSubject(aSubjectFor(requestId))
+                .withConditions(aConditions().build())
+                .addAttributeStatement(anAttributeStatement().build())
+                .withSignature(aSignatureFrom(STUB_IDP_PUBLIC_PRIMARY_CERT, STUB_IDP_PUBLIC_PRIMARY_PRIVATE_KEY))
+                .buildWithEncrypterCredential(ENCRYPTING_CREDENTIAL);
+    }
+
+    private static Subject aSubjectFor(String requestId) {
+        return aSubject()
+                .withNameId(aNameId().withValue(PID).build())
+                .withSubjectConfirmation(aSubjectConfirmation()
+                        .withSubjectConfirmationData(aSubjectConfirmationData()
+                                .withInResponseTo(requestId)
+                                .withNotOnOrAfter(DateTime.now().plusMinutes(15))
+                                .build())
+                        .build())
+                .build();
+    }
+
+    private static org.opensaml.saml.saml2.core.AuthnStatement anAuthnStatementAtLevel2() {
+        return anAuthnStatement()
+                .withAuthnContext(anAuthnContext()
+                        .withAuthnContextClassRef(anAuthnContextClassRef()
+                                .withAuthnContextClasRefValue(IdaAuthnContext.LEVEL_2_AUTHN_CTX)
+                                .build())
+                        .build())
+                .build();
+    }
+
+    private static Signature aSignatureFrom(String publicCert, String privateKey) {
+        return aSignature()
+                .withSigningCredential(new TestCredentialFactory(publicCert, privateKey).getSigningCredential())
+                .build();
+    }
+}
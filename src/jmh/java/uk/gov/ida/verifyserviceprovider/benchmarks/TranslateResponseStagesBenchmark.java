@@ -0,0 +1,71 @@
+package uk.gov.ida.verifyserviceprovider.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Response;
+import uk.gov.ida.saml.security.validators.ValidatedResponse;
+import uk.gov.ida.verifyserviceprovider.benchmarks.TranslateResponseFixture.TranslationPath;
+import uk.gov.ida.verifyserviceprovider.dto.TranslatedResponseBody;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each stage of the /translate-response pipeline in isolation, feeding every
+ * stage the output of the previous one as produced during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TranslateResponseStagesBenchmark {
+
+    @Param({"MATCHING", "NON_MATCHING_IDP", "EIDAS"})
+    public TranslationPath path;
+
+    private TranslateResponseFixture fixture;
+    private Response response;
+    private ValidatedResponse validatedResponse;
+    private List<Assertion> assertions;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        fixture = TranslateResponseFixture.create(path);
+        response = fixture.parse();
+        validatedResponse = fixture.validateSignature(response);
+        assertions = fixture.decrypt(validatedResponse);
+    }
+
+    @Benchmark
+    public Response parseResponse() {
+        return fixture.parse();
+    }
+
+    @Benchmark
+    public ValidatedResponse validateResponseSignature() {
+        return fixture.validateSignature(response);
+    }
+
+    @Benchmark
+    public List<Assertion> decryptAssertions() {
+        return fixture.decrypt(validatedResponse);
+    }
+
+    @Benchmark
+    public TranslatedResponseBody translateAssertions() {
+        return fixture.translateAssertions(assertions);
+    }
+}
@@ -0,0 +1,59 @@
+package uk.gov.ida.verifyserviceprovider.benchmarks;
+
+import org.apache.commons.codec.binary.Hex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.gov.ida.saml.core.domain.AuthnContext;
+import uk.gov.ida.verifyserviceprovider.factories.saml.UserIdHashFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares UserIdHashFactory with the MessageFormat and per-call MessageDigest
+ * implementation it replaced. Run with -prof gc to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UserIdHashFactoryBenchmark {
+
+    private static final String ISSUER_ENTITY_ID = "http://stub-idp-one.local/SSO/POST";
+    private static final String HASHING_ENTITY_ID = "http://verify-service-provider";
+    private static final String PERSISTENT_ID = "UjhvVzZNR1VLZm5qZXV6WlR5MlV6R3NqR2JQRk16cHpCbk1yRmNGd2xjOD0";
+
+    @Param({"LEVEL_1", "LEVEL_2"})
+    public AuthnContext authnContext;
+
+    private final UserIdHashFactory userIdHashFactory = new UserIdHashFactory(HASHING_ENTITY_ID);
+
+    @Benchmark
+    public String hashId() {
+        return userIdHashFactory.hashId(ISSUER_ENTITY_ID, PERSISTENT_ID, Optional.of(authnContext));
+    }
+
+    @Benchmark
+    public String hashIdWithMessageFormat() throws NoSuchAlgorithmException {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        String toHash = authnContext.equals(AuthnContext.LEVEL_2)
+                ? MessageFormat.format("{0}{1}{2}", ISSUER_ENTITY_ID, HASHING_ENTITY_ID, PERSISTENT_ID)
+                : MessageFormat.format("{0}{1}{2}{3}", ISSUER_ENTITY_ID, HASHING_ENTITY_ID, PERSISTENT_ID, authnContext.name());
+        messageDigest.update(toHash.getBytes(StandardCharsets.UTF_8));
+        return Hex.encodeHexString(messageDigest.digest());
+    }
+}
@@ -0,0 +1,35 @@
+package uk.gov.ida.verifyserviceprovider.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+public class AdmissionControlConfiguration {
+
+    @JsonProperty
+    private boolean enabled = false;
+
+    @NotNull
+    @Valid
+    @JsonProperty
+    private Duration targetDelay = Duration.milliseconds(100);
+
+    @NotNull
+    @Valid
+    @JsonProperty
+    private Duration interval = Duration.milliseconds(500);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Duration getTargetDelay() {
+        return targetDelay;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+}
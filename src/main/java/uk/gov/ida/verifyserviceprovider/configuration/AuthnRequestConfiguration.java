@@ -0,0 +1,47 @@
+package uk.gov.ida.verifyserviceprovider.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+public class AuthnRequestConfiguration {
+
+    @Min(0)
+    @JsonProperty
+    private int preEncryptedVersionsPoolSize = 0;
+
+    @NotNull
+    @Valid
+    @JsonProperty
+    private Duration preEncryptedVersionsRefreshInterval = Duration.minutes(1);
+
+    @JsonProperty
+    private String signingKeyFile;
+
+    @NotNull
+    @Valid
+    @JsonProperty
+    private Duration signingKeyFileCheckInterval = Duration.seconds(30);
+
+    public int getPreEncryptedVersionsPoolSize() {
+        return preEncryptedVersionsPoolSize;
+    }
+
+    public Duration getPreEncryptedVersionsRefreshInterval() {
+        return preEncryptedVersionsRefreshInterval;
+    }
+
+    public Optional<Path> getSigningKeyFile() {
+        return Optional.ofNullable(signingKeyFile).map(Paths::get);
+    }
+
+    public Duration getSigningKeyFileCheckInterval() {
+        return signingKeyFileCheckInterval;
+    }
+}
@@ -0,0 +1,16 @@
+package uk.gov.ida.verifyserviceprovider.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+public class BatchConfiguration {
+
+    @Min(1)
+    @JsonProperty
+    private int maxBatchSize = 500;
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+}
@@ -0,0 +1,18 @@
+package uk.gov.ida.verifyserviceprovider.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.NotNull;
+import java.util.Collections;
+import java.util.Map;
+
+public class CryptoConfiguration {
+
+    @NotNull
+    @JsonProperty
+    private Map<String, String> preferredProviders = Collections.emptyMap();
+
+    public Map<String, String> getPreferredProviders() {
+        return preferredProviders;
+    }
+}
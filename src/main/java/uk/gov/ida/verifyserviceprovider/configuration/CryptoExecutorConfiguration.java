@@ -0,0 +1,24 @@
+package uk.gov.ida.verifyserviceprovider.configuration;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+public class CryptoExecutorConfiguration {
+
+    @Min(1)
+    @JsonProperty
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Min(1)
+    @JsonProperty
+    private int maxQueueSize = 1000;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+}
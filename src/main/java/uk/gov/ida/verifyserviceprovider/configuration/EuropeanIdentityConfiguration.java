@@ -1,10 +1,15 @@
 package uk.gov.ida.verifyserviceprovider.configuration;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
 import uk.gov.ida.saml.metadata.EidasMetadataConfiguration;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
 
 public class EuropeanIdentityConfiguration {
 
@@ -22,6 +27,25 @@ public class EuropeanIdentityConfiguration {
     @JsonProperty
     private EidasMetadataConfiguration aggregatedMetadata;
 
+    @Min(1)
+    @JsonProperty
+    private int metadataRefreshThreads = 2;
+
+    @NotNull
+    @JsonProperty
+    private Duration metadataRefreshJitter = Duration.seconds(30);
+
+    @NotNull
+    @JsonProperty
+    private Duration trustAnchorRefreshInterval = Duration.hours(1);
+
+    @NotNull
+    @JsonProperty
+    private Duration countryMetadataLoadTimeout = Duration.seconds(30);
+
+    @JsonProperty
+    private String metadataCacheDirectory;
+
     public String getHubConnectorEntityId() {
         return hubConnectorEntityId;
     }
@@ -30,6 +54,26 @@ public class EuropeanIdentityConfiguration {
         return aggregatedMetadata;
     }
 
+    public int getMetadataRefreshThreads() {
+        return metadataRefreshThreads;
+    }
+
+    public Duration getMetadataRefreshJitter() {
+        return metadataRefreshJitter;
+    }
+
+    public Duration getTrustAnchorRefreshInterval() {
+        return trustAnchorRefreshInterval;
+    }
+
+    public Duration getCountryMetadataLoadTimeout() {
+        return countryMetadataLoadTimeout;
+    }
+
+    public Optional<Path> getMetadataCacheDirectory() {
+        return Optional.ofNullable(metadataCacheDirectory).map(Paths::get);
+    }
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -30,7 +30,7 @@ public class PrivateKeyDeserializer extends JsonDeserializer<PrivateKey> {
         }
     }
 
-    private PrivateKey createPrivateKey(byte[] cert) throws NoSuchAlgorithmException, InvalidKeySpecException {
+    public static PrivateKey createPrivateKey(byte[] cert) throws NoSuchAlgorithmException, InvalidKeySpecException {
         KeySpec keySpec = new PKCS8EncodedKeySpec(cert);
         KeyFactory keyFactory;
 
@@ -29,6 +29,36 @@ public class VerifyServiceProviderConfiguration extends Configuration {
     private Duration clockSkew;
     private Optional<EuropeanIdentityConfiguration> europeanIdentity;
 
+    @NotNull
+    @Valid
+    @JsonProperty
+    private AuthnRequestConfiguration authnRequest = new AuthnRequestConfiguration();
+
+    @NotNull
+    @Valid
+    @JsonProperty
+    private BatchConfiguration batch = new BatchConfiguration();
+
+    @NotNull
+    @Valid
+    @JsonProperty
+    private CryptoConfiguration crypto = new CryptoConfiguration();
+
+    @NotNull
+    @Valid
+    @JsonProperty
+    private ReplayDetectionConfiguration replayDetection = new ReplayDetectionConfiguration();
+
+    @NotNull
+    @Valid
+    @JsonProperty
+    private CryptoExecutorConfiguration cryptoExecutor = new CryptoExecutorConfiguration();
+
+    @NotNull
+    @Valid
+    @JsonProperty
+    private AdmissionControlConfiguration admissionControl = new AdmissionControlConfiguration();
+
     @JsonCreator
     public VerifyServiceProviderConfiguration(
         @JsonProperty("serviceEntityIds") @NotNull @Size(min = 1, message = NOT_EMPTY_MESSAGE) @Valid List<String> serviceEntityIds,
@@ -97,4 +127,28 @@ public class VerifyServiceProviderConfiguration extends Configuration {
     public Optional<EuropeanIdentityConfiguration> getEuropeanIdentity() {
         return europeanIdentity;
     }
+
+    public AuthnRequestConfiguration getAuthnRequest() {
+        return authnRequest;
+    }
+
+    public BatchConfiguration getBatch() {
+        return batch;
+    }
+
+    public CryptoConfiguration getCrypto() {
+        return crypto;
+    }
+
+    public ReplayDetectionConfiguration getReplayDetection() {
+        return replayDetection;
+    }
+
+    public CryptoExecutorConfiguration getCryptoExecutor() {
+        return cryptoExecutor;
+    }
+
+    public AdmissionControlConfiguration getAdmissionControl() {
+        return admissionControl;
+    }
 }
@@ -0,0 +1,42 @@
+package uk.gov.ida.verifyserviceprovider.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.dropwizard.jersey.errors.ErrorMessage;
+
+/**
+ * The outcome of translating one item of a /translate-responses batch: either the
+ * translated response or the error that the item would have got from /translate-response.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TranslateSamlResponseResult<T extends TranslatedResponseBody> {
+
+    private final String requestId;
+    private final T translatedResponse;
+    private final ErrorMessage error;
+
+    private TranslateSamlResponseResult(String requestId, T translatedResponse, ErrorMessage error) {
+        this.requestId = requestId;
+        this.translatedResponse = translatedResponse;
+        this.error = error;
+    }
+
+    public static <T extends TranslatedResponseBody> TranslateSamlResponseResult<T> success(String requestId, T translatedResponse) {
+        return new TranslateSamlResponseResult<>(requestId, translatedResponse, null);
+    }
+
+    public static <T extends TranslatedResponseBody> TranslateSamlResponseResult<T> error(String requestId, ErrorMessage error) {
+        return new TranslateSamlResponseResult<>(requestId, null, error);
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public T getTranslatedResponse() {
+        return translatedResponse;
+    }
+
+    public ErrorMessage getError() {
+        return error;
+    }
+}
@@ -5,4 +5,8 @@ public class SamlResponseValidationException extends RuntimeException {
     public SamlResponseValidationException(String message) {
         super(message);
     }
+
+    public SamlResponseValidationException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
@@ -0,0 +1,55 @@
+package uk.gov.ida.verifyserviceprovider.exceptions;
+
+import io.dropwizard.jersey.errors.ErrorMessage;
+import io.dropwizard.jersey.errors.LoggingExceptionMapper;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+
+/**
+ * The error responses a failed translation gets, shared by /translate-response and
+ * /translate-responses so that an item in a batch fails exactly as it would on its own.
+ *
+ * Exceptions that are not a translation failure are mapped as Jersey would map them for
+ * /translate-response: with InvalidEntityIdExceptionMapper, or otherwise with Dropwizard's
+ * LoggingExceptionMapper, which logs the exception against the ID it reports.
+ */
+public class TranslationErrorResponses {
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(TranslationErrorResponses.class);
+
+    private static final InvalidEntityIdExceptionMapper invalidEntityIdExceptionMapper = new InvalidEntityIdExceptionMapper();
+    private static final ExceptionMapper<Throwable> unexpectedExceptionMapper = new LoggingExceptionMapper<Throwable>() {};
+
+    private TranslationErrorResponses() {
+    }
+
+    /**
+     * For a response that could not be translated, a SamlResponseValidationException or
+     * SamlTransformationErrorException.
+     */
+    public static Response translationFailed(String entityId, String requestId, RuntimeException e) {
+        LOG.warn(String.format("Error translating saml response for entityId: %s, requestId: %s, got Message: %s", entityId, requestId, e.getMessage()));
+        return Response
+            .status(BAD_REQUEST)
+            .entity(new ErrorMessage(BAD_REQUEST.getStatusCode(), e.getMessage()))
+            .build();
+    }
+
+    public static Response toResponse(Throwable e) {
+        if (e instanceof InvalidEntityIdException) {
+            return invalidEntityIdExceptionMapper.toResponse((InvalidEntityIdException) e);
+        }
+        return unexpectedExceptionMapper.toResponse(e);
+    }
+
+    public static ErrorMessage errorMessageOf(Response response) {
+        if (response.getEntity() instanceof ErrorMessage) {
+            return (ErrorMessage) response.getEntity();
+        }
+        return new ErrorMessage(response.getStatus(), response.getStatusInfo().getReasonPhrase());
+    }
+}
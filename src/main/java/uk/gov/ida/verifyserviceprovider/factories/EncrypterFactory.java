@@ -1,21 +1,108 @@
 package uk.gov.ida.verifyserviceprovider.factories;
 
+import com.google.common.collect.MapMaker;
 import org.opensaml.saml.saml2.encryption.Encrypter;
 import org.opensaml.security.credential.Credential;
 import uk.gov.ida.saml.security.EncryptionCredentialResolver;
 
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Creates Encrypters for the hub's encryption credential.
+ *
+ * The credential is only resolved from metadata again once the metadata has been refreshed,
+ * and Encrypters handed back with releaseEncrypter are reused for as long as the hub keeps
+ * the same encryption key. Each call to Encrypter#encrypt still generates a fresh data
+ * encryption key, so reusing them does not make the encrypted output linkable.
+ *
+ * The credential each Encrypter was created for is only weakly held, so an Encrypter that is
+ * never released is simply garbage collected rather than remembered for ever. Idle Encrypters
+ * are pooled together with that credential, which stays the same object for as long as the
+ * hub's key does, and are only handed out again if it is still the current one; checking on
+ * release alone would let an Encrypter released just as the key changed back into the pool.
+ */
 public class EncrypterFactory extends uk.gov.ida.saml.security.EncrypterFactory {
 
     private final EncryptionCredentialResolver encryptionCredentialResolver;
     private final String hubEntityId;
+    private final Supplier<Object> metadataGeneration;
+    private final Queue<IdleEncrypter> idleEncrypters = new ConcurrentLinkedQueue<>();
+    private final Map<Encrypter, Credential> issuedEncrypters = new MapMaker().weakKeys().makeMap();
+    private volatile CachedCredential cachedCredential;
 
-    public EncrypterFactory(EncryptionCredentialResolver encryptionCredentialResolver, String hubEntityId) {
+    public EncrypterFactory(EncryptionCredentialResolver encryptionCredentialResolver, String hubEntityId, Supplier<Object> metadataGeneration) {
         this.encryptionCredentialResolver = encryptionCredentialResolver;
         this.hubEntityId = hubEntityId;
+        this.metadataGeneration = metadataGeneration;
     }
 
     public Encrypter createEncrypter() {
+        Credential credential = getEncryptingCredential();
+        Encrypter encrypter = takeIdleEncrypter(credential);
+        if (encrypter == null) {
+            encrypter = super.createEncrypter(credential);
+        }
+        issuedEncrypters.put(encrypter, credential);
+        return encrypter;
+    }
+
+    public void releaseEncrypter(Encrypter encrypter) {
+        Credential credential = issuedEncrypters.remove(encrypter);
+        CachedCredential current = cachedCredential;
+        if (credential != null && current != null && credential == current.credential) {
+            idleEncrypters.offer(new IdleEncrypter(encrypter, credential));
+        }
+    }
+
+    public Credential getEncryptingCredential() {
+        Object generation = metadataGeneration.get();
+        CachedCredential cached = cachedCredential;
+        if (cached != null && Objects.equals(cached.generation, generation)) {
+            return cached.credential;
+        }
+
         Credential credential = encryptionCredentialResolver.getEncryptingCredential(hubEntityId);
-        return super.createEncrypter(credential);
+        if (cached != null && Objects.equals(cached.credential.getPublicKey(), credential.getPublicKey())) {
+            credential = cached.credential;
+        } else {
+            idleEncrypters.clear();
+        }
+        cachedCredential = new CachedCredential(generation, credential);
+        return credential;
+    }
+
+    private Encrypter takeIdleEncrypter(Credential credential) {
+        IdleEncrypter idle;
+        while ((idle = idleEncrypters.poll()) != null) {
+            if (idle.credential == credential) {
+                return idle.encrypter;
+            }
+            // created for a key the hub has since replaced, so drop it
+        }
+        return null;
+    }
+
+    private static class CachedCredential {
+        private final Object generation;
+        private final Credential credential;
+
+        private CachedCredential(Object generation, Credential credential) {
+            this.generation = generation;
+            this.credential = credential;
+        }
+    }
+
+    private static class IdleEncrypter {
+        private final Encrypter encrypter;
+        private final Credential credential;
+
+        private IdleEncrypter(Encrypter encrypter, Credential credential) {
+            this.encrypter = encrypter;
+            this.credential = credential;
+        }
     }
 }
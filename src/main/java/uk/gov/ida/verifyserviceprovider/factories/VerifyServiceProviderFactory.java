@@ -1,46 +1,93 @@
 package uk.gov.ida.verifyserviceprovider.factories;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.servlets.HealthCheckServlet;
+import com.nimbusds.jose.jwk.JWK;
+import io.dropwizard.server.AbstractServerFactory;
+import io.dropwizard.server.ServerFactory;
+import io.dropwizard.setup.Environment;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import org.opensaml.saml.metadata.resolver.filter.impl.MetadataFilterChain;
 import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
 import org.opensaml.saml.security.impl.MetadataCredentialResolver;
 import org.opensaml.security.crypto.KeySupport;
 import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import uk.gov.ida.saml.metadata.EidasMetadataConfiguration;
-import uk.gov.ida.saml.metadata.EidasMetadataResolverRepository;
 import uk.gov.ida.saml.metadata.EidasTrustAnchorResolver;
+import uk.gov.ida.saml.metadata.ExpiredCertificateMetadataFilter;
 import uk.gov.ida.saml.metadata.MetadataResolverConfigBuilder;
+import uk.gov.ida.saml.metadata.MetadataResolverConfiguration;
+import uk.gov.ida.saml.metadata.PKIXSignatureValidationFilterProvider;
 import uk.gov.ida.saml.metadata.bundle.MetadataResolverBundle;
-import uk.gov.ida.saml.metadata.factories.DropwizardMetadataResolverFactory;
 import uk.gov.ida.saml.metadata.factories.MetadataSignatureTrustEngineFactory;
 import uk.gov.ida.saml.security.MetadataBackedEncryptionCredentialResolver;
 import uk.gov.ida.shared.utils.manifest.ManifestReader;
+import uk.gov.ida.verifyserviceprovider.configuration.AdmissionControlConfiguration;
+import uk.gov.ida.verifyserviceprovider.configuration.AuthnRequestConfiguration;
+import uk.gov.ida.verifyserviceprovider.configuration.CryptoExecutorConfiguration;
 import uk.gov.ida.verifyserviceprovider.configuration.EuropeanIdentityConfiguration;
+import uk.gov.ida.verifyserviceprovider.configuration.ReplayDetectionConfiguration;
 import uk.gov.ida.verifyserviceprovider.configuration.VerifyServiceProviderConfiguration;
 import uk.gov.ida.verifyserviceprovider.dto.TranslatedMatchingResponseBody;
 import uk.gov.ida.verifyserviceprovider.dto.TranslatedNonMatchingResponseBody;
+import uk.gov.ida.verifyserviceprovider.dto.TranslatedResponseBody;
 import uk.gov.ida.verifyserviceprovider.factories.saml.AuthnRequestFactory;
+import uk.gov.ida.verifyserviceprovider.factories.saml.FileSigningKeyProvider;
+import uk.gov.ida.verifyserviceprovider.factories.saml.PreEncryptedVersionsPool;
 import uk.gov.ida.verifyserviceprovider.factories.saml.ResponseFactory;
 import uk.gov.ida.verifyserviceprovider.factories.saml.SignatureValidatorFactory;
+import uk.gov.ida.verifyserviceprovider.factories.saml.SigningKeyProvider;
+import uk.gov.ida.verifyserviceprovider.factories.saml.StaticSigningKeyProvider;
+import uk.gov.ida.verifyserviceprovider.factories.saml.VersionsAttributeFactory;
+import uk.gov.ida.verifyserviceprovider.resources.BatchGenerateAuthnRequestResource;
+import uk.gov.ida.verifyserviceprovider.resources.BatchTranslateSamlResponseResource;
 import uk.gov.ida.verifyserviceprovider.resources.GenerateAuthnRequestResource;
 import uk.gov.ida.verifyserviceprovider.resources.TranslateSamlResponseResource;
 import uk.gov.ida.verifyserviceprovider.resources.VersionNumberResource;
+import uk.gov.ida.verifyserviceprovider.saml.CachingCredentialResolver;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryIssuers;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryMetadataRepository;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryMetadataResolver;
+import uk.gov.ida.verifyserviceprovider.saml.EidasMetadataLoader;
+import uk.gov.ida.verifyserviceprovider.saml.InstrumentedParserPool;
+import uk.gov.ida.verifyserviceprovider.saml.MetadataDiskCache;
+import uk.gov.ida.verifyserviceprovider.saml.MetadataRefreshScheduler;
+import uk.gov.ida.verifyserviceprovider.saml.PersistentMetadataCacheFilter;
+import uk.gov.ida.verifyserviceprovider.services.AuthnRequestService;
 import uk.gov.ida.verifyserviceprovider.services.ClassifyingAssertionService;
 import uk.gov.ida.verifyserviceprovider.services.EidasAssertionService;
 import uk.gov.ida.verifyserviceprovider.services.EntityIdService;
 import uk.gov.ida.verifyserviceprovider.services.IdpAssertionService;
 import uk.gov.ida.verifyserviceprovider.services.ResponseService;
+import uk.gov.ida.verifyserviceprovider.utils.AdmissionController;
+import uk.gov.ida.verifyserviceprovider.utils.CryptoExecutor;
 import uk.gov.ida.verifyserviceprovider.utils.DateTimeComparator;
+import uk.gov.ida.verifyserviceprovider.validators.ReplayCache;
+import uk.gov.ida.verifyserviceprovider.validators.ReplayValidator;
 import javax.ws.rs.client.Client;
+import java.nio.file.Path;
 import java.security.KeyException;
 import java.security.KeyPair;
 import java.security.PrivateKey;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.Timer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 
 public class VerifyServiceProviderFactory {
 
+    private static final Logger LOG = LoggerFactory.getLogger(VerifyServiceProviderFactory.class);
+
     private final VerifyServiceProviderConfiguration configuration;
     private final ResponseFactory responseFactory;
 
@@ -50,14 +97,30 @@ public class VerifyServiceProviderFactory {
     private final MetadataResolverBundle<VerifyServiceProviderConfiguration> msaMetadataBundle;
     private final ManifestReader manifestReader;
     private final Client client;
+    private final Environment environment;
+    private final MetricRegistry metricRegistry;
+    private ExplicitKeySignatureTrustEngine hubSignatureTrustEngine;
+    private ExplicitKeySignatureTrustEngine msaSignatureTrustEngine;
+    private AuthnRequestService authnRequestService;
+    private CryptoExecutor cryptoExecutor;
+    private ResponseService<? extends TranslatedResponseBody> responseService;
+    private Supplier<Optional<EidasCountryMetadataRepository>> eidasMetadataRepository;
+    private EidasCountryIssuers eidasCountryIssuers;
 
     public VerifyServiceProviderFactory(
             VerifyServiceProviderConfiguration configuration,
             MetadataResolverBundle<VerifyServiceProviderConfiguration> verifyMetadataBundler,
             MetadataResolverBundle<VerifyServiceProviderConfiguration> msaMetadataBundle,
-            Client client) throws KeyException {
+            Client client,
+            Environment environment) throws KeyException {
         this.configuration = configuration;
-        this.responseFactory = new ResponseFactory(getDecryptionKeyPairs(configuration.getSamlPrimaryEncryptionKey(), configuration.getSamlSecondaryEncryptionKey()));
+        this.environment = environment;
+        this.metricRegistry = environment.metrics();
+        this.responseFactory = new ResponseFactory(
+                getDecryptionKeyPairs(configuration.getSamlPrimaryEncryptionKey(), configuration.getSamlSecondaryEncryptionKey()),
+                metricRegistry,
+                new InstrumentedParserPool(ResponseFactory.PARSER_POOL_NAME, getMaxRequestThreads(configuration), metricRegistry)
+        );
         this.dateTimeComparator = new DateTimeComparator(configuration.getClockSkew());
         this.entityIdService = new EntityIdService(configuration.getServiceEntityIds());
         this.verifyMetadataBundler = verifyMetadataBundler;
@@ -78,44 +141,151 @@ public class VerifyServiceProviderFactory {
         return new KeyPair(KeySupport.derivePublicKey(key), key);
     }
 
+    private static int getMaxRequestThreads(VerifyServiceProviderConfiguration configuration) {
+        ServerFactory serverFactory = configuration.getServerFactory();
+        if (serverFactory instanceof AbstractServerFactory) {
+            return ((AbstractServerFactory) serverFactory).getMaxThreads();
+        }
+        return InstrumentedParserPool.DEFAULT_MAX_POOL_SIZE;
+    }
+
     public GenerateAuthnRequestResource getGenerateAuthnRequestResource() throws Exception {
-        MetadataCredentialResolver metadataCredentialResolver = getHubMetadataCredentialResolver();
-        MetadataBackedEncryptionCredentialResolver encryptionCredentialResolver = new MetadataBackedEncryptionCredentialResolver(metadataCredentialResolver, SPSSODescriptor.DEFAULT_ELEMENT_NAME);
-        EncrypterFactory encrypterFactory = new EncrypterFactory(encryptionCredentialResolver, configuration.getVerifyHubMetadata().getExpectedEntityId());
+        return new GenerateAuthnRequestResource(getAuthnRequestService(), getCryptoExecutor());
+    }
 
-        PrivateKey signingKey = configuration.getSamlSigningKey();
+    public BatchGenerateAuthnRequestResource getBatchGenerateAuthnRequestResource() throws Exception {
+        return new BatchGenerateAuthnRequestResource(
+            getAuthnRequestService(),
+            getCryptoExecutor(),
+            configuration.getBatch().getMaxBatchSize()
+        );
+    }
+
+    private AuthnRequestService getAuthnRequestService() throws Exception {
+        if (authnRequestService == null) {
+            MetadataCredentialResolver metadataCredentialResolver = getHubMetadataCredentialResolver();
+            MetadataBackedEncryptionCredentialResolver encryptionCredentialResolver = new MetadataBackedEncryptionCredentialResolver(metadataCredentialResolver, SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+            EncrypterFactory encrypterFactory = new EncrypterFactory(
+                    encryptionCredentialResolver,
+                    configuration.getVerifyHubMetadata().getExpectedEntityId(),
+                    CachingCredentialResolver.metadataGeneration(verifyMetadataBundler.getMetadataResolver())
+            );
+
+            AuthnRequestFactory authnRequestFactory = new AuthnRequestFactory(
+                    configuration.getHubSsoLocation(),
+                    getSigningKeyProvider(),
+                    manifestReader, encrypterFactory,
+                    getPreEncryptedVersionsPool(encrypterFactory)
+            );
 
-        AuthnRequestFactory authnRequestFactory = new AuthnRequestFactory(
+            authnRequestService = new AuthnRequestService(
+                authnRequestFactory,
                 configuration.getHubSsoLocation(),
-                createKeyPair(signingKey),
-                manifestReader, encrypterFactory
+                entityIdService
+            );
+        }
+        return authnRequestService;
+    }
+
+    private CryptoExecutor getCryptoExecutor() {
+        if (cryptoExecutor == null) {
+            CryptoExecutorConfiguration cryptoExecutorConfiguration = configuration.getCryptoExecutor();
+            BlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<>(cryptoExecutorConfiguration.getMaxQueueSize());
+            ExecutorService executorService = environment.lifecycle().executorService("crypto-%d")
+                    .minThreads(cryptoExecutorConfiguration.getThreads())
+                    .maxThreads(cryptoExecutorConfiguration.getThreads())
+                    .workQueue(workQueue)
+                    .build();
+            cryptoExecutor = new CryptoExecutor(executorService, workQueue, getAdmissionController(cryptoExecutorConfiguration.getThreads()), metricRegistry);
+        }
+        return cryptoExecutor;
+    }
+
+    private AdmissionController getAdmissionController(int threads) {
+        AdmissionControlConfiguration admissionControlConfiguration = configuration.getAdmissionControl();
+        if (!admissionControlConfiguration.isEnabled()) {
+            return AdmissionController.disabled();
+        }
+        return new AdmissionController(
+                admissionControlConfiguration.getTargetDelay().toMilliseconds(),
+                admissionControlConfiguration.getInterval().toMilliseconds(),
+                TimeUnit.MILLISECONDS,
+                threads,
+                metricRegistry
         );
+    }
+
+    private SigningKeyProvider getSigningKeyProvider() throws KeyException {
+        AuthnRequestConfiguration authnRequestConfiguration = configuration.getAuthnRequest();
+        if (authnRequestConfiguration.getSigningKeyFile().isPresent()) {
+            Path signingKeyFile = authnRequestConfiguration.getSigningKeyFile().get();
+            FileSigningKeyProvider fileSigningKeyProvider = new FileSigningKeyProvider(
+                    signingKeyFile,
+                    authnRequestConfiguration.getSigningKeyFileCheckInterval()
+            );
+            // samlSigningKey is still required, so say which of the two keys AuthnRequests are signed with
+            if (Arrays.equals(fileSigningKeyProvider.getSigningKeyPair().getPrivate().getEncoded(), configuration.getSamlSigningKey().getEncoded())) {
+                LOG.info("Signing AuthnRequests with the key in {}, which is the same as samlSigningKey", signingKeyFile);
+            } else {
+                LOG.warn("Signing AuthnRequests with the key in {}, which takes precedence over the different samlSigningKey", signingKeyFile);
+            }
+            return fileSigningKeyProvider;
+        }
+        return new StaticSigningKeyProvider(createKeyPair(configuration.getSamlSigningKey()));
+    }
+
+    private Optional<PreEncryptedVersionsPool> getPreEncryptedVersionsPool(EncrypterFactory encrypterFactory) {
+        AuthnRequestConfiguration authnRequestConfiguration = configuration.getAuthnRequest();
+        if (authnRequestConfiguration.getPreEncryptedVersionsPoolSize() == 0) {
+            return Optional.empty();
+        }
 
-        return new GenerateAuthnRequestResource(
-            authnRequestFactory,
-            configuration.getHubSsoLocation(),
-            entityIdService
+        PreEncryptedVersionsPool preEncryptedVersionsPool = new PreEncryptedVersionsPool(
+                encrypterFactory,
+                new VersionsAttributeFactory(manifestReader)::createVersionsAttribute,
+                authnRequestConfiguration.getPreEncryptedVersionsPoolSize(),
+                authnRequestConfiguration.getPreEncryptedVersionsRefreshInterval(),
+                environment.lifecycle().scheduledExecutorService("pre-encrypted-versions-%d").threads(1).build(),
+                metricRegistry
         );
+        environment.lifecycle().manage(preEncryptedVersionsPool);
+        return Optional.of(preEncryptedVersionsPool);
     }
 
     public TranslateSamlResponseResource getTranslateSamlResponseResource() {
-        if(configuration.getMsaMetadata().isPresent()) {
-            return getTranslateMatchingSamlResponseResource();
-        } else{
-            return getTranslateNonMatchingSamlResponseResource();
+        return new TranslateSamlResponseResource<>(getResponseService(), entityIdService, getCryptoExecutor());
+    }
+
+    public BatchTranslateSamlResponseResource getBatchTranslateSamlResponseResource() {
+        return new BatchTranslateSamlResponseResource<>(
+                getResponseService(),
+                entityIdService,
+                getCryptoExecutor(),
+                configuration.getBatch().getMaxBatchSize()
+        );
+    }
+
+    private ResponseService<? extends TranslatedResponseBody> getResponseService() {
+        if (responseService == null) {
+            if(configuration.getMsaMetadata().isPresent()) {
+                responseService = getMatchingResponseService();
+            } else{
+                responseService = getNonMatchingResponseService();
+            }
         }
+        return responseService;
     }
 
-    private TranslateSamlResponseResource<TranslatedMatchingResponseBody> getTranslateMatchingSamlResponseResource() {
-        ResponseService<TranslatedMatchingResponseBody> matchingResponseService = responseFactory.createMatchingResponseService(
+    private ResponseService<TranslatedMatchingResponseBody> getMatchingResponseService() {
+        return responseFactory.createMatchingResponseService(
                 getHubSignatureTrustEngine(),
                 responseFactory.createMsaAssertionService(getMsaSignatureTrustEngine(), new SignatureValidatorFactory(), dateTimeComparator),
-                dateTimeComparator
+                dateTimeComparator,
+                getReplayValidator()
         );
-        return new TranslateSamlResponseResource<>(matchingResponseService, entityIdService);
     }
 
-    private TranslateSamlResponseResource<TranslatedNonMatchingResponseBody> getTranslateNonMatchingSamlResponseResource() {
+    private ResponseService<TranslatedNonMatchingResponseBody> getNonMatchingResponseService() {
         IdpAssertionService idpAssertionService = responseFactory.createIdpAssertionService(
                 getHubSignatureTrustEngine(),
                 new SignatureValidatorFactory(),
@@ -126,16 +296,24 @@ public class VerifyServiceProviderFactory {
         EidasAssertionService eidasAssertionService = responseFactory.createEidasAssertionService(
                 isEidasEnabled(),
                 dateTimeComparator,
-                getEidasMetadataResolverRepository()
+                getEidasMetadataRepository(),
+                getEidasCountryIssuers()
+        );
+
+        return responseFactory.createNonMatchingResponseService(
+                getHubSignatureTrustEngine(),
+                new ClassifyingAssertionService(idpAssertionService, eidasAssertionService, metricRegistry),
+                dateTimeComparator,
+                getReplayValidator()
         );
+    }
 
-        return new TranslateSamlResponseResource<>(
-                responseFactory.createNonMatchingResponseService(
-                        getHubSignatureTrustEngine(),
-                        new ClassifyingAssertionService(idpAssertionService, eidasAssertionService),
-                        dateTimeComparator
-                ),
-                entityIdService);
+    private ReplayValidator getReplayValidator() {
+        ReplayDetectionConfiguration replayDetection = configuration.getReplayDetection();
+        if (!replayDetection.isEnabled()) {
+            return ReplayValidator.disabled();
+        }
+        return new ReplayValidator(new ReplayCache(replayDetection.getMaxEntries(), metricRegistry), configuration.getClockSkew());
     }
 
     public VersionNumberResource getVersionNumberResource() {
@@ -143,7 +321,15 @@ public class VerifyServiceProviderFactory {
     }
 
     private ExplicitKeySignatureTrustEngine getHubSignatureTrustEngine() {
-        return verifyMetadataBundler.getSignatureTrustEngine();
+        if (hubSignatureTrustEngine == null) {
+            hubSignatureTrustEngine = CachingCredentialResolver.cachingSignatureTrustEngine(
+                    verifyMetadataBundler.getSignatureTrustEngine(),
+                    verifyMetadataBundler.getMetadataResolver(),
+                    metricRegistry,
+                    "hub"
+            );
+        }
+        return hubSignatureTrustEngine;
     }
 
     private MetadataCredentialResolver getHubMetadataCredentialResolver() {
@@ -151,23 +337,97 @@ public class VerifyServiceProviderFactory {
     }
 
     private ExplicitKeySignatureTrustEngine getMsaSignatureTrustEngine() {
-        return msaMetadataBundle.getSignatureTrustEngine();
-    }
-
-    private Optional<EidasMetadataResolverRepository> getEidasMetadataResolverRepository() {
-        if (isEidasEnabled()) {
-            return Optional.of(new EidasMetadataResolverRepository(
-                getEidasTrustAnchorResolver(),
-                configuration.getEuropeanIdentity().get().getAggregatedMetadata(),
-                new DropwizardMetadataResolverFactory(),
-                new Timer(),
-                new MetadataSignatureTrustEngineFactory(),
-                new MetadataResolverConfigBuilder(),
-                client
-            ));
-        } else {
-            return Optional.empty();
+        if (msaSignatureTrustEngine == null) {
+            msaSignatureTrustEngine = CachingCredentialResolver.cachingSignatureTrustEngine(
+                    msaMetadataBundle.getSignatureTrustEngine(),
+                    msaMetadataBundle.getMetadataResolver(),
+                    metricRegistry,
+                    "msa"
+            );
+        }
+        return msaSignatureTrustEngine;
+    }
+
+    private Supplier<Optional<EidasCountryMetadataRepository>> getEidasMetadataRepository() {
+        if (eidasMetadataRepository == null) {
+            if (isEidasEnabled()) {
+                EuropeanIdentityConfiguration europeanIdentity = configuration.getEuropeanIdentity().get();
+                ScheduledExecutorService refreshExecutorService = environment.lifecycle().scheduledExecutorService("eidas-metadata-refresh-%d")
+                        .threads(europeanIdentity.getMetadataRefreshThreads())
+                        .build();
+                MetadataRefreshScheduler refreshScheduler = new MetadataRefreshScheduler(refreshExecutorService, europeanIdentity.getMetadataRefreshJitter(), metricRegistry);
+                ParserPool parserPool = new InstrumentedParserPool("eidas-metadata", europeanIdentity.getMetadataRefreshThreads(), metricRegistry);
+                EidasCountryMetadataRepository repository = new EidasCountryMetadataRepository(
+                        getEidasTrustAnchorResolver(),
+                        (trustAnchor, refreshTrigger) -> createCountryMetadataResolver(trustAnchor, refreshTrigger, refreshExecutorService, parserPool),
+                        new MetadataSignatureTrustEngineFactory(),
+                        metricRegistry
+                );
+                EidasMetadataLoader metadataLoader = new EidasMetadataLoader(
+                        repository,
+                        refreshScheduler,
+                        refreshExecutorService,
+                        europeanIdentity.getTrustAnchorRefreshInterval(),
+                        europeanIdentity.getCountryMetadataLoadTimeout(),
+                        environment.healthChecks()
+                );
+                europeanIdentity.getMetadataCacheDirectory().ifPresent(metadataCacheDirectory -> client.register(new PersistentMetadataCacheFilter(
+                        new MetadataDiskCache(metadataCacheDirectory),
+                        metadataLoader::refreshCountriesFromNetwork,
+                        metricRegistry
+                )));
+                environment.lifecycle().manage(metadataLoader);
+                environment.admin().addServlet("eidas-country-healthcheck", new HealthCheckServlet(metadataLoader.getCountryHealthChecks()))
+                        .addMapping("/healthcheck/eidas-countries");
+                eidasMetadataRepository = metadataLoader;
+                eidasCountryIssuers = EidasCountryIssuers.watching(metadataLoader, refreshScheduler, metricRegistry);
+            } else {
+                eidasMetadataRepository = Optional::empty;
+                eidasCountryIssuers = EidasCountryIssuers.none();
+            }
         }
+        return eidasMetadataRepository;
+    }
+
+    private EidasCountryMetadataResolver createCountryMetadataResolver(
+            JWK trustAnchor,
+            Timer refreshTrigger,
+            ScheduledExecutorService refreshExecutorService,
+            ParserPool parserPool
+    ) throws Exception {
+        EuropeanIdentityConfiguration europeanIdentity = configuration.getEuropeanIdentity().get();
+        MetadataResolverConfiguration metadataConfiguration = new MetadataResolverConfigBuilder()
+                .createMetadataResolverConfiguration(trustAnchor, europeanIdentity.getAggregatedMetadata());
+
+        MetadataFilterChain metadataFilterChain = new MetadataFilterChain();
+        metadataFilterChain.setFilters(asList(
+                new PKIXSignatureValidationFilterProvider(metadataConfiguration.getTrustStore()).get(),
+                new ExpiredCertificateMetadataFilter()
+        ));
+
+        EidasCountryMetadataResolver metadataResolver = new EidasCountryMetadataResolver(
+                trustAnchor.getKeyID(),
+                metadataConfiguration.getUri(),
+                client,
+                refreshTrigger,
+                refreshExecutorService,
+                europeanIdentity.getMetadataRefreshJitter(),
+                metricRegistry
+        );
+        metadataResolver.setId("eidas-country-metadata." + trustAnchor.getKeyID());
+        metadataResolver.setMinRefreshDelay(metadataConfiguration.getMinRefreshDelay());
+        metadataResolver.setMaxRefreshDelay(metadataConfiguration.getMaxRefreshDelay());
+        metadataResolver.setParserPool(parserPool);
+        metadataResolver.setMetadataFilter(metadataFilterChain);
+        metadataResolver.setFailFastInitialization(false);
+        // only hands the first fetch to the refresh pool, so this does not wait on the network
+        metadataResolver.initialize();
+        return metadataResolver;
+    }
+
+    private EidasCountryIssuers getEidasCountryIssuers() {
+        getEidasMetadataRepository();
+        return eidasCountryIssuers;
     }
 
     private EidasTrustAnchorResolver getEidasTrustAnchorResolver() {
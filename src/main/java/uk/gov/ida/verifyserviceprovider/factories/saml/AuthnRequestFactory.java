@@ -9,55 +9,59 @@ import org.opensaml.saml.saml2.core.AuthnRequest;
 import org.opensaml.saml.saml2.core.EncryptedAttribute;
 import org.opensaml.saml.saml2.core.Extensions;
 import org.opensaml.saml.saml2.core.Issuer;
-import org.opensaml.saml.saml2.core.impl.AttributeBuilder;
 import org.opensaml.saml.saml2.core.impl.AuthnRequestBuilder;
 import org.opensaml.saml.saml2.core.impl.ExtensionsBuilder;
 import org.opensaml.saml.saml2.core.impl.IssuerBuilder;
+import org.opensaml.saml.saml2.encryption.Encrypter;
 import org.opensaml.xmlsec.algorithm.descriptors.DigestSHA256;
 import org.opensaml.xmlsec.algorithm.descriptors.SignatureRSASHA256;
 import org.opensaml.xmlsec.encryption.support.EncryptionException;
 import org.opensaml.xmlsec.signature.Signature;
 import org.opensaml.xmlsec.signature.support.SignatureException;
 import org.opensaml.xmlsec.signature.support.Signer;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import uk.gov.ida.saml.core.extensions.versioning.Version;
-import uk.gov.ida.saml.core.extensions.versioning.VersionImpl;
-import uk.gov.ida.saml.core.extensions.versioning.application.ApplicationVersion;
-import uk.gov.ida.saml.core.extensions.versioning.application.ApplicationVersionImpl;
 import uk.gov.ida.saml.security.IdaKeyStore;
 import uk.gov.ida.saml.security.IdaKeyStoreCredentialRetriever;
 import uk.gov.ida.saml.security.SignatureFactory;
 import uk.gov.ida.shared.utils.manifest.ManifestReader;
-import uk.gov.ida.verifyserviceprovider.VerifyServiceProviderApplication;
 import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
 import uk.gov.ida.verifyserviceprovider.factories.EncrypterFactory;
 
-import java.io.IOException;
 import java.net.URI;
 import java.security.KeyPair;
 import java.util.Collections;
+import java.util.Optional;
 import java.util.UUID;
 
 public class AuthnRequestFactory {
 
-    private static final Logger LOG = LoggerFactory.getLogger(AuthnRequestFactory.class);
-
     private final URI destination;
-    private final ManifestReader manifestReader;
+    private final VersionsAttributeFactory versionsAttributeFactory;
     private final EncrypterFactory encrypterFactory;
-    private KeyPair signingKeyPair;
+    private final Optional<PreEncryptedVersionsPool> preEncryptedVersionsPool;
+    private final SigningKeyProvider signingKeyProvider;
+    private volatile SigningContext signingContext;
 
     public AuthnRequestFactory(
             URI destination,
             KeyPair signingKeyPair,
             ManifestReader manifestReader,
             EncrypterFactory encrypterFactory
+    ) {
+        this(destination, new StaticSigningKeyProvider(signingKeyPair), manifestReader, encrypterFactory, Optional.empty());
+    }
+
+    public AuthnRequestFactory(
+            URI destination,
+            SigningKeyProvider signingKeyProvider,
+            ManifestReader manifestReader,
+            EncrypterFactory encrypterFactory,
+            Optional<PreEncryptedVersionsPool> preEncryptedVersionsPool
     ) {
         this.destination = destination;
-        this.manifestReader = manifestReader;
+        this.versionsAttributeFactory = new VersionsAttributeFactory(manifestReader);
         this.encrypterFactory = encrypterFactory;
-        this.signingKeyPair = signingKeyPair;
+        this.preEncryptedVersionsPool = preEncryptedVersionsPool;
+        this.signingKeyProvider = signingKeyProvider;
     }
 
     public AuthnRequest build(LevelOfAssurance levelOfAssurance, String serviceEntityId) {
@@ -86,44 +90,43 @@ public class AuthnRequestFactory {
 
     private Extensions createExtensions() {
         Extensions extensions = new ExtensionsBuilder().buildObject();
-        Attribute versionsAttribute = new AttributeBuilder().buildObject();
-        versionsAttribute.setName("Versions");
-        versionsAttribute.getAttributeValues().add(createApplicationVersion());
-        extensions.getUnknownXMLObjects().add(encrypt(versionsAttribute));
+        EncryptedAttribute versions = preEncryptedVersionsPool
+                .flatMap(PreEncryptedVersionsPool::take)
+                .orElseGet(() -> encrypt(versionsAttributeFactory.createVersionsAttribute()));
+        extensions.getUnknownXMLObjects().add(versions);
         return extensions;
     }
 
     private EncryptedAttribute encrypt(Attribute attribute) {
+        Encrypter encrypter = encrypterFactory.createEncrypter();
         try {
-            return encrypterFactory.createEncrypter().encrypt(attribute);
+            return encrypter.encrypt(attribute);
         } catch (EncryptionException e) {
             throw new RuntimeException(e);
+        } finally {
+            encrypterFactory.releaseEncrypter(encrypter);
         }
     }
 
-    private Version createApplicationVersion() {
-        ApplicationVersion applicationVersion = new ApplicationVersionImpl();
-
-        String applicationManifestVersion = "UNKNOWN_VERSION";
-        try {
-            applicationManifestVersion = manifestReader.getAttributeValueFor(VerifyServiceProviderApplication.class, "Version");
-        } catch (IOException e) {
-            LOG.error("Failed to read version number from the manifest", e);
+    private Signature createSignature() {
+        KeyPair signingKeyPair = signingKeyProvider.getSigningKeyPair();
+        SigningContext context = signingContext;
+        if (context == null || context.signingKeyPair != signingKeyPair) {
+            context = new SigningContext(signingKeyPair);
+            signingContext = context;
         }
-
-        applicationVersion.setValue(applicationManifestVersion);
-        Version version = new VersionImpl() {{
-            setApplicationVersion(applicationVersion);
-        }};
-        return version;
+        return context.signatureFactory.createSignature();
     }
 
-    private Signature createSignature() {
-        IdaKeyStore keyStore = new IdaKeyStore(signingKeyPair, Collections.emptyList());
-        IdaKeyStoreCredentialRetriever keyStoreCredentialRetriever = new IdaKeyStoreCredentialRetriever(keyStore);
-        SignatureRSASHA256 signatureAlgorithm = new SignatureRSASHA256();
-        DigestSHA256 digestAlgorithm = new DigestSHA256();
-        SignatureFactory signatureFactory = new SignatureFactory(keyStoreCredentialRetriever, signatureAlgorithm, digestAlgorithm);
-        return signatureFactory.createSignature();
+    private static class SigningContext {
+        private final KeyPair signingKeyPair;
+        private final SignatureFactory signatureFactory;
+
+        private SigningContext(KeyPair signingKeyPair) {
+            IdaKeyStore keyStore = new IdaKeyStore(signingKeyPair, Collections.emptyList());
+            IdaKeyStoreCredentialRetriever keyStoreCredentialRetriever = new IdaKeyStoreCredentialRetriever(keyStore);
+            this.signingKeyPair = signingKeyPair;
+            this.signatureFactory = new SignatureFactory(keyStoreCredentialRetriever, new SignatureRSASHA256(), new DigestSHA256());
+        }
     }
 }
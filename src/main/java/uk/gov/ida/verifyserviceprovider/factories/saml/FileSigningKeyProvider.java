@@ -0,0 +1,86 @@
+package uk.gov.ida.verifyserviceprovider.factories.saml;
+
+import io.dropwizard.util.Duration;
+import org.opensaml.security.crypto.KeySupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.ida.verifyserviceprovider.configuration.PrivateKeyDeserializer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.util.Base64;
+
+/**
+ * Reads the signing key from a file holding a base64 encoded PKCS8 private key (the same
+ * format as samlSigningKey), and reads it again whenever the file is modified, so the key
+ * can be rotated without restarting.
+ *
+ * The file is checked for changes at most once per checkInterval. If a changed file cannot
+ * be read the previous key is kept.
+ */
+public class FileSigningKeyProvider implements SigningKeyProvider {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileSigningKeyProvider.class);
+
+    private final Path signingKeyFile;
+    private final long checkIntervalNanos;
+    private volatile LoadedKey loadedKey;
+    private volatile long nextCheckNanos;
+
+    public FileSigningKeyProvider(Path signingKeyFile, Duration checkInterval) {
+        this.signingKeyFile = signingKeyFile;
+        this.checkIntervalNanos = checkInterval.toNanoseconds();
+        try {
+            this.loadedKey = load();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to read signing key from " + signingKeyFile, e);
+        }
+        this.nextCheckNanos = System.nanoTime() + checkIntervalNanos;
+    }
+
+    @Override
+    public KeyPair getSigningKeyPair() {
+        long now = System.nanoTime();
+        if (now - nextCheckNanos >= 0) {
+            synchronized (this) {
+                if (now - nextCheckNanos >= 0) {
+                    reloadIfModified();
+                    nextCheckNanos = now + checkIntervalNanos;
+                }
+            }
+        }
+        return loadedKey.keyPair;
+    }
+
+    private void reloadIfModified() {
+        try {
+            if (!Files.getLastModifiedTime(signingKeyFile).equals(loadedKey.lastModified)) {
+                loadedKey = load();
+                LOG.info("Loaded new signing key from {}", signingKeyFile);
+            }
+        } catch (Exception e) {
+            LOG.error("Unable to reload signing key from {}, continuing to use the previous key", signingKeyFile, e);
+        }
+    }
+
+    private LoadedKey load() throws Exception {
+        FileTime lastModified = Files.getLastModifiedTime(signingKeyFile);
+        String encodedKey = new String(Files.readAllBytes(signingKeyFile), StandardCharsets.US_ASCII).trim();
+        PrivateKey privateKey = PrivateKeyDeserializer.createPrivateKey(Base64.getMimeDecoder().decode(encodedKey));
+        return new LoadedKey(lastModified, new KeyPair(KeySupport.derivePublicKey(privateKey), privateKey));
+    }
+
+    private static class LoadedKey {
+        private final FileTime lastModified;
+        private final KeyPair keyPair;
+
+        private LoadedKey(FileTime lastModified, KeyPair keyPair) {
+            this.lastModified = lastModified;
+            this.keyPair = keyPair;
+        }
+    }
+}
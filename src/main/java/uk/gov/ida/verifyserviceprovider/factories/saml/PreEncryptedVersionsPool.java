@@ -0,0 +1,150 @@
+package uk.gov.ida.verifyserviceprovider.factories.saml;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.core.EncryptedAttribute;
+import org.opensaml.saml.saml2.encryption.Encrypter;
+import org.opensaml.security.credential.Credential;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.ida.verifyserviceprovider.factories.EncrypterFactory;
+
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a stock of Versions attributes encrypted for the hub's current encryption key, so
+ * that generating an AuthnRequest does not need to do any asymmetric crypto.
+ *
+ * Every entry is a separate encryption with its own data encryption key and is handed out
+ * at most once, so AuthnRequests remain unlinkable. The stock is topped up in the background
+ * and entries encrypted for a key the hub no longer publishes are thrown away.
+ */
+public class PreEncryptedVersionsPool implements Managed {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PreEncryptedVersionsPool.class);
+    private static final String METRIC_PREFIX = "pre-encrypted-versions";
+
+    private final EncrypterFactory encrypterFactory;
+    private final Supplier<Attribute> versionsAttribute;
+    private final int size;
+    private final Duration refreshInterval;
+    private final ScheduledExecutorService executorService;
+    private final BlockingQueue<PreEncryptedVersions> pool;
+    private final AtomicBoolean refillPending = new AtomicBoolean();
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter discarded;
+    private volatile boolean stopped;
+    private ScheduledFuture<?> scheduledRefill;
+
+    public PreEncryptedVersionsPool(
+            EncrypterFactory encrypterFactory,
+            Supplier<Attribute> versionsAttribute,
+            int size,
+            Duration refreshInterval,
+            ScheduledExecutorService executorService,
+            MetricRegistry metricRegistry
+    ) {
+        this.encrypterFactory = encrypterFactory;
+        this.versionsAttribute = versionsAttribute;
+        this.size = size;
+        this.refreshInterval = refreshInterval;
+        this.executorService = executorService;
+        this.pool = new ArrayBlockingQueue<>(size);
+        this.hits = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "hits"));
+        this.misses = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "misses"));
+        this.discarded = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "discarded"));
+        metricRegistry.gauge(MetricRegistry.name(METRIC_PREFIX, "available"), () -> (Gauge<Integer>) pool::size);
+    }
+
+    @Override
+    public synchronized void start() {
+        stopped = false;
+        scheduledRefill = executorService.scheduleWithFixedDelay(this::refill, 0, refreshInterval.toMilliseconds(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        stopped = true;
+        if (scheduledRefill != null) {
+            scheduledRefill.cancel(false);
+            scheduledRefill = null;
+        }
+        pool.clear();
+    }
+
+    /**
+     * Returns an unused Versions attribute encrypted for the hub's current encryption key,
+     * or empty if none are available and the caller needs to encrypt one itself.
+     */
+    public Optional<EncryptedAttribute> take() {
+        Credential currentCredential = encrypterFactory.getEncryptingCredential();
+        PreEncryptedVersions next;
+        while ((next = pool.poll()) != null) {
+            if (next.credential == currentCredential) {
+                hits.mark();
+                requestRefillIfLow();
+                return Optional.of(next.encryptedAttribute);
+            }
+            discarded.mark();
+        }
+        misses.mark();
+        requestRefillIfLow();
+        return Optional.empty();
+    }
+
+    /**
+     * Drops entries encrypted for an old key and tops the pool back up to its full size.
+     */
+    public void refill() {
+        refillPending.set(false);
+        if (stopped) {
+            return;
+        }
+        try {
+            Credential credential = encrypterFactory.getEncryptingCredential();
+            pool.removeIf(entry -> entry.credential != credential);
+            Encrypter encrypter = encrypterFactory.createEncrypter(credential);
+            while (pool.remainingCapacity() > 0) {
+                pool.offer(new PreEncryptedVersions(credential, encrypter.encrypt(versionsAttribute.get())));
+            }
+        } catch (Exception e) {
+            LOG.warn("Unable to pre-encrypt Versions attributes, AuthnRequests will encrypt them as they are generated", e);
+        }
+    }
+
+    private void requestRefillIfLow() {
+        if (stopped || pool.size() >= (size + 1) / 2 || !refillPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executorService.execute(this::refill);
+        } catch (RejectedExecutionException e) {
+            // the executor is shutting down, so leave the caller to encrypt inline and let a later take try again
+            refillPending.set(false);
+            LOG.debug("Unable to schedule a refill of the pre-encrypted Versions pool", e);
+        }
+    }
+
+    private static class PreEncryptedVersions {
+        private final Credential credential;
+        private final EncryptedAttribute encryptedAttribute;
+
+        private PreEncryptedVersions(Credential credential, EncryptedAttribute encryptedAttribute) {
+            this.credential = credential;
+            this.encryptedAttribute = encryptedAttribute;
+        }
+    }
+}
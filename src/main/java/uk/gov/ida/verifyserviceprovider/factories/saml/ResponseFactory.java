@@ -1,20 +1,24 @@
 package uk.gov.ida.verifyserviceprovider.factories.saml;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
 import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.encryption.Decrypter;
+import org.opensaml.saml.saml2.encryption.EncryptedElementTypeEncryptedKeyResolver;
 import org.opensaml.security.credential.Credential;
+import org.opensaml.xmlsec.encryption.support.ChainingEncryptedKeyResolver;
+import org.opensaml.xmlsec.encryption.support.EncryptedKeyResolver;
+import org.opensaml.xmlsec.encryption.support.InlineEncryptedKeyResolver;
+import org.opensaml.xmlsec.encryption.support.SimpleRetrievalMethodEncryptedKeyResolver;
 import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
 import uk.gov.ida.saml.core.domain.AddressFactory;
 import uk.gov.ida.saml.core.transformers.EidasMatchingDatasetUnmarshaller;
 import uk.gov.ida.saml.core.transformers.VerifyMatchingDatasetUnmarshaller;
 import uk.gov.ida.saml.core.validators.assertion.AssertionAttributeStatementValidator;
-import uk.gov.ida.saml.deserializers.OpenSamlXMLObjectUnmarshaller;
-import uk.gov.ida.saml.deserializers.StringToOpenSamlObjectTransformer;
-import uk.gov.ida.saml.deserializers.parser.SamlObjectParser;
 import uk.gov.ida.saml.deserializers.validators.Base64StringDecoder;
 import uk.gov.ida.saml.deserializers.validators.NotNullSamlStringValidator;
-import uk.gov.ida.saml.metadata.EidasMetadataResolverRepository;
 import uk.gov.ida.saml.security.AssertionDecrypter;
-import uk.gov.ida.saml.security.DecrypterFactory;
 import uk.gov.ida.saml.security.IdaKeyStore;
 import uk.gov.ida.saml.security.IdaKeyStoreCredentialRetriever;
 import uk.gov.ida.saml.security.MetadataBackedSignatureValidator;
@@ -25,18 +29,26 @@ import uk.gov.ida.saml.security.validators.signature.SamlResponseSignatureValida
 import uk.gov.ida.verifyserviceprovider.dto.TranslatedNonMatchingResponseBody;
 import uk.gov.ida.verifyserviceprovider.dto.TranslatedMatchingResponseBody;
 import uk.gov.ida.verifyserviceprovider.mappers.MatchingDatasetToNonMatchingAttributesMapper;
+import uk.gov.ida.verifyserviceprovider.saml.CountrySignatureValidators;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryIssuers;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryMetadataRepository;
+import uk.gov.ida.verifyserviceprovider.saml.InstrumentedParserPool;
+import uk.gov.ida.verifyserviceprovider.saml.KeyHintCredentialResolver;
+import uk.gov.ida.verifyserviceprovider.saml.PooledStringToResponseTransformer;
 import uk.gov.ida.verifyserviceprovider.services.AssertionClassifier;
 import uk.gov.ida.verifyserviceprovider.services.AssertionService;
 import uk.gov.ida.verifyserviceprovider.services.EidasAssertionService;
 import uk.gov.ida.verifyserviceprovider.services.MsaAssertionService;
 import uk.gov.ida.verifyserviceprovider.services.IdpAssertionService;
 import uk.gov.ida.verifyserviceprovider.services.ResponseService;
+import uk.gov.ida.verifyserviceprovider.services.ResponseServiceMetrics;
 import uk.gov.ida.verifyserviceprovider.utils.DateTimeComparator;
 import uk.gov.ida.verifyserviceprovider.validators.AssertionValidator;
 import uk.gov.ida.verifyserviceprovider.validators.AudienceRestrictionValidator;
 import uk.gov.ida.verifyserviceprovider.validators.ConditionsValidator;
 import uk.gov.ida.verifyserviceprovider.validators.InstantValidator;
 import uk.gov.ida.verifyserviceprovider.validators.LevelOfAssuranceValidator;
+import uk.gov.ida.verifyserviceprovider.validators.ReplayValidator;
 import uk.gov.ida.verifyserviceprovider.validators.ResponseSizeValidator;
 import uk.gov.ida.verifyserviceprovider.validators.SubjectValidator;
 import uk.gov.ida.verifyserviceprovider.validators.TimeRestrictionValidator;
@@ -44,29 +56,42 @@ import uk.gov.ida.verifyserviceprovider.validators.TimeRestrictionValidator;
 import java.security.KeyPair;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class ResponseFactory {
 
+    public static final String PARSER_POOL_NAME = "translate-response";
+
     private static final NotNullSamlStringValidator notNullSamlStringValidator = new NotNullSamlStringValidator();
     private static final Base64StringDecoder base64StringDecoder = new Base64StringDecoder();
     private static final ResponseSizeValidator responseSizeValidator = new ResponseSizeValidator();
-    private static final SamlObjectParser samlObjectParser = new SamlObjectParser();
-    private static final OpenSamlXMLObjectUnmarshaller<Response> responseOpenSamlXMLObjectUnmarshaller = new OpenSamlXMLObjectUnmarshaller<>(samlObjectParser);
     private static final EncryptionAlgorithmValidator encryptionAlgorithmValidator = new EncryptionAlgorithmValidator();
-    private static final DecrypterFactory decrypterFactory = new DecrypterFactory();
 
     private List<KeyPair> encryptionKeyPairs;
+    private final MetricRegistry metricRegistry;
+    private final ParserPool parserPool;
 
     public ResponseFactory(List<KeyPair> encryptionKeyPairs) {
+        this(encryptionKeyPairs, new MetricRegistry());
+    }
+
+    public ResponseFactory(List<KeyPair> encryptionKeyPairs, MetricRegistry metricRegistry) {
+        this(encryptionKeyPairs, metricRegistry, new InstrumentedParserPool(PARSER_POOL_NAME, InstrumentedParserPool.DEFAULT_MAX_POOL_SIZE, metricRegistry));
+    }
+
+    public ResponseFactory(List<KeyPair> encryptionKeyPairs, MetricRegistry metricRegistry, ParserPool parserPool) {
         this.encryptionKeyPairs = encryptionKeyPairs;
+        this.metricRegistry = metricRegistry;
+        this.parserPool = parserPool;
     }
 
-    public static StringToOpenSamlObjectTransformer<Response> createStringToResponseTransformer() {
-        return new StringToOpenSamlObjectTransformer<>(
+    public static Function<String, Response> createStringToResponseTransformer(ParserPool parserPool) {
+        return new PooledStringToResponseTransformer(
                 notNullSamlStringValidator,
                 base64StringDecoder,
                 responseSizeValidator,
-                responseOpenSamlXMLObjectUnmarshaller
+                parserPool
         );
     }
 
@@ -74,24 +99,47 @@ public class ResponseFactory {
         List<Credential> decryptingCredentials = new IdaKeyStoreCredentialRetriever(createEncryptionKeyStore()).getDecryptingCredentials();
         return new AssertionDecrypter(
                 encryptionAlgorithmValidator,
-                decrypterFactory.createDecrypter(decryptingCredentials)
+                createDecrypter(decryptingCredentials)
         );
     }
 
+    private Decrypter createDecrypter(List<Credential> decryptingCredentials) {
+        // as DecrypterFactory does, but picking the key from the EncryptedKey's KeyInfo rather than trying each in turn
+        EncryptedKeyResolver encryptedKeyResolver = new ChainingEncryptedKeyResolver(ImmutableList.of(
+                new InlineEncryptedKeyResolver(),
+                new EncryptedElementTypeEncryptedKeyResolver(),
+                new SimpleRetrievalMethodEncryptedKeyResolver()
+        ));
+        Decrypter decrypter = new Decrypter(null, new KeyHintCredentialResolver(decryptingCredentials, metricRegistry), encryptedKeyResolver);
+        decrypter.setRootInNewDocument(true);
+        return decrypter;
+    }
+
     public ResponseService<TranslatedMatchingResponseBody> createMatchingResponseService(
             ExplicitKeySignatureTrustEngine hubSignatureTrustEngine,
             AssertionService<TranslatedMatchingResponseBody> matchingAssertionService,
             DateTimeComparator dateTimeComparator
+    ) {
+        return createMatchingResponseService(hubSignatureTrustEngine, matchingAssertionService, dateTimeComparator, ReplayValidator.disabled());
+    }
+
+    public ResponseService<TranslatedMatchingResponseBody> createMatchingResponseService(
+            ExplicitKeySignatureTrustEngine hubSignatureTrustEngine,
+            AssertionService<TranslatedMatchingResponseBody> matchingAssertionService,
+            DateTimeComparator dateTimeComparator,
+            ReplayValidator replayValidator
     ) {
         AssertionDecrypter assertionDecrypter = createAssertionDecrypter();
         MetadataBackedSignatureValidator metadataBackedSignatureValidator = createMetadataBackedSignatureValidator(hubSignatureTrustEngine);
 
         return new ResponseService<>(
-                createStringToResponseTransformer(),
+                createStringToResponseTransformer(parserPool),
                 assertionDecrypter,
                 matchingAssertionService,
                 new SamlResponseSignatureValidator(new SamlMessageSignatureValidator(metadataBackedSignatureValidator)),
-                new InstantValidator(dateTimeComparator)
+                new InstantValidator(dateTimeComparator),
+                new ResponseServiceMetrics(metricRegistry, ResponseServiceMetrics.MATCHING),
+                replayValidator
         );
     }
 
@@ -99,16 +147,27 @@ public class ResponseFactory {
             ExplicitKeySignatureTrustEngine hubSignatureTrustEngine,
             AssertionService<TranslatedNonMatchingResponseBody> nonMatchingAssertionService,
             DateTimeComparator dateTimeComparator
+    ) {
+        return createNonMatchingResponseService(hubSignatureTrustEngine, nonMatchingAssertionService, dateTimeComparator, ReplayValidator.disabled());
+    }
+
+    public ResponseService<TranslatedNonMatchingResponseBody> createNonMatchingResponseService(
+            ExplicitKeySignatureTrustEngine hubSignatureTrustEngine,
+            AssertionService<TranslatedNonMatchingResponseBody> nonMatchingAssertionService,
+            DateTimeComparator dateTimeComparator,
+            ReplayValidator replayValidator
     ) {
         AssertionDecrypter assertionDecrypter = createAssertionDecrypter();
         MetadataBackedSignatureValidator metadataBackedSignatureValidator = createMetadataBackedSignatureValidator(hubSignatureTrustEngine);
 
         return new ResponseService<>(
-                createStringToResponseTransformer(),
+                createStringToResponseTransformer(parserPool),
                 assertionDecrypter,
                 nonMatchingAssertionService,
                 new SamlResponseSignatureValidator(new SamlMessageSignatureValidator(metadataBackedSignatureValidator)),
-                new InstantValidator(dateTimeComparator)
+                new InstantValidator(dateTimeComparator),
+                new ResponseServiceMetrics(metricRegistry, ResponseServiceMetrics.NON_MATCHING),
+                replayValidator
         );
     }
 
@@ -155,7 +214,8 @@ public class ResponseFactory {
     public EidasAssertionService createEidasAssertionService(
             boolean isEnabled,
             DateTimeComparator dateTimeComparator,
-            Optional<EidasMetadataResolverRepository> eidasMetadataResolverRepository
+            Supplier<Optional<EidasCountryMetadataRepository>> eidasMetadataRepository,
+            EidasCountryIssuers eidasCountryIssuers
     ) {
         TimeRestrictionValidator timeRestrictionValidator = new TimeRestrictionValidator(dateTimeComparator);
         AudienceRestrictionValidator audienceRestrictionValidator = new AudienceRestrictionValidator();
@@ -168,8 +228,8 @@ public class ResponseFactory {
                 new InstantValidator(dateTimeComparator),
                 new ConditionsValidator(timeRestrictionValidator, audienceRestrictionValidator),
                 new LevelOfAssuranceValidator(),
-                eidasMetadataResolverRepository,
-                new SignatureValidatorFactory());
+                eidasCountryIssuers,
+                CountrySignatureValidators.forRepository(eidasMetadataRepository, eidasCountryIssuers, metricRegistry));
     }
 
     private MetadataBackedSignatureValidator createMetadataBackedSignatureValidator( ExplicitKeySignatureTrustEngine explicitKeySignatureTrustEngine ) {
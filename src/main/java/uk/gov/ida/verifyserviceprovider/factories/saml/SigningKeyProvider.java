@@ -0,0 +1,12 @@
+package uk.gov.ida.verifyserviceprovider.factories.saml;
+
+import java.security.KeyPair;
+
+/**
+ * Supplies the key pair AuthnRequests are signed with. Implementations may return a
+ * different key pair over time; callers should not hold on to the result.
+ */
+public interface SigningKeyProvider {
+
+    KeyPair getSigningKeyPair();
+}
@@ -0,0 +1,17 @@
+package uk.gov.ida.verifyserviceprovider.factories.saml;
+
+import java.security.KeyPair;
+
+public class StaticSigningKeyProvider implements SigningKeyProvider {
+
+    private final KeyPair signingKeyPair;
+
+    public StaticSigningKeyProvider(KeyPair signingKeyPair) {
+        this.signingKeyPair = signingKeyPair;
+    }
+
+    @Override
+    public KeyPair getSigningKeyPair() {
+        return signingKeyPair;
+    }
+}
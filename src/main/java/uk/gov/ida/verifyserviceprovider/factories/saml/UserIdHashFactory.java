@@ -1,18 +1,19 @@
 package uk.gov.ida.verifyserviceprovider.factories.saml;
 
-import org.apache.commons.codec.binary.Hex;
 import org.opensaml.security.crypto.JCAConstants;
 import uk.gov.ida.verifyserviceprovider.exceptions.AuthnContextMissingException;
 import uk.gov.ida.saml.core.domain.AuthnContext;
 
-import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.text.MessageFormat;
 import java.util.Optional;
 
 
 public class UserIdHashFactory {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int MAX_RETAINED_BUFFER_SIZE = 4096;
+    private static final ThreadLocal<HashingBuffers> HASHING_BUFFERS = ThreadLocal.withInitial(HashingBuffers::new);
+
     private final String hashingEntityId;
 
     public UserIdHashFactory(String hashingEntityId) {
@@ -20,37 +21,103 @@ public class UserIdHashFactory {
     }
 
     public String hashId(String issuerEntityId, String persistentId, Optional<AuthnContext> authnContext) {
-        MessageDigest messageDigest;
-        try {
-            messageDigest = MessageDigest.getInstance(JCAConstants.DIGEST_SHA256);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
+        HashingBuffers buffers = HASHING_BUFFERS.get();
 
-        final String toHash = idToHash(issuerEntityId, persistentId, authnContext);
-
-        try {
-            messageDigest.update(toHash.getBytes("UTF-8"));
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
-        }
+        final StringBuilder toHash = idToHash(buffers.toHash, issuerEntityId, persistentId, authnContext);
+        int length = buffers.encodeUtf8(toHash);
 
+        MessageDigest messageDigest = buffers.messageDigest;
+        messageDigest.update(buffers.bytes, 0, length);
         byte[] digest = messageDigest.digest();
-        return Hex.encodeHexString(digest);
-    }
 
-    private String idToHash(String issuerEntityId, String persistentId, Optional<AuthnContext> context) {
-        String persistentIdHash;
+        buffers.trim();
+        return toHex(digest);
+    }
 
+    private StringBuilder idToHash(StringBuilder persistentIdHash, String issuerEntityId, String persistentId, Optional<AuthnContext> context) {
         final AuthnContext authnContext = context.orElseThrow(() -> new AuthnContextMissingException(String.format("Authn context absent for persistent id %s", persistentId)));
-        if (authnContext.equals(AuthnContext.LEVEL_2)) {
-            // default behaviour - for LEVEL_2
-            persistentIdHash = MessageFormat.format("{0}{1}{2}", issuerEntityId, hashingEntityId, persistentId);
-        } else {
+
+        // default behaviour - for LEVEL_2
+        persistentIdHash.setLength(0);
+        persistentIdHash.append(issuerEntityId).append(hashingEntityId).append(persistentId);
+        if (!authnContext.equals(AuthnContext.LEVEL_2)) {
             // if we have an authnContext that is not LEVEL_2 then regenerate the hash
             // this does not break existing behaviour for LEVEL_2 RPs
-            persistentIdHash = MessageFormat.format("{0}{1}{2}{3}", issuerEntityId, hashingEntityId, persistentId, authnContext.name());
+            persistentIdHash.append(authnContext.name());
         }
         return persistentIdHash;
     }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * The digest and buffers used to hash an id, reused by each thread for every id it hashes.
+     */
+    private static class HashingBuffers {
+        private final MessageDigest messageDigest;
+        private StringBuilder toHash = new StringBuilder(256);
+        private byte[] bytes = new byte[256];
+
+        private HashingBuffers() {
+            try {
+                messageDigest = MessageDigest.getInstance(JCAConstants.DIGEST_SHA256);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Encodes the characters as UTF-8 into bytes and returns the number of bytes written.
+         * Like String#getBytes, unpaired surrogates are encoded as '?'.
+         */
+        private int encodeUtf8(CharSequence chars) {
+            int length = chars.length();
+            if (bytes.length < length * 3) {
+                bytes = new byte[length * 3];
+            }
+
+            int position = 0;
+            for (int i = 0; i < length; i++) {
+                char c = chars.charAt(i);
+                if (c < 0x80) {
+                    bytes[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[position++] = (byte) (0xc0 | (c >> 6));
+                    bytes[position++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                    bytes[position++] = (byte) (0xf0 | (codePoint >> 18));
+                    bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    bytes[position++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    bytes[position++] = (byte) '?';
+                } else {
+                    bytes[position++] = (byte) (0xe0 | (c >> 12));
+                    bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    bytes[position++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            return position;
+        }
+
+        /**
+         * Drops buffers grown by an unusually long id, so that each thread does not hold on to them.
+         */
+        private void trim() {
+            if (toHash.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+                toHash = new StringBuilder(256);
+            }
+            if (bytes.length > MAX_RETAINED_BUFFER_SIZE * 3) {
+                bytes = new byte[256];
+            }
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package uk.gov.ida.verifyserviceprovider.factories.saml;
+
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.core.impl.AttributeBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.ida.saml.core.extensions.versioning.Version;
+import uk.gov.ida.saml.core.extensions.versioning.VersionImpl;
+import uk.gov.ida.saml.core.extensions.versioning.application.ApplicationVersion;
+import uk.gov.ida.saml.core.extensions.versioning.application.ApplicationVersionImpl;
+import uk.gov.ida.shared.utils.manifest.ManifestReader;
+import uk.gov.ida.verifyserviceprovider.VerifyServiceProviderApplication;
+
+import java.io.IOException;
+
+public class VersionsAttributeFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VersionsAttributeFactory.class);
+
+    private final ManifestReader manifestReader;
+
+    public VersionsAttributeFactory(ManifestReader manifestReader) {
+        this.manifestReader = manifestReader;
+    }
+
+    public Attribute createVersionsAttribute() {
+        Attribute versionsAttribute = new AttributeBuilder().buildObject();
+        versionsAttribute.setName("Versions");
+        versionsAttribute.getAttributeValues().add(createApplicationVersion());
+        return versionsAttribute;
+    }
+
+    private Version createApplicationVersion() {
+        ApplicationVersion applicationVersion = new ApplicationVersionImpl();
+
+        String applicationManifestVersion = "UNKNOWN_VERSION";
+        try {
+            applicationManifestVersion = manifestReader.getAttributeValueFor(VerifyServiceProviderApplication.class, "Version");
+        } catch (IOException e) {
+            LOG.error("Failed to read version number from the manifest", e);
+        }
+
+        applicationVersion.setValue(applicationManifestVersion);
+        Version version = new VersionImpl() {{
+            setApplicationVersion(applicationVersion);
+        }};
+        return version;
+    }
+}
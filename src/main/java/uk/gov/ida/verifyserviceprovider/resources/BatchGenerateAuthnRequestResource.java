@@ -0,0 +1,68 @@
+package uk.gov.ida.verifyserviceprovider.resources;
+
+import io.dropwizard.jersey.errors.ErrorMessage;
+import org.apache.http.HttpStatus;
+import uk.gov.ida.verifyserviceprovider.dto.RequestGenerationBody;
+import uk.gov.ida.verifyserviceprovider.dto.RequestResponseBody;
+import uk.gov.ida.verifyserviceprovider.services.AuthnRequestService;
+import uk.gov.ida.verifyserviceprovider.utils.CryptoExecutor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Generates several AuthnRequests in one call. Each request is built, signed and serialised as
+ * its own piece of work on the {@link CryptoExecutor}, so a batch is admitted, queued and shed
+ * like that many single requests, and the requests are returned in the order they were asked for.
+ */
+@Path("/generate-requests")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class BatchGenerateAuthnRequestResource {
+
+    private final AuthnRequestService authnRequestService;
+    private final CryptoExecutor cryptoExecutor;
+    private final int maxBatchSize;
+
+    public BatchGenerateAuthnRequestResource(AuthnRequestService authnRequestService, CryptoExecutor cryptoExecutor, int maxBatchSize) {
+        this.authnRequestService = authnRequestService;
+        this.cryptoExecutor = cryptoExecutor;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @POST
+    public void generateAuthnRequests(@NotNull @Valid List<RequestGenerationBody> requestGenerationBodies, @Suspended AsyncResponse asyncResponse) {
+        if (requestGenerationBodies.size() > maxBatchSize) {
+            asyncResponse.resume(unprocessableEntity(String.format("may not contain more than %d requests", maxBatchSize)));
+            return;
+        }
+        if (requestGenerationBodies.contains(null)) {
+            asyncResponse.resume(unprocessableEntity("may not contain null requests"));
+            return;
+        }
+
+        List<Callable<RequestResponseBody>> items = requestGenerationBodies.stream()
+            .map(body -> (Callable<RequestResponseBody>) () -> authnRequestService.generateAuthnRequest(body))
+            .collect(toList());
+        cryptoExecutor.resumeAll(asyncResponse, items, requestResponseBodies -> Response.ok(requestResponseBodies).build());
+    }
+
+    private static Response unprocessableEntity(String message) {
+        return Response
+            .status(HttpStatus.SC_UNPROCESSABLE_ENTITY)
+            .entity(new ErrorMessage(HttpStatus.SC_UNPROCESSABLE_ENTITY, message))
+            .build();
+    }
+}
@@ -0,0 +1,113 @@
+package uk.gov.ida.verifyserviceprovider.resources;
+
+import io.dropwizard.jersey.errors.ErrorMessage;
+import org.apache.http.HttpStatus;
+import org.slf4j.LoggerFactory;
+import uk.gov.ida.saml.core.validation.SamlTransformationErrorException;
+import uk.gov.ida.verifyserviceprovider.dto.TranslateSamlResponseBody;
+import uk.gov.ida.verifyserviceprovider.dto.TranslateSamlResponseResult;
+import uk.gov.ida.verifyserviceprovider.dto.TranslatedResponseBody;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+import uk.gov.ida.verifyserviceprovider.exceptions.TranslationErrorResponses;
+import uk.gov.ida.verifyserviceprovider.services.EntityIdService;
+import uk.gov.ida.verifyserviceprovider.services.ResponseService;
+import uk.gov.ida.verifyserviceprovider.utils.CryptoExecutor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Translates several SAML responses in one call. Each response is translated as its own piece
+ * of work on the {@link CryptoExecutor}, so a batch is admitted, queued and shed like that many
+ * single requests. Each response gets its own result, so one bad response does not fail the
+ * rest of the batch, and results are returned in the order the responses were given.
+ */
+@Path("/translate-responses")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class BatchTranslateSamlResponseResource<T extends TranslatedResponseBody> {
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(BatchTranslateSamlResponseResource.class);
+
+    private final ResponseService<T> responseService;
+    private final EntityIdService entityIdService;
+    private final CryptoExecutor cryptoExecutor;
+    private final int maxBatchSize;
+
+    public BatchTranslateSamlResponseResource(
+            ResponseService<T> responseService,
+            EntityIdService entityIdService,
+            CryptoExecutor cryptoExecutor,
+            int maxBatchSize) {
+        this.responseService = responseService;
+        this.entityIdService = entityIdService;
+        this.cryptoExecutor = cryptoExecutor;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @POST
+    public void translateResponses(@NotNull @Valid List<TranslateSamlResponseBody> translateSamlResponseBodies, @Suspended AsyncResponse asyncResponse) {
+        if (translateSamlResponseBodies.size() > maxBatchSize) {
+            asyncResponse.resume(unprocessableEntity(String.format("may not contain more than %d responses", maxBatchSize)));
+            return;
+        }
+        if (translateSamlResponseBodies.contains(null)) {
+            asyncResponse.resume(unprocessableEntity("may not contain null responses"));
+            return;
+        }
+
+        List<Callable<TranslateSamlResponseResult<T>>> items = translateSamlResponseBodies.stream()
+            .map(body -> (Callable<TranslateSamlResponseResult<T>>) () -> translateResponse(body))
+            .collect(toList());
+        cryptoExecutor.resumeAll(asyncResponse, items, results -> Response.ok(results).build());
+    }
+
+    private TranslateSamlResponseResult<T> translateResponse(TranslateSamlResponseBody translateSamlResponseBody) {
+        String requestId = translateSamlResponseBody.getRequestId();
+        try {
+            String entityId = entityIdService.getEntityId(translateSamlResponseBody);
+            try {
+                T translatedResponseBody = responseService.convertTranslatedResponseBody(
+                    translateSamlResponseBody.getSamlResponse(),
+                    requestId,
+                    translateSamlResponseBody.getLevelOfAssurance(),
+                    entityId
+                );
+
+                LOG.info(String.format("Translated response for entityId: %s, requestId: %s, got Scenario: %s",
+                        entityId,
+                        requestId,
+                        translatedResponseBody.getScenario()));
+
+                return TranslateSamlResponseResult.success(requestId, translatedResponseBody);
+            } catch (SamlResponseValidationException | SamlTransformationErrorException e) {
+                return error(requestId, TranslationErrorResponses.translationFailed(entityId, requestId, e));
+            }
+        } catch (RuntimeException e) {
+            return error(requestId, TranslationErrorResponses.toResponse(e));
+        }
+    }
+
+    private static <T extends TranslatedResponseBody> TranslateSamlResponseResult<T> error(String requestId, Response response) {
+        return TranslateSamlResponseResult.error(requestId, TranslationErrorResponses.errorMessageOf(response));
+    }
+
+    private static Response unprocessableEntity(String message) {
+        return Response
+            .status(HttpStatus.SC_UNPROCESSABLE_ENTITY)
+            .entity(new ErrorMessage(HttpStatus.SC_UNPROCESSABLE_ENTITY, message))
+            .build();
+    }
+}
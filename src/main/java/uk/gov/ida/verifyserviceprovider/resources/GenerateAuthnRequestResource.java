@@ -1,12 +1,11 @@
 package uk.gov.ida.verifyserviceprovider.resources;
 
-import org.opensaml.saml.saml2.core.AuthnRequest;
-import org.slf4j.LoggerFactory;
-import uk.gov.ida.saml.serializers.XmlObjectToBase64EncodedStringTransformer;
 import uk.gov.ida.verifyserviceprovider.dto.RequestGenerationBody;
 import uk.gov.ida.verifyserviceprovider.dto.RequestResponseBody;
 import uk.gov.ida.verifyserviceprovider.factories.saml.AuthnRequestFactory;
+import uk.gov.ida.verifyserviceprovider.services.AuthnRequestService;
 import uk.gov.ida.verifyserviceprovider.services.EntityIdService;
+import uk.gov.ida.verifyserviceprovider.utils.CryptoExecutor;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -14,6 +13,8 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.net.URI;
@@ -23,29 +24,27 @@ import java.net.URI;
 @Consumes(MediaType.APPLICATION_JSON)
 public class GenerateAuthnRequestResource {
 
-    private final URI ssoLocation;
-    private final AuthnRequestFactory authnRequestFactory;
-    private final EntityIdService entityIdService;
-    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(GenerateAuthnRequestResource.class);
+    private final AuthnRequestService authnRequestService;
+    private final CryptoExecutor cryptoExecutor;
 
     public GenerateAuthnRequestResource(AuthnRequestFactory authnRequestFactory, URI ssoLocation, EntityIdService entityIdService) {
-        this.authnRequestFactory = authnRequestFactory;
-        this.ssoLocation = ssoLocation;
-        this.entityIdService = entityIdService;
+        this(new AuthnRequestService(authnRequestFactory, ssoLocation, entityIdService));
     }
 
-    @POST
-    public Response generateAuthnRequest(@NotNull @Valid RequestGenerationBody requestGenerationBody) {
-        String entityId = entityIdService.getEntityId(requestGenerationBody);
-        AuthnRequest authnRequest = this.authnRequestFactory.build(requestGenerationBody.getLevelOfAssurance(), entityId);
-        XmlObjectToBase64EncodedStringTransformer xmlToBase64Transformer = new XmlObjectToBase64EncodedStringTransformer();
-        String samlRequest = xmlToBase64Transformer.apply(authnRequest);
-
-        RequestResponseBody requestResponseBody = new RequestResponseBody(samlRequest, authnRequest.getID(), ssoLocation);
+    public GenerateAuthnRequestResource(AuthnRequestService authnRequestService) {
+        this(authnRequestService, CryptoExecutor.direct());
+    }
 
-        LOG.info(String.format("AuthnRequest generated for entityId: %s with requestId: %s", entityId, requestResponseBody.getRequestId()));
-        LOG.debug(String.format("AuthnRequest generated for entityId: %s with saml: %s", entityId, requestResponseBody.getSamlRequest()));
+    public GenerateAuthnRequestResource(AuthnRequestService authnRequestService, CryptoExecutor cryptoExecutor) {
+        this.authnRequestService = authnRequestService;
+        this.cryptoExecutor = cryptoExecutor;
+    }
 
-        return Response.ok(requestResponseBody).build();
+    @POST
+    public void generateAuthnRequest(@NotNull @Valid RequestGenerationBody requestGenerationBody, @Suspended AsyncResponse asyncResponse) {
+        cryptoExecutor.resume(asyncResponse, () -> {
+            RequestResponseBody requestResponseBody = authnRequestService.generateAuthnRequest(requestGenerationBody);
+            return Response.ok(requestResponseBody).build();
+        });
     }
 }
@@ -1,13 +1,14 @@
 package uk.gov.ida.verifyserviceprovider.resources;
 
-import io.dropwizard.jersey.errors.ErrorMessage;
 import org.slf4j.LoggerFactory;
 import uk.gov.ida.saml.core.validation.SamlTransformationErrorException;
 import uk.gov.ida.verifyserviceprovider.dto.TranslateSamlResponseBody;
 import uk.gov.ida.verifyserviceprovider.dto.TranslatedResponseBody;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+import uk.gov.ida.verifyserviceprovider.exceptions.TranslationErrorResponses;
 import uk.gov.ida.verifyserviceprovider.services.EntityIdService;
 import uk.gov.ida.verifyserviceprovider.services.ResponseService;
+import uk.gov.ida.verifyserviceprovider.utils.CryptoExecutor;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -15,11 +16,10 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.io.IOException;
-
-import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 
 @Path("/translate-response")
 @Produces(MediaType.APPLICATION_JSON)
@@ -29,16 +29,26 @@ public class TranslateSamlResponseResource<T extends TranslatedResponseBody> {
     private final ResponseService<T> responseService;
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(TranslateSamlResponseResource.class);
     private final EntityIdService entityIdService;
+    private final CryptoExecutor cryptoExecutor;
 
 
     public TranslateSamlResponseResource(ResponseService<T> responseService, EntityIdService entityIdService) {
+        this(responseService, entityIdService, CryptoExecutor.direct());
+    }
+
+    public TranslateSamlResponseResource(ResponseService<T> responseService, EntityIdService entityIdService, CryptoExecutor cryptoExecutor) {
         this.responseService = responseService;
         this.entityIdService = entityIdService;
+        this.cryptoExecutor = cryptoExecutor;
     }
 
     @POST
-    public Response translateResponse(@NotNull @Valid TranslateSamlResponseBody translateSamlResponseBody) throws IOException {
+    public void translateResponse(@NotNull @Valid TranslateSamlResponseBody translateSamlResponseBody, @Suspended AsyncResponse asyncResponse) {
         String entityId = entityIdService.getEntityId(translateSamlResponseBody);
+        cryptoExecutor.resume(asyncResponse, () -> translateResponse(translateSamlResponseBody, entityId));
+    }
+
+    private Response translateResponse(TranslateSamlResponseBody translateSamlResponseBody, String entityId) {
         try {
             T translatedResponseBody = responseService.convertTranslatedResponseBody(
                 translateSamlResponseBody.getSamlResponse(),
@@ -54,11 +64,7 @@ public class TranslateSamlResponseResource<T extends TranslatedResponseBody> {
 
             return Response.ok(translatedResponseBody).build();
         } catch (SamlResponseValidationException | SamlTransformationErrorException e) {
-            LOG.warn(String.format("Error translating saml response for entityId: %s, requestId: %s, got Message: %s", entityId, translateSamlResponseBody.getRequestId(), e.getMessage()));
-            return Response
-                .status(BAD_REQUEST)
-                .entity(new ErrorMessage(BAD_REQUEST.getStatusCode(), e.getMessage()))
-                .build();
+            return TranslationErrorResponses.translationFailed(entityId, translateSamlResponseBody.getRequestId(), e);
         }
     }
 }
@@ -0,0 +1,200 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.Criterion;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.criterion.ProtocolCriterion;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.metadata.resolver.RefreshableMetadataResolver;
+import org.opensaml.security.credential.BasicCredential;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialResolver;
+import org.opensaml.security.criteria.KeyAlgorithmCriterion;
+import org.opensaml.security.criteria.UsageCriterion;
+import org.opensaml.security.x509.BasicX509Credential;
+import org.opensaml.security.x509.X509Credential;
+import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Caches the credentials a metadata backed CredentialResolver resolves for an entity, role,
+ * usage, protocol and key algorithm until the metadata they came from is next refreshed.
+ * ExplicitKeySignatureTrustEngine adds the usage and key algorithm to every lookup it makes,
+ * so those have to be part of the key for the trust engine's lookups to be cached at all.
+ *
+ * Credentials are cached as detached copies holding just their keys, certificates, entity id,
+ * key names and usage. The credentials metadata resolvers hand back carry a context pointing
+ * at the role descriptor they came from, so caching them as they are would keep that metadata
+ * on the heap for as long as they stay cached. This only keeps the cache from pinning old
+ * metadata: the resolvers still parse and hold the current metadata themselves.
+ *
+ * Lookups with any other criteria go straight to the underlying resolver, and are counted
+ * as uncacheable.
+ */
+public class CachingCredentialResolver implements CredentialResolver {
+
+    private static final Object UNVERSIONED = new Object();
+
+    private final CredentialResolver delegate;
+    private final Supplier<Object> metadataGeneration;
+    private final Map<List<Object>, CachedCredentials> cache = new ConcurrentHashMap<>();
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter invalidations;
+    private final Meter uncacheable;
+    private volatile Object currentGeneration;
+
+    public CachingCredentialResolver(
+            CredentialResolver delegate,
+            Supplier<Object> metadataGeneration,
+            MetricRegistry metricRegistry,
+            String name
+    ) {
+        this.delegate = delegate;
+        this.metadataGeneration = metadataGeneration;
+        this.hits = metricRegistry.meter(MetricRegistry.name("credential-cache", name, "hits"));
+        this.misses = metricRegistry.meter(MetricRegistry.name("credential-cache", name, "misses"));
+        this.invalidations = metricRegistry.meter(MetricRegistry.name("credential-cache", name, "invalidations"));
+        this.uncacheable = metricRegistry.meter(MetricRegistry.name("credential-cache", name, "uncacheable"));
+        this.currentGeneration = metadataGeneration.get();
+    }
+
+    public static ExplicitKeySignatureTrustEngine cachingSignatureTrustEngine(
+            ExplicitKeySignatureTrustEngine signatureTrustEngine,
+            MetadataResolver metadataResolver,
+            MetricRegistry metricRegistry,
+            String name
+    ) {
+        CachingCredentialResolver credentialResolver = new CachingCredentialResolver(
+                signatureTrustEngine.getCredentialResolver(),
+                metadataGeneration(metadataResolver),
+                metricRegistry,
+                name
+        );
+        return new ExplicitKeySignatureTrustEngine(credentialResolver, signatureTrustEngine.getKeyInfoResolver());
+    }
+
+    public static Supplier<Object> metadataGeneration(MetadataResolver metadataResolver) {
+        if (metadataResolver instanceof RefreshableMetadataResolver) {
+            RefreshableMetadataResolver refreshableMetadataResolver = (RefreshableMetadataResolver) metadataResolver;
+            return () -> {
+                Object lastUpdate = refreshableMetadataResolver.getLastUpdate();
+                return lastUpdate == null ? UNVERSIONED : lastUpdate;
+            };
+        }
+        return () -> UNVERSIONED;
+    }
+
+    @Override
+    public Iterable<Credential> resolve(CriteriaSet criteria) throws ResolverException {
+        List<Object> key = cacheKey(criteria);
+        if (key == null) {
+            uncacheable.mark();
+            return delegate.resolve(criteria);
+        }
+
+        Object generation = checkGeneration();
+        CachedCredentials cached = cache.get(key);
+        if (cached != null && cached.generation == generation) {
+            hits.mark();
+            return cached.credentials;
+        }
+
+        misses.mark();
+        ImmutableList.Builder<Credential> detachedCredentials = ImmutableList.builder();
+        for (Credential credential : delegate.resolve(criteria)) {
+            detachedCredentials.add(detach(credential));
+        }
+        List<Credential> credentials = detachedCredentials.build();
+        cache.put(key, new CachedCredentials(generation, credentials));
+        return credentials;
+    }
+
+    @Override
+    public Credential resolveSingle(CriteriaSet criteria) throws ResolverException {
+        Iterable<Credential> credentials = resolve(criteria);
+        return credentials.iterator().hasNext() ? credentials.iterator().next() : null;
+    }
+
+    private Object checkGeneration() {
+        Object generation = metadataGeneration.get();
+        if (!Objects.equals(generation, currentGeneration)) {
+            synchronized (this) {
+                if (!Objects.equals(generation, currentGeneration)) {
+                    cache.clear();
+                    currentGeneration = generation;
+                    invalidations.mark();
+                }
+            }
+        }
+        return currentGeneration;
+    }
+
+    private static Credential detach(Credential credential) {
+        BasicCredential detached;
+        if (credential instanceof X509Credential) {
+            X509Credential x509Credential = (X509Credential) credential;
+            BasicX509Credential detachedX509 = new BasicX509Credential(x509Credential.getEntityCertificate());
+            detachedX509.setEntityCertificateChain(x509Credential.getEntityCertificateChain());
+            detachedX509.setCRLs(x509Credential.getCRLs());
+            detached = detachedX509;
+        } else if (credential.getPublicKey() != null) {
+            detached = new BasicCredential(credential.getPublicKey());
+        } else {
+            // metadata only ever yields public keys and certificates, so there is nothing else to detach
+            return credential;
+        }
+        detached.setEntityId(credential.getEntityId());
+        detached.setUsageType(credential.getUsageType());
+        detached.getKeyNames().addAll(credential.getKeyNames());
+        return detached;
+    }
+
+    private static List<Object> cacheKey(CriteriaSet criteria) {
+        if (criteria == null) {
+            return null;
+        }
+        String entityId = null;
+        Object role = null;
+        Object usage = null;
+        String protocol = null;
+        String keyAlgorithm = null;
+        for (Criterion criterion : criteria) {
+            if (criterion instanceof EntityIdCriterion) {
+                entityId = ((EntityIdCriterion) criterion).getEntityId();
+            } else if (criterion instanceof EntityRoleCriterion) {
+                role = ((EntityRoleCriterion) criterion).getRole();
+            } else if (criterion instanceof UsageCriterion) {
+                usage = ((UsageCriterion) criterion).getUsage();
+            } else if (criterion instanceof ProtocolCriterion) {
+                protocol = ((ProtocolCriterion) criterion).getProtocol();
+            } else if (criterion instanceof KeyAlgorithmCriterion) {
+                keyAlgorithm = ((KeyAlgorithmCriterion) criterion).getKeyAlgorithm();
+            } else {
+                return null;
+            }
+        }
+        return entityId == null ? null : Arrays.asList(entityId, role, usage, protocol, keyAlgorithm);
+    }
+
+    private static class CachedCredentials {
+        private final Object generation;
+        private final List<Credential> credentials;
+
+        private CachedCredentials(Object generation, List<Credential> credentials) {
+            this.generation = generation;
+            this.credentials = credentials;
+        }
+    }
+}
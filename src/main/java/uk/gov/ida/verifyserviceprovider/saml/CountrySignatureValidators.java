@@ -0,0 +1,125 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
+import uk.gov.ida.saml.security.SamlAssertionsSignatureValidator;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+import uk.gov.ida.verifyserviceprovider.factories.saml.SignatureValidatorFactory;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Validates the signatures on country assertions, keeping a SamlAssertionsSignatureValidator
+ * for each country rather than building one for every response.
+ *
+ * A country's validator is rebuilt when the repository hands back a different trust engine
+ * for it, i.e. when its metadata resolver has been replaced, and all of them are dropped
+ * whenever the trust anchor has been refreshed.
+ */
+public class CountrySignatureValidators {
+
+    private static final String METRIC_PREFIX = "eidas-signature-validators";
+
+    private final Function<String, Optional<ExplicitKeySignatureTrustEngine>> trustEngines;
+    private final SignatureValidatorFactory signatureValidatorFactory;
+    private final LongSupplier trustAnchorGeneration;
+    private final MetricRegistry metricRegistry;
+    private final Map<String, CountrySignatureValidator> validators = new ConcurrentHashMap<>();
+    private volatile long validatorsGeneration;
+
+    public CountrySignatureValidators(
+            Function<String, Optional<ExplicitKeySignatureTrustEngine>> trustEngines,
+            SignatureValidatorFactory signatureValidatorFactory,
+            LongSupplier trustAnchorGeneration,
+            MetricRegistry metricRegistry
+    ) {
+        this.trustEngines = trustEngines;
+        this.signatureValidatorFactory = signatureValidatorFactory;
+        this.trustAnchorGeneration = trustAnchorGeneration;
+        this.metricRegistry = metricRegistry;
+        this.validatorsGeneration = trustAnchorGeneration.getAsLong();
+        metricRegistry.gauge(MetricRegistry.name(METRIC_PREFIX, "size"), () -> (Gauge<Integer>) validators::size);
+    }
+
+    public static CountrySignatureValidators forRepository(
+            Supplier<Optional<EidasCountryMetadataRepository>> metadataResolverRepository,
+            EidasCountryIssuers countryIssuers,
+            MetricRegistry metricRegistry
+    ) {
+        return new CountrySignatureValidators(
+                entityId -> metadataResolverRepository.get().flatMap(repository -> repository.getSignatureTrustEngine(entityId)),
+                new SignatureValidatorFactory(),
+                countryIssuers::getGeneration,
+                metricRegistry
+        );
+    }
+
+    public void validate(Assertion assertion) {
+        String entityId = assertion.getIssuer().getValue();
+        CountrySignatureValidator validator = getValidator(entityId)
+                .orElseThrow(() -> new SamlResponseValidationException("Unable to find metadata resolver for entity Id " + entityId));
+
+        try (Timer.Context ignored = validator.validation.time()) {
+            validator.signatureValidator.validate(singletonList(assertion), IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        }
+    }
+
+    private Optional<CountrySignatureValidator> getValidator(String entityId) {
+        evictIfTrustAnchorRefreshed();
+
+        Optional<ExplicitKeySignatureTrustEngine> trustEngine = trustEngines.apply(entityId);
+        if (!trustEngine.isPresent()) {
+            validators.remove(entityId);
+            return Optional.empty();
+        }
+
+        CountrySignatureValidator cached = validators.get(entityId);
+        if (cached != null && cached.trustEngine == trustEngine.get()) {
+            return Optional.of(cached);
+        }
+
+        Optional<CountrySignatureValidator> validator = signatureValidatorFactory.getSignatureValidator(trustEngine)
+                .map(signatureValidator -> new CountrySignatureValidator(
+                        trustEngine.get(),
+                        signatureValidator,
+                        metricRegistry.timer(MetricRegistry.name(METRIC_PREFIX, entityId, "validation"))
+                ));
+        validator.ifPresent(it -> validators.put(entityId, it));
+        return validator;
+    }
+
+    private void evictIfTrustAnchorRefreshed() {
+        long generation = trustAnchorGeneration.getAsLong();
+        if (generation != validatorsGeneration) {
+            synchronized (this) {
+                if (generation != validatorsGeneration) {
+                    validators.clear();
+                    validatorsGeneration = generation;
+                }
+            }
+        }
+    }
+
+    private static class CountrySignatureValidator {
+        private final ExplicitKeySignatureTrustEngine trustEngine;
+        private final SamlAssertionsSignatureValidator signatureValidator;
+        private final Timer validation;
+
+        private CountrySignatureValidator(ExplicitKeySignatureTrustEngine trustEngine, SamlAssertionsSignatureValidator signatureValidator, Timer validation) {
+            this.trustEngine = trustEngine;
+            this.signatureValidator = signatureValidator;
+            this.validation = validation;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * An immutable snapshot of the entity ids of the countries we have eIDAS metadata for.
+ *
+ * The snapshot is only rebuilt when refresh is called, normally once the
+ * EidasCountryMetadataRepository has refreshed its resolvers from the trust anchor, so
+ * checking whether an assertion was issued by a country is a hash lookup that never
+ * touches the repository.
+ */
+public class EidasCountryIssuers {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EidasCountryIssuers.class);
+    private static final String METRIC_PREFIX = "eidas-country-issuers";
+
+    private final Supplier<? extends Collection<String>> countryEntityIds;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(new Snapshot(0, ImmutableSet.of()));
+
+    public EidasCountryIssuers(Supplier<? extends Collection<String>> countryEntityIds, MetricRegistry metricRegistry) {
+        this.countryEntityIds = countryEntityIds;
+        metricRegistry.gauge(MetricRegistry.name(METRIC_PREFIX, "generation"), () -> (Gauge<Long>) this::getGeneration);
+        metricRegistry.gauge(MetricRegistry.name(METRIC_PREFIX, "age-ms"), () -> (Gauge<Long>) () -> System.currentTimeMillis() - snapshot.get().createdAtMillis);
+        metricRegistry.gauge(MetricRegistry.name(METRIC_PREFIX, "size"), () -> (Gauge<Integer>) () -> snapshot.get().entityIds.size());
+    }
+
+    /**
+     * Takes a snapshot of the repository's countries now and again after each of the
+     * repository's scheduled refreshes, which must run on the given scheduler. There are no
+     * countries until the repository has been loaded.
+     */
+    public static EidasCountryIssuers watching(
+            Supplier<Optional<EidasCountryMetadataRepository>> metadataResolverRepository,
+            MetadataRefreshScheduler refreshScheduler,
+            MetricRegistry metricRegistry
+    ) {
+        EidasCountryIssuers countryIssuers = new EidasCountryIssuers(
+                () -> metadataResolverRepository.get().map(EidasCountryMetadataRepository::getResolverEntityIds).orElse(emptyList()),
+                metricRegistry
+        );
+        refreshScheduler.addRefreshListener(countryIssuers::refresh);
+        countryIssuers.refresh();
+        return countryIssuers;
+    }
+
+    /**
+     * For when eIDAS is disabled: never contains any countries.
+     */
+    public static EidasCountryIssuers none() {
+        return new EidasCountryIssuers(ImmutableSet::of, new MetricRegistry());
+    }
+
+    public synchronized void refresh() {
+        Snapshot current = snapshot.get();
+        try {
+            snapshot.set(new Snapshot(current.generation + 1, ImmutableSet.copyOf(countryEntityIds.get())));
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to refresh the eIDAS country entity ids, continuing to use generation {}", current.generation, e);
+        }
+    }
+
+    public boolean isCountryIssuer(String entityId) {
+        return snapshot.get().entityIds.contains(entityId);
+    }
+
+    /**
+     * The current snapshot, which later refreshes do not change.
+     */
+    public Set<String> getEntityIds() {
+        return snapshot.get().entityIds;
+    }
+
+    public long getGeneration() {
+        return snapshot.get().generation;
+    }
+
+    private static class Snapshot {
+        private final long generation;
+        private final ImmutableSet<String> entityIds;
+        private final long createdAtMillis = System.currentTimeMillis();
+
+        private Snapshot(long generation, ImmutableSet<String> entityIds) {
+            this.generation = generation;
+            this.entityIds = entityIds;
+        }
+    }
+}
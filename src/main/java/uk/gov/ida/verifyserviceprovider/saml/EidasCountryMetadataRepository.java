@@ -0,0 +1,158 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import com.nimbusds.jose.jwk.JWK;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.ida.saml.metadata.EidasTrustAnchorResolver;
+import uk.gov.ida.saml.metadata.factories.MetadataSignatureTrustEngineFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Timer;
+
+/**
+ * The metadata resolver and signature trust engine of each country in the eIDAS trust anchor.
+ *
+ * This takes the place of saml-libs' EidasMetadataResolverRepository, which fetches every
+ * country's metadata as it is built and refreshes them all one after another on a single Timer.
+ * refreshTrustAnchors only creates a resolver for each country that is new to the trust anchor or
+ * whose trust anchor has changed; the resolvers fetch their own metadata on the refresh pool, so
+ * the countries load in parallel and none of them holds up the trust anchor. The Timer the
+ * resolvers use to say when a refresh is due belongs to the repository, and is stopped by close().
+ *
+ * Each country's trust engine resolves its credentials through a CachingCredentialResolver, so
+ * validating a country's signatures only looks its keys up in the metadata again once that
+ * country's metadata has changed.
+ */
+public class EidasCountryMetadataRepository {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EidasCountryMetadataRepository.class);
+
+    private final EidasTrustAnchorResolver trustAnchorResolver;
+    private final CountryMetadataResolverFactory countryMetadataResolverFactory;
+    private final MetadataSignatureTrustEngineFactory signatureTrustEngineFactory;
+    private final MetricRegistry metricRegistry;
+    private final Timer refreshTrigger = new Timer("eidas-country-metadata-refresh-trigger", true);
+    private volatile Map<String, Country> countries = Collections.emptyMap();
+
+    public EidasCountryMetadataRepository(
+            EidasTrustAnchorResolver trustAnchorResolver,
+            CountryMetadataResolverFactory countryMetadataResolverFactory,
+            MetadataSignatureTrustEngineFactory signatureTrustEngineFactory,
+            MetricRegistry metricRegistry
+    ) {
+        this.trustAnchorResolver = trustAnchorResolver;
+        this.countryMetadataResolverFactory = countryMetadataResolverFactory;
+        this.signatureTrustEngineFactory = signatureTrustEngineFactory;
+        this.metricRegistry = metricRegistry;
+    }
+
+    /**
+     * Fetches the trust anchor, and creates, replaces and destroys country resolvers to match it.
+     * A country whose resolver cannot be created is left out, or keeps its old resolver, until the
+     * next refresh.
+     */
+    public synchronized void refreshTrustAnchors() {
+        List<JWK> trustAnchors;
+        try {
+            trustAnchors = trustAnchorResolver.getTrustAnchors();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to fetch the eIDAS trust anchor", e);
+        }
+
+        Map<String, Country> current = countries;
+        Map<String, Country> updated = new LinkedHashMap<>();
+        for (JWK trustAnchor : trustAnchors) {
+            String entityId = trustAnchor.getKeyID();
+            Country country = current.get(entityId);
+            if (country != null && country.trustAnchor.equals(trustAnchor.toJSONString())) {
+                updated.put(entityId, country);
+                continue;
+            }
+            try {
+                updated.put(entityId, createCountry(trustAnchor));
+            } catch (Exception e) {
+                LOG.error("Unable to create a metadata resolver for country {}", entityId, e);
+                if (country != null) {
+                    updated.put(entityId, country);
+                }
+            }
+        }
+        countries = Collections.unmodifiableMap(updated);
+
+        current.forEach((entityId, country) -> {
+            if (updated.get(entityId) != country) {
+                country.metadataResolver.destroy();
+            }
+        });
+    }
+
+    public List<String> getResolverEntityIds() {
+        return new ArrayList<>(countries.keySet());
+    }
+
+    public Optional<MetadataResolver> getMetadataResolver(String entityId) {
+        return getCountryMetadataResolver(entityId).map(MetadataResolver.class::cast);
+    }
+
+    public Optional<EidasCountryMetadataResolver> getCountryMetadataResolver(String entityId) {
+        return Optional.ofNullable(countries.get(entityId)).map(country -> country.metadataResolver);
+    }
+
+    public Optional<ExplicitKeySignatureTrustEngine> getSignatureTrustEngine(String entityId) {
+        return Optional.ofNullable(countries.get(entityId)).map(country -> country.signatureTrustEngine);
+    }
+
+    /**
+     * Destroys every country resolver and stops their refreshes.
+     */
+    public synchronized void close() {
+        Map<String, Country> current = countries;
+        countries = Collections.emptyMap();
+        current.values().forEach(country -> country.metadataResolver.destroy());
+        refreshTrigger.cancel();
+    }
+
+    private Country createCountry(JWK trustAnchor) throws Exception {
+        EidasCountryMetadataResolver metadataResolver = countryMetadataResolverFactory.create(trustAnchor, refreshTrigger);
+        try {
+            ExplicitKeySignatureTrustEngine signatureTrustEngine = CachingCredentialResolver.cachingSignatureTrustEngine(
+                    signatureTrustEngineFactory.createSignatureTrustEngine(metadataResolver),
+                    metadataResolver,
+                    metricRegistry,
+                    MetricRegistry.name("eidas", trustAnchor.getKeyID())
+            );
+            return new Country(trustAnchor.toJSONString(), metadataResolver, signatureTrustEngine);
+        } catch (Exception e) {
+            metadataResolver.destroy();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates and initializes the resolver for a country, which must refresh on the Timer given.
+     */
+    @FunctionalInterface
+    public interface CountryMetadataResolverFactory {
+        EidasCountryMetadataResolver create(JWK trustAnchor, Timer refreshTrigger) throws Exception;
+    }
+
+    private static class Country {
+        private final String trustAnchor;
+        private final EidasCountryMetadataResolver metadataResolver;
+        private final ExplicitKeySignatureTrustEngine signatureTrustEngine;
+
+        private Country(String trustAnchor, EidasCountryMetadataResolver metadataResolver, ExplicitKeySignatureTrustEngine signatureTrustEngine) {
+            this.trustAnchor = trustAnchor;
+            this.metadataResolver = metadataResolver;
+            this.signatureTrustEngine = signatureTrustEngine;
+        }
+    }
+}
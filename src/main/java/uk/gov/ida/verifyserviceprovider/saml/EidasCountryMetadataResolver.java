@@ -0,0 +1,233 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import io.dropwizard.util.Duration;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.joda.time.DateTime;
+import org.opensaml.saml.metadata.resolver.impl.AbstractReloadingMetadataResolver;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Fetches one eIDAS country's metadata over the VSP's JAX-RS client.
+ *
+ * AbstractReloadingMetadataResolver runs every refresh, including the first one made by
+ * initialize(), on the thread of the Timer it is given. Here that Timer only says when a refresh
+ * is due: the refresh itself is handed to the shared refresh pool, so initializing a resolver
+ * never waits on the network and a slow country only ever holds up one of the pool's threads.
+ * The delay before each refresh gets up to maxJitter added, so that the countries, and instances
+ * started together, do not all refresh at the same moment.
+ *
+ * Repeat fetches are made conditional with the ETag and Last-Modified of the last document that
+ * was applied, and a hash of that document is kept. When the server answers 304 Not Modified, or
+ * sends back the same document, the refresh hands AbstractReloadingMetadataResolver nothing new,
+ * so the document is not parsed, filtered or checked again and the metadata already in use stays.
+ *
+ * The time each refresh takes, the number that fail, and the number that applied a new document
+ * or were skipped because it had not changed are reported for each country as
+ * eidas-metadata-refresh metrics named by its entity id.
+ */
+public class EidasCountryMetadataResolver extends AbstractReloadingMetadataResolver {
+
+    private static final String METRIC_PREFIX = "eidas-metadata-refresh";
+
+    private final String entityId;
+    private final URI metadataUri;
+    private final Client client;
+    private final Executor refreshExecutor;
+    private final long maxJitterMillis;
+    private final Timer duration;
+    private final Meter failures;
+    private final Meter applied;
+    private final Meter skipped;
+    // only used within refresh, which AbstractReloadingMetadataResolver synchronizes
+    private AppliedDocument appliedDocument;
+    private AppliedDocument fetchedDocument;
+    private volatile boolean loaded;
+    private volatile Throwable lastFailure;
+
+    public EidasCountryMetadataResolver(
+            String entityId,
+            URI metadataUri,
+            Client client,
+            java.util.Timer refreshTrigger,
+            Executor refreshExecutor,
+            Duration maxJitter,
+            MetricRegistry metricRegistry
+    ) {
+        super(refreshTrigger);
+        this.entityId = entityId;
+        this.metadataUri = metadataUri;
+        this.client = client;
+        this.refreshExecutor = refreshExecutor;
+        this.maxJitterMillis = maxJitter.toMilliseconds();
+        this.duration = metricRegistry.timer(MetricRegistry.name(METRIC_PREFIX, entityId, "duration"));
+        this.failures = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, entityId, "failures"));
+        this.applied = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, entityId, "applied"));
+        this.skipped = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, entityId, "skipped"));
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    /**
+     * Whether a refresh has ever succeeded.
+     */
+    public boolean hasLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Why the last refresh failed, or nothing if it succeeded or none has finished yet.
+     */
+    public Optional<Throwable> getLastFailure() {
+        return Optional.ofNullable(lastFailure);
+    }
+
+    /**
+     * Refreshes the metadata on the refresh pool.
+     *
+     * @return completes once the refresh has run, exceptionally if it failed
+     */
+    public CompletableFuture<Void> refreshAsync() {
+        CompletableFuture<Void> refreshed = new CompletableFuture<>();
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    refreshNow();
+                    refreshed.complete(null);
+                } catch (Exception e) {
+                    refreshed.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshed.completeExceptionally(e);
+        }
+        return refreshed;
+    }
+
+    /**
+     * Hands the refresh to the refresh pool and returns straight away. This is what the refresh
+     * Timer and initialize() call; failures are logged by AbstractReloadingMetadataResolver.
+     */
+    @Override
+    public void refresh() {
+        refreshAsync();
+    }
+
+    private void refreshNow() throws ResolverException {
+        if (isDestroyed()) {
+            return;
+        }
+        try (Timer.Context ignored = duration.time()) {
+            super.refresh();
+            lastFailure = null;
+            loaded = true;
+        } catch (ResolverException | RuntimeException e) {
+            if (isDestroyed()) {
+                // replaced or shut down part way through, so there is nothing left to report to
+                return;
+            }
+            failures.mark();
+            lastFailure = e;
+            throw e;
+        }
+    }
+
+    @Override
+    protected String getMetadataIdentifier() {
+        return metadataUri.toString();
+    }
+
+    /**
+     * @return the document fetched, or null if it is the one already applied
+     */
+    @Override
+    protected byte[] fetchMetadata() throws ResolverException {
+        fetchedDocument = null;
+        try {
+            Invocation.Builder request = client.target(metadataUri).request();
+            if (appliedDocument != null) {
+                appliedDocument.addConditions(request);
+            }
+            Response response = request.get();
+            try {
+                if (response.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode() && appliedDocument != null) {
+                    skipped.mark();
+                    return null;
+                }
+                if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+                    throw new ResolverException("Unable to fetch metadata for " + entityId + " from " + metadataUri + ", got status " + response.getStatus());
+                }
+                byte[] document = response.readEntity(byte[].class);
+                AppliedDocument fetched = new AppliedDocument(
+                        response.getHeaderString(HttpHeaders.ETAG),
+                        response.getHeaderString(HttpHeaders.LAST_MODIFIED),
+                        Hashing.sha256().hashBytes(document)
+                );
+                if (appliedDocument != null && appliedDocument.hash.equals(fetched.hash)) {
+                    // the same document again, but the server may have sent new validators with it
+                    appliedDocument = fetched;
+                    skipped.mark();
+                    return null;
+                }
+                fetchedDocument = fetched;
+                return document;
+            } finally {
+                response.close();
+            }
+        } catch (ProcessingException e) {
+            throw new ResolverException("Unable to fetch metadata for " + entityId + " from " + metadataUri, e);
+        }
+    }
+
+    @Override
+    protected void processNewMetadata(String metadataIdentity, DateTime refreshStart, byte[] metadataBytes) throws ResolverException {
+        super.processNewMetadata(metadataIdentity, refreshStart, metadataBytes);
+        // only remembered once it has been parsed and checked, so a rejected document is fetched in full again
+        appliedDocument = fetchedDocument;
+        applied.mark();
+    }
+
+    @Override
+    protected long computeNextRefreshDelay(DateTime expectedExpiration) {
+        long delay = super.computeNextRefreshDelay(expectedExpiration);
+        return maxJitterMillis > 0 ? delay + ThreadLocalRandom.current().nextLong(maxJitterMillis + 1) : delay;
+    }
+
+    private static class AppliedDocument {
+        private final String entityTag;
+        private final String lastModified;
+        private final HashCode hash;
+
+        private AppliedDocument(String entityTag, String lastModified, HashCode hash) {
+            this.entityTag = entityTag;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        private void addConditions(Invocation.Builder request) {
+            if (entityTag != null) {
+                request.header(HttpHeaders.IF_NONE_MATCH, entityTag);
+            }
+            if (lastModified != null) {
+                request.header(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.health.HealthCheck;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.ida.verifyserviceprovider.healthcheck.MetadataHealthCheck;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Loads the eIDAS trust anchor and country metadata in the background, so that starting
+ * the VSP does not wait for them to be fetched.
+ *
+ * The trust anchor is loaded on the executor, and then refreshed every trustAnchorRefreshInterval
+ * through the MetadataRefreshScheduler. Each time it is, the repository creates resolvers for the
+ * countries that are new to it, and those fetch their metadata on the same executor, in parallel
+ * with each other. One that fails is retried by its resolver at its next refresh.
+ *
+ * Every country has a health check of its own, which reports whether its current resolver is
+ * still loading, has loaded, has failed, or has taken longer than countryLoadTimeout to load.
+ * Those checks are kept in their own registry, so that one slow or broken country does not make
+ * the VSP unhealthy. The main registry gets a check that is unhealthy until every country has
+ * either loaded, failed or timed out, so the VSP is not ready before the countries have had
+ * their chance to load but never waits on them for longer than countryLoadTimeout. After that it
+ * is only unhealthy when no country at all is usable.
+ */
+public class EidasMetadataLoader implements Managed, Supplier<Optional<EidasCountryMetadataRepository>> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EidasMetadataLoader.class);
+    private static final String HEALTH_CHECK_PREFIX = "eidas-metadata";
+    private static final String TRUST_ANCHOR_HEALTH_CHECK = HEALTH_CHECK_PREFIX + ".trust-anchor";
+    private static final String COUNTRIES_HEALTH_CHECK = HEALTH_CHECK_PREFIX + ".countries";
+    private static final long LOAD_RETRY_DELAY_SECONDS = 30;
+
+    private final EidasCountryMetadataRepository repository;
+    private final MetadataRefreshScheduler refreshScheduler;
+    private final ScheduledExecutorService executorService;
+    private final long trustAnchorRefreshIntervalMillis;
+    private final long countryLoadTimeoutMillis;
+    private final HealthCheckRegistry healthChecks;
+    private final HealthCheckRegistry countryHealthChecks = new HealthCheckRegistry();
+    private final Map<String, CountryHealthCheck> countries = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshFromNetworkPending = new AtomicBoolean();
+    private volatile boolean trustAnchorLoaded;
+
+    public EidasMetadataLoader(
+            EidasCountryMetadataRepository repository,
+            MetadataRefreshScheduler refreshScheduler,
+            ScheduledExecutorService executorService,
+            Duration trustAnchorRefreshInterval,
+            Duration countryLoadTimeout,
+            HealthCheckRegistry healthChecks
+    ) {
+        this.repository = repository;
+        this.refreshScheduler = refreshScheduler;
+        this.executorService = executorService;
+        this.trustAnchorRefreshIntervalMillis = trustAnchorRefreshInterval.toMilliseconds();
+        this.countryLoadTimeoutMillis = countryLoadTimeout.toMilliseconds();
+        this.healthChecks = healthChecks;
+        refreshScheduler.addRefreshListener(this::loadCountries);
+    }
+
+    @Override
+    public void start() {
+        healthChecks.register(TRUST_ANCHOR_HEALTH_CHECK, new HealthCheck() {
+            @Override
+            protected Result check() {
+                return trustAnchorLoaded ? Result.healthy() : Result.unhealthy("The eIDAS trust anchor is still loading");
+            }
+        });
+        healthChecks.register(COUNTRIES_HEALTH_CHECK, new CountriesHealthCheck());
+        executorService.execute(this::loadTrustAnchor);
+    }
+
+    @Override
+    public void stop() {
+        refreshScheduler.cancel();
+        repository.close();
+    }
+
+    /**
+     * The repository, once the trust anchor has been loaded.
+     */
+    @Override
+    public Optional<EidasCountryMetadataRepository> get() {
+        return trustAnchorLoaded ? Optional.of(repository) : Optional.empty();
+    }
+
+    /**
+     * Refreshes every country's metadata from the network as soon as the countries next
+     * load, for when some of what they loaded may have come from the disk cache.
+     */
+    public void refreshCountriesFromNetwork() {
+        refreshFromNetworkPending.set(true);
+    }
+
+    /**
+     * A health check for each country, named by its entity id.
+     */
+    public HealthCheckRegistry getCountryHealthChecks() {
+        return countryHealthChecks;
+    }
+
+    private void loadTrustAnchor() {
+        try {
+            repository.refreshTrustAnchors();
+            LOG.info("Loaded the eIDAS trust anchor");
+        } catch (RuntimeException e) {
+            LOG.error("Unable to load the eIDAS trust anchor, trying again in {} seconds", LOAD_RETRY_DELAY_SECONDS, e);
+            executorService.schedule(this::loadTrustAnchor, LOAD_RETRY_DELAY_SECONDS, TimeUnit.SECONDS);
+            return;
+        }
+        trustAnchorLoaded = true;
+        refreshScheduler.scheduleWithFixedDelay(repository::refreshTrustAnchors, trustAnchorRefreshIntervalMillis, trustAnchorRefreshIntervalMillis, TimeUnit.MILLISECONDS);
+        refreshScheduler.notifyRefreshListeners();
+    }
+
+    /**
+     * Registers a health check for each country that is new to the trust anchor, starts the load
+     * timeout of each new resolver, and drops the health checks of countries that have left it.
+     */
+    public synchronized void loadCountries() {
+        if (!trustAnchorLoaded) {
+            return;
+        }
+
+        Set<String> entityIds = new HashSet<>(repository.getResolverEntityIds());
+        countries.keySet().removeIf(entityId -> {
+            if (entityIds.contains(entityId)) {
+                return false;
+            }
+            countryHealthChecks.unregister(entityId);
+            return true;
+        });
+
+        for (String entityId : entityIds) {
+            CountryHealthCheck healthCheck = countries.computeIfAbsent(entityId, newEntityId -> {
+                CountryHealthCheck newHealthCheck = new CountryHealthCheck(newEntityId);
+                countryHealthChecks.register(newEntityId, newHealthCheck);
+                return newHealthCheck;
+            });
+            repository.getCountryMetadataResolver(entityId).ifPresent(healthCheck::watch);
+        }
+
+        if (refreshFromNetworkPending.compareAndSet(true, false)) {
+            for (String entityId : entityIds) {
+                repository.getCountryMetadataResolver(entityId).ifPresent(EidasCountryMetadataResolver::refreshAsync);
+            }
+        }
+    }
+
+    private enum LoadState {
+        LOADING, LOADED, FAILED, TIMED_OUT
+    }
+
+    private class CountryHealthCheck extends HealthCheck {
+        private final String entityId;
+        private volatile EidasCountryMetadataResolver watchedResolver;
+        private volatile EidasCountryMetadataResolver timedOutResolver;
+
+        private CountryHealthCheck(String entityId) {
+            this.entityId = entityId;
+        }
+
+        /**
+         * Starts the load timeout of a resolver the country has not had before, which is each
+         * time the repository replaces it because the country's trust anchor has changed.
+         */
+        private void watch(EidasCountryMetadataResolver metadataResolver) {
+            if (metadataResolver == watchedResolver) {
+                return;
+            }
+            watchedResolver = metadataResolver;
+            executorService.schedule(() -> timeOut(metadataResolver), countryLoadTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private void timeOut(EidasCountryMetadataResolver metadataResolver) {
+            if (getState(metadataResolver) == LoadState.LOADING) {
+                timedOutResolver = metadataResolver;
+                LOG.warn("Metadata for country {} has not loaded after {}ms, continuing to load it in the background", entityId, countryLoadTimeoutMillis);
+            }
+        }
+
+        private LoadState getState(EidasCountryMetadataResolver metadataResolver) {
+            if (metadataResolver.hasLoaded()) {
+                return LoadState.LOADED;
+            }
+            if (metadataResolver.getLastFailure().isPresent()) {
+                return LoadState.FAILED;
+            }
+            return metadataResolver == timedOutResolver ? LoadState.TIMED_OUT : LoadState.LOADING;
+        }
+
+        private boolean isLoading() {
+            return repository.getCountryMetadataResolver(entityId)
+                    .map(metadataResolver -> getState(metadataResolver) == LoadState.LOADING)
+                    .orElse(false);
+        }
+
+        @Override
+        protected Result check() {
+            // the repository replaces a country's resolver when its trust anchor changes,
+            // so it is the current resolver that says whether the country is usable
+            Optional<EidasCountryMetadataResolver> metadataResolver = repository.getCountryMetadataResolver(entityId);
+            if (!metadataResolver.isPresent()) {
+                return Result.unhealthy("No metadata resolver for country " + entityId);
+            }
+            Result current = new MetadataHealthCheck(metadataResolver.get(), entityId).execute();
+            if (current.isHealthy()) {
+                return current;
+            }
+            switch (getState(metadataResolver.get())) {
+                case FAILED:
+                    return Result.unhealthy("Could not load metadata for country " + entityId + ". " + metadataResolver.get().getLastFailure().get().getMessage());
+                case TIMED_OUT:
+                    return Result.unhealthy("Metadata for country " + entityId + " has not loaded after " + countryLoadTimeoutMillis + "ms");
+                case LOADING:
+                    return Result.unhealthy("Metadata for country " + entityId + " is still loading");
+                default:
+                    return current;
+            }
+        }
+    }
+
+    private class CountriesHealthCheck extends HealthCheck {
+        private volatile boolean initialLoadFinished;
+
+        @Override
+        protected Result check() {
+            if (!trustAnchorLoaded || countries.isEmpty()) {
+                return Result.healthy();
+            }
+            if (!initialLoadFinished) {
+                List<String> loading = countries.values().stream()
+                        .filter(CountryHealthCheck::isLoading)
+                        .map(country -> country.entityId)
+                        .sorted()
+                        .collect(toList());
+                if (!loading.isEmpty()) {
+                    return Result.unhealthy("Still loading metadata for " + String.join(", ", loading) + ", for at most " + countryLoadTimeoutMillis + "ms");
+                }
+                initialLoadFinished = true;
+            }
+            SortedMap<String, Result> results = countryHealthChecks.runHealthChecks();
+            List<String> unusable = results.entrySet().stream()
+                    .filter(result -> !result.getValue().isHealthy())
+                    .map(Map.Entry::getKey)
+                    .collect(toList());
+            if (unusable.size() == results.size()) {
+                return Result.unhealthy("No eIDAS country has usable metadata");
+            }
+            if (unusable.isEmpty()) {
+                return Result.healthy();
+            }
+            return Result.healthy("Metadata is not usable for " + String.join(", ", unusable));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A ParserPool that hands out DocumentBuilders configured the same way as OpenSAML's
+ * BasicParserPool (no DTDs, entity expansion or XInclude), but which keeps up to one idle
+ * builder per Jetty worker thread rather than a small fixed number, so request threads
+ * do not fall back to building a new parser under load.
+ *
+ * Builders are reset before being returned to the pool. Borrowing never blocks: a borrow that
+ * finds the pool empty creates a new builder instead, which is what a caller actually waits on,
+ * so the saml-parser-pool.&lt;name&gt;.misses timer counts those borrows and times the creation.
+ */
+public class InstrumentedParserPool implements ParserPool {
+
+    public static final int DEFAULT_MAX_POOL_SIZE = 64;
+    private static final String METRIC_PREFIX = "saml-parser-pool";
+    private static final String DISALLOW_DOCTYPE_DECLARATIONS = "http://apache.org/xml/features/disallow-doctype-decl";
+    private static final Logger LOG = LoggerFactory.getLogger(InstrumentedParserPool.class);
+
+    private static final ErrorHandler THROWING_ERROR_HANDLER = new ErrorHandler() {
+        @Override
+        public void warning(SAXParseException exception) {
+            LOG.debug("XML parser warning", exception);
+        }
+
+        @Override
+        public void error(SAXParseException exception) throws SAXException {
+            throw exception;
+        }
+
+        @Override
+        public void fatalError(SAXParseException exception) throws SAXException {
+            throw exception;
+        }
+    };
+
+    private final DocumentBuilderFactory documentBuilderFactory;
+    private final BlockingQueue<DocumentBuilder> idleBuilders;
+    private final Timer misses;
+
+    /**
+     * @param name distinguishes this pool's metrics from those of any other pool on the same registry
+     */
+    public InstrumentedParserPool(String name, int maxPoolSize, MetricRegistry metricRegistry) {
+        this.documentBuilderFactory = createSecureDocumentBuilderFactory();
+        this.idleBuilders = new ArrayBlockingQueue<>(maxPoolSize);
+        this.misses = metricRegistry.timer(MetricRegistry.name(METRIC_PREFIX, name, "misses"));
+        metricRegistry.gauge(MetricRegistry.name(METRIC_PREFIX, name, "idle"), () -> (Gauge<Integer>) idleBuilders::size);
+        metricRegistry.gauge(MetricRegistry.name(METRIC_PREFIX, name, "max-size"), () -> (Gauge<Integer>) () -> maxPoolSize);
+    }
+
+    @Override
+    public DocumentBuilder getBuilder() throws XMLParserException {
+        DocumentBuilder builder = idleBuilders.poll();
+        if (builder == null) {
+            try (Timer.Context ignored = misses.time()) {
+                builder = createBuilder();
+            }
+        }
+        builder.setErrorHandler(THROWING_ERROR_HANDLER);
+        return builder;
+    }
+
+    @Override
+    public void returnBuilder(DocumentBuilder builder) {
+        if (builder == null) {
+            return;
+        }
+        builder.reset();
+        idleBuilders.offer(builder);
+    }
+
+    @Override
+    public Document newDocument() throws XMLParserException {
+        DocumentBuilder builder = getBuilder();
+        try {
+            return builder.newDocument();
+        } finally {
+            returnBuilder(builder);
+        }
+    }
+
+    @Override
+    public Document parse(InputStream input) throws XMLParserException {
+        return parse(new InputSource(input));
+    }
+
+    @Override
+    public Document parse(Reader input) throws XMLParserException {
+        return parse(new InputSource(input));
+    }
+
+    private Document parse(InputSource input) throws XMLParserException {
+        DocumentBuilder builder = getBuilder();
+        try {
+            return builder.parse(input);
+        } catch (SAXException | IOException e) {
+            throw new XMLParserException("Unable to parse input, it contained invalid XML", e);
+        } finally {
+            returnBuilder(builder);
+        }
+    }
+
+    private DocumentBuilder createBuilder() throws XMLParserException {
+        try {
+            return documentBuilderFactory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new XMLParserException("Unable to create DocumentBuilder", e);
+        }
+    }
+
+    private static DocumentBuilderFactory createSecureDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setIgnoringComments(true);
+        factory.setIgnoringElementContentWhitespace(true);
+        factory.setCoalescing(true);
+        factory.setExpandEntityReferences(false);
+        factory.setXIncludeAware(false);
+        factory.setValidating(false);
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature(DISALLOW_DOCTYPE_DECLARATIONS, true);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Unable to configure a secure XML parser", e);
+        }
+        return factory;
+    }
+}
@@ -0,0 +1,121 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCriterion;
+import org.opensaml.xmlsec.keyinfo.KeyInfoSupport;
+import org.opensaml.xmlsec.signature.DEREncodedKeyValue;
+import org.opensaml.xmlsec.signature.KeyInfo;
+import org.opensaml.xmlsec.signature.KeyValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.KeyException;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Resolves the credential to unwrap an EncryptedKey with from the hints in the EncryptedKey's
+ * KeyInfo, so that while a second encryption key is configured during a key rotation the
+ * Decrypter does not first try the RSA unwrap with the wrong key.
+ *
+ * The hints understood are an X509 certificate, an RSA key value or a DER encoded key value,
+ * all compared by public key. The VSP is only configured with private keys, so key names and
+ * certificate digests cannot be matched. When there is no usable hint, or it matches none of
+ * the keys, every credential is returned in order and the Decrypter tries each in turn.
+ */
+public class KeyHintCredentialResolver implements KeyInfoCredentialResolver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KeyHintCredentialResolver.class);
+    private static final String METRIC_PREFIX = "decryption-keys";
+    private static final String[] KEY_NAMES = {"primary", "secondary"};
+
+    private final List<Credential> credentials;
+    private final List<Meter> selections = new ArrayList<>();
+    private final Meter trialDecryptions;
+
+    public KeyHintCredentialResolver(List<Credential> credentials, MetricRegistry metricRegistry) {
+        this.credentials = ImmutableList.copyOf(credentials);
+        for (int i = 0; i < credentials.size(); i++) {
+            String keyName = i < KEY_NAMES.length ? KEY_NAMES[i] : "key-" + (i + 1);
+            selections.add(metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, keyName, "selected")));
+        }
+        this.trialDecryptions = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "trial-decryptions"));
+    }
+
+    @Override
+    public Iterable<Credential> resolve(CriteriaSet criteria) {
+        KeyInfoCriterion keyInfoCriterion = criteria == null ? null : criteria.get(KeyInfoCriterion.class);
+        if (keyInfoCriterion != null && keyInfoCriterion.getKeyInfo() != null) {
+            List<PublicKey> hintedKeys = getHintedKeys(keyInfoCriterion.getKeyInfo());
+            for (int i = 0; i < credentials.size(); i++) {
+                PublicKey publicKey = credentials.get(i).getPublicKey();
+                if (hintedKeys.stream().anyMatch(hintedKey -> isSameKey(hintedKey, publicKey))) {
+                    selections.get(i).mark();
+                    return singletonList(credentials.get(i));
+                }
+            }
+        }
+
+        trialDecryptions.mark();
+        return credentials;
+    }
+
+    @Override
+    public Credential resolveSingle(CriteriaSet criteria) {
+        Iterable<Credential> resolved = resolve(criteria);
+        return resolved.iterator().hasNext() ? resolved.iterator().next() : null;
+    }
+
+    private static List<PublicKey> getHintedKeys(KeyInfo keyInfo) {
+        List<PublicKey> hintedKeys = new ArrayList<>();
+        try {
+            for (X509Certificate certificate : KeyInfoSupport.getCertificates(keyInfo)) {
+                hintedKeys.add(certificate.getPublicKey());
+            }
+        } catch (CertificateException e) {
+            LOG.debug("Ignoring unreadable certificate in EncryptedKey KeyInfo", e);
+        }
+        for (KeyValue keyValue : keyInfo.getKeyValues()) {
+            if (keyValue.getRSAKeyValue() != null) {
+                try {
+                    hintedKeys.add(KeyInfoSupport.getRSAKey(keyValue.getRSAKeyValue()));
+                } catch (KeyException e) {
+                    LOG.debug("Ignoring unreadable RSA key value in EncryptedKey KeyInfo", e);
+                }
+            }
+        }
+        for (DEREncodedKeyValue derEncodedKeyValue : keyInfo.getDEREncodedKeyValues()) {
+            try {
+                hintedKeys.add(KeyInfoSupport.getKey(derEncodedKeyValue));
+            } catch (KeyException e) {
+                LOG.debug("Ignoring unreadable DER encoded key value in EncryptedKey KeyInfo", e);
+            }
+        }
+        return hintedKeys;
+    }
+
+    private static boolean isSameKey(PublicKey hintedKey, PublicKey publicKey) {
+        if (publicKey == null) {
+            return false;
+        }
+        if (hintedKey instanceof RSAPublicKey && publicKey instanceof RSAPublicKey) {
+            RSAPublicKey hintedRsaKey = (RSAPublicKey) hintedKey;
+            RSAPublicKey rsaKey = (RSAPublicKey) publicKey;
+            return hintedRsaKey.getModulus().equals(rsaKey.getModulus())
+                    && hintedRsaKey.getPublicExponent().equals(rsaKey.getPublicExponent());
+        }
+        return Arrays.equals(hintedKey.getEncoded(), publicKey.getEncoded());
+    }
+}
@@ -0,0 +1,86 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Keeps the last copy of each metadata document fetched in a directory, one file per URI.
+ *
+ * Each document is written to a temporary file in the same directory and then moved over the
+ * previous copy, so a reader only ever sees a complete document even if the VSP dies part way
+ * through a write.
+ */
+public class MetadataDiskCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetadataDiskCache.class);
+
+    private final Path directory;
+
+    public MetadataDiskCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public Optional<byte[]> read(URI uri) {
+        Path cachedDocument = pathFor(uri);
+        try {
+            return Optional.of(Files.readAllBytes(cachedDocument));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            LOG.warn("Unable to read cached metadata for {} from {}", uri, cachedDocument, e);
+            return Optional.empty();
+        }
+    }
+
+    public boolean write(URI uri, byte[] document) {
+        Path cachedDocument = pathFor(uri);
+        Path temporaryFile = null;
+        try {
+            Files.createDirectories(directory);
+            temporaryFile = Files.createTempFile(directory, cachedDocument.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(document);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporaryFile, cachedDocument, ATOMIC_MOVE, REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Unable to cache metadata for {} in {}", uri, cachedDocument, e);
+            deleteQuietly(temporaryFile);
+            return false;
+        }
+    }
+
+    private Path pathFor(URI uri) {
+        return directory.resolve(Hashing.sha256().hashString(uri.toString(), StandardCharsets.UTF_8) + ".xml");
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Unable to delete {}", file, e);
+        }
+    }
+}
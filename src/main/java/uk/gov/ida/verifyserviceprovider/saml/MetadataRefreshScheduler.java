@@ -0,0 +1,155 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.dropwizard.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules eIDAS metadata refreshes on a ScheduledExecutorService, and runs its listeners
+ * after each refresh has run.
+ *
+ * Each refresh is delayed by up to maxJitter so that several instances started together do
+ * not all refresh at the same moment. The future of every refresh that is still pending is
+ * kept, so that cancelling the scheduler really does stop them rather than leaving them on
+ * the executor's queue. The executor itself belongs to the caller.
+ */
+public class MetadataRefreshScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetadataRefreshScheduler.class);
+    private static final String METRIC_PREFIX = "eidas-metadata-refresh";
+
+    private final ScheduledExecutorService executorService;
+    private final long maxJitterMillis;
+    private final List<Runnable> refreshListeners = new CopyOnWriteArrayList<>();
+    private final Set<ScheduledFuture<?>> pendingRefreshes = ConcurrentHashMap.newKeySet();
+    private final Timer duration;
+    private final Meter failures;
+    private volatile boolean cancelled;
+
+    public MetadataRefreshScheduler(ScheduledExecutorService executorService, Duration maxJitter, MetricRegistry metricRegistry) {
+        this.executorService = executorService;
+        this.maxJitterMillis = maxJitter.toMilliseconds();
+        this.duration = metricRegistry.timer(MetricRegistry.name(METRIC_PREFIX, "duration"));
+        this.failures = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "failures"));
+    }
+
+    public void addRefreshListener(Runnable refreshListener) {
+        refreshListeners.add(refreshListener);
+    }
+
+    /**
+     * Runs the listeners as if a refresh had just run, for when whatever they are listening
+     * to has been refreshed some other way.
+     */
+    public void notifyRefreshListeners() {
+        for (Runnable refreshListener : refreshListeners) {
+            try {
+                refreshListener.run();
+            } catch (RuntimeException e) {
+                LOG.error("Refresh listener failed", e);
+            }
+        }
+    }
+
+    public ScheduledFuture<?> schedule(Runnable refresh, long delay, TimeUnit unit) {
+        checkNotCancelled();
+        ListenedRefresh listenedRefresh = new ListenedRefresh(refresh, false);
+        return listenedRefresh.keep(executorService.schedule(listenedRefresh, withJitter(unit.toMillis(delay)), TimeUnit.MILLISECONDS));
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable refresh, long initialDelay, long delay, TimeUnit unit) {
+        checkNotCancelled();
+        ListenedRefresh listenedRefresh = new ListenedRefresh(refresh, true);
+        return listenedRefresh.keep(executorService.scheduleWithFixedDelay(
+                listenedRefresh, withJitter(unit.toMillis(initialDelay)), unit.toMillis(delay), TimeUnit.MILLISECONDS));
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable refresh, long initialDelay, long period, TimeUnit unit) {
+        checkNotCancelled();
+        ListenedRefresh listenedRefresh = new ListenedRefresh(refresh, true);
+        return listenedRefresh.keep(executorService.scheduleAtFixedRate(
+                listenedRefresh, withJitter(unit.toMillis(initialDelay)), unit.toMillis(period), TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Cancels every refresh that has not yet run, and refuses any more.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (ScheduledFuture<?> pendingRefresh : pendingRefreshes) {
+            pendingRefresh.cancel(false);
+        }
+        pendingRefreshes.clear();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void checkNotCancelled() {
+        if (cancelled) {
+            throw new IllegalStateException("Metadata refresh scheduler already cancelled.");
+        }
+    }
+
+    private long withJitter(long delay) {
+        return maxJitterMillis > 0 ? delay + ThreadLocalRandom.current().nextLong(maxJitterMillis + 1) : delay;
+    }
+
+    private class ListenedRefresh implements Runnable {
+        private final Runnable refresh;
+        private final boolean periodic;
+        private volatile ScheduledFuture<?> future;
+
+        private ListenedRefresh(Runnable refresh, boolean periodic) {
+            this.refresh = refresh;
+            this.periodic = periodic;
+        }
+
+        private ScheduledFuture<?> keep(ScheduledFuture<?> future) {
+            this.future = future;
+            pendingRefreshes.add(future);
+            if (cancelled) {
+                // cancel() may have missed a future added while it was clearing the set
+                future.cancel(false);
+            }
+            if (future.isDone()) {
+                pendingRefreshes.remove(future);
+            }
+            return future;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (cancelled) {
+                    return;
+                }
+                try (Timer.Context ignored = duration.time()) {
+                    refresh.run();
+                } catch (RuntimeException e) {
+                    // an exception escaping a periodic refresh would stop it from ever running again
+                    failures.mark();
+                    LOG.error("Scheduled eIDAS metadata refresh failed", e);
+                }
+                notifyRefreshListeners();
+            } finally {
+                if (!periodic && future != null) {
+                    pendingRefreshes.remove(future);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.io.ByteStreams;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Saves every metadata document fetched through the client it is registered on to a
+ * MetadataDiskCache, and answers the first request for each URI after startup from that
+ * cache instead of the network.
+ *
+ * Only the first request is answered from disk, and each time it is onCacheHit is run so
+ * that whatever made the request can fetch the document again from the network straight
+ * away rather than at its next scheduled refresh. The cached copy is handed to the resolver
+ * exactly as a fetched one would be, so its signature is checked against the configured
+ * trust stores before anything in it is used.
+ */
+public class PersistentMetadataCacheFilter implements ClientRequestFilter, ClientResponseFilter {
+
+    private static final String METRIC_PREFIX = "metadata-disk-cache";
+    private static final String SERVED_FROM_CACHE = PersistentMetadataCacheFilter.class.getName() + ".servedFromCache";
+
+    private final MetadataDiskCache metadataDiskCache;
+    private final Runnable onCacheHit;
+    private final Set<URI> requestedUris = ConcurrentHashMap.newKeySet();
+    private final Meter hits;
+    private final Meter writes;
+    private final Meter writeFailures;
+
+    public PersistentMetadataCacheFilter(MetadataDiskCache metadataDiskCache, Runnable onCacheHit, MetricRegistry metricRegistry) {
+        this.metadataDiskCache = metadataDiskCache;
+        this.onCacheHit = onCacheHit;
+        this.hits = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "hits"));
+        this.writes = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "writes"));
+        this.writeFailures = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "write-failures"));
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        if (!HttpMethod.GET.equals(requestContext.getMethod()) || !requestedUris.add(requestContext.getUri())) {
+            return;
+        }
+
+        Optional<byte[]> cachedDocument = metadataDiskCache.read(requestContext.getUri());
+        if (cachedDocument.isPresent()) {
+            hits.mark();
+            requestContext.setProperty(SERVED_FROM_CACHE, true);
+            requestContext.abortWith(Response.ok(cachedDocument.get()).build());
+            onCacheHit.run();
+        }
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) throws IOException {
+        if (!HttpMethod.GET.equals(requestContext.getMethod())
+                || requestContext.getProperty(SERVED_FROM_CACHE) != null
+                || responseContext.getStatus() != Response.Status.OK.getStatusCode()
+                || !responseContext.hasEntity()) {
+            return;
+        }
+
+        byte[] document;
+        try (InputStream entityStream = responseContext.getEntityStream()) {
+            document = ByteStreams.toByteArray(entityStream);
+        }
+        responseContext.setEntityStream(new ByteArrayInputStream(document));
+
+        if (metadataDiskCache.write(requestContext.getUri(), document)) {
+            writes.mark();
+        } else {
+            writeFailures.mark();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.saml2.core.Response;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import uk.gov.ida.saml.deserializers.validators.Base64StringDecoder;
+import uk.gov.ida.saml.deserializers.validators.NotNullSamlStringValidator;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+import uk.gov.ida.verifyserviceprovider.validators.ResponseSizeValidator;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Equivalent to saml-libs' StringToOpenSamlObjectTransformer for Responses, but parses
+ * with the given ParserPool rather than the process-wide one, and streams the base64
+ * decoded bytes into the parser rather than decoding the whole response into a String.
+ *
+ * The size limit still applies to the number of characters the response decodes to, as it
+ * did when the decoded String was measured, but it is enforced on the decoded stream as the
+ * parser reads it. Input that turns out not to be plain base64 goes through saml-libs'
+ * Base64StringDecoder as before, so that it is rejected (or accepted) in exactly the same way.
+ */
+public class PooledStringToResponseTransformer implements Function<String, Response> {
+
+    private final NotNullSamlStringValidator notNullSamlStringValidator;
+    private final Base64StringDecoder base64StringDecoder;
+    private final ResponseSizeValidator responseSizeValidator;
+    private final ParserPool parserPool;
+
+    public PooledStringToResponseTransformer(
+            NotNullSamlStringValidator notNullSamlStringValidator,
+            Base64StringDecoder base64StringDecoder,
+            ResponseSizeValidator responseSizeValidator,
+            ParserPool parserPool
+    ) {
+        this.notNullSamlStringValidator = notNullSamlStringValidator;
+        this.base64StringDecoder = base64StringDecoder;
+        this.responseSizeValidator = responseSizeValidator;
+        this.parserPool = parserPool;
+    }
+
+    @Override
+    public Response apply(String input) {
+        notNullSamlStringValidator.validate(input);
+
+        try {
+            return unmarshall(parseStreamed(new LengthLimitedInputStream(StreamingBase64Decoder.decode(input))));
+        } catch (StreamingBase64Decoder.NotBase64Exception e) {
+            String decodedInput = base64StringDecoder.decode(input);
+            responseSizeValidator.validate(decodedInput);
+            return unmarshall(parse(new ByteArrayInputStream(decodedInput.getBytes(StandardCharsets.UTF_8))));
+        }
+    }
+
+    private Document parse(InputStream xml) {
+        try {
+            return parserPool.parse(xml);
+        } catch (XMLParserException e) {
+            throw new SamlResponseValidationException("Unable to parse SAML Response.", e);
+        }
+    }
+
+    private Document parseStreamed(InputStream xml) throws StreamingBase64Decoder.NotBase64Exception {
+        try {
+            return parserPool.parse(xml);
+        } catch (XMLParserException e) {
+            // the parser wraps whatever its InputStream throws
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof StreamingBase64Decoder.NotBase64Exception) {
+                    throw (StreamingBase64Decoder.NotBase64Exception) cause;
+                }
+                if (cause instanceof ResponseTooLongException) {
+                    throw ((ResponseTooLongException) cause).validationException;
+                }
+            }
+            throw new SamlResponseValidationException("Unable to parse SAML Response.", e);
+        }
+    }
+
+    private Response unmarshall(Document document) {
+        try {
+            Element element = document.getDocumentElement();
+            Unmarshaller unmarshaller = XMLObjectProviderRegistrySupport.getUnmarshallerFactory().getUnmarshaller(element);
+            if (unmarshaller == null) {
+                throw new SamlResponseValidationException(String.format("Unexpected SAML element: %s", element.getLocalName()));
+            }
+            XMLObject xmlObject = unmarshaller.unmarshall(element);
+            if (!(xmlObject instanceof Response)) {
+                throw new SamlResponseValidationException(String.format("Expected a SAML Response but got %s", element.getLocalName()));
+            }
+            return (Response) xmlObject;
+        } catch (UnmarshallingException e) {
+            throw new SamlResponseValidationException("Unable to parse SAML Response.", e);
+        }
+    }
+
+    /**
+     * Counts the characters the UTF-8 bytes read through it decode to, the way String.length()
+     * would count them, and fails the read once there are more than the size limit allows.
+     */
+    private class LengthLimitedInputStream extends FilterInputStream {
+
+        private long length = 0;
+
+        private LengthLimitedInputStream(InputStream decoded) {
+            super(decoded);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int len) throws IOException {
+            int read = super.read(buffer, offset, len);
+            for (int i = 0; i < read; i++) {
+                count(buffer[offset + i]);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // every byte has to be counted, so skipped bytes are read like any others
+            byte[] skipped = new byte[(int) Math.min(n, 512)];
+            int read = read(skipped, 0, skipped.length);
+            return Math.max(read, 0);
+        }
+
+        private void count(byte b) throws ResponseTooLongException {
+            if ((b & 0xc0) != 0x80) {
+                // a lead byte starts a new character; four byte sequences become a surrogate pair
+                length += (b & 0xf8) == 0xf0 ? 2 : 1;
+            }
+            try {
+                responseSizeValidator.validateLength(length);
+            } catch (SamlResponseValidationException e) {
+                throw new ResponseTooLongException(e);
+            }
+        }
+    }
+
+    private static class ResponseTooLongException extends IOException {
+        private final SamlResponseValidationException validationException;
+
+        private ResponseTooLongException(SamlResponseValidationException validationException) {
+            super(validationException.getMessage());
+            this.validationException = validationException;
+        }
+    }
+}
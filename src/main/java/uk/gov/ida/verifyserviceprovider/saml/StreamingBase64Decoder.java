@@ -0,0 +1,104 @@
+package uk.gov.ida.verifyserviceprovider.saml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+
+/**
+ * Decodes base64 text straight from the request String into an InputStream, so that the
+ * XML parser can read the decoded bytes without a decoded byte[] or String ever being
+ * held on the heap.
+ *
+ * The text is checked as it is read rather than in a separate pass over it first: anything
+ * other than the standard base64 alphabet, trailing padding and whitespace makes the stream
+ * throw a NotBase64Exception.
+ */
+public final class StreamingBase64Decoder {
+
+    private StreamingBase64Decoder() {
+    }
+
+    public static InputStream decode(CharSequence input) {
+        return Base64.getMimeDecoder().wrap(new Base64CharSequenceInputStream(input));
+    }
+
+    public static class NotBase64Exception extends IOException {
+        private NotBase64Exception() {
+            super("Input is not plain base64.");
+        }
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private static boolean isBase64Alphabet(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '+' || c == '/';
+    }
+
+    private static class Base64CharSequenceInputStream extends InputStream {
+
+        private final CharSequence chars;
+        private int position = 0;
+        private long significantChars = 0;
+        private int padding = 0;
+
+        private Base64CharSequenceInputStream(CharSequence chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position >= chars.length()) {
+                checkComplete();
+                return -1;
+            }
+            return check(chars.charAt(position++));
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int remaining = chars.length() - position;
+            if (remaining <= 0) {
+                checkComplete();
+                return -1;
+            }
+            int count = Math.min(length, remaining);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) check(chars.charAt(position++));
+            }
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return chars.length() - position;
+        }
+
+        private int check(char c) throws NotBase64Exception {
+            if (isWhitespace(c)) {
+                return c;
+            }
+            if (c == '=') {
+                // padding can only stand for the last one or two characters of a group of four
+                if (significantChars % 4 < 2) {
+                    throw new NotBase64Exception();
+                }
+                padding++;
+            } else if (padding > 0 || !isBase64Alphabet(c)) {
+                throw new NotBase64Exception();
+            }
+            significantChars++;
+            return c;
+        }
+
+        private void checkComplete() throws NotBase64Exception {
+            if (significantChars % 4 != 0) {
+                throw new NotBase64Exception();
+            }
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package uk.gov.ida.verifyserviceprovider.services;
 
 import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Issuer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
 
 public class AssertionClassifier {
 
@@ -13,4 +18,26 @@ public class AssertionClassifier {
         return AssertionType.MDS_ASSERTION;
     }
 
-}
\ No newline at end of file
+    public ClassifiedAssertions classifyAssertions(List<Assertion> assertions) {
+        return classifyAssertions(assertions, issuer -> false);
+    }
+
+    public ClassifiedAssertions classifyAssertions(List<Assertion> assertions, Predicate<String> isCountryIssuer) {
+        List<Assertion> authnAssertions = new ArrayList<>(1);
+        List<Assertion> mdsAssertions = new ArrayList<>(1);
+        List<Assertion> countryAssertions = new ArrayList<>(1);
+
+        for (Assertion assertion : assertions) {
+            Issuer issuer = assertion.getIssuer();
+            if (issuer != null && isCountryIssuer.test(issuer.getValue())) {
+                countryAssertions.add(assertion);
+            } else if (classifyAssertion(assertion) == AssertionType.AUTHN_ASSERTION) {
+                authnAssertions.add(assertion);
+            } else {
+                mdsAssertions.add(assertion);
+            }
+        }
+
+        return new ClassifiedAssertions(assertions, authnAssertions, mdsAssertions, countryAssertions);
+    }
+}
@@ -1,5 +1,6 @@
 package uk.gov.ida.verifyserviceprovider.services;
 
+import org.opensaml.core.xml.XMLObject;
 import org.opensaml.saml.saml2.core.Attribute;
 import org.opensaml.saml.saml2.core.AttributeStatement;
 import uk.gov.ida.saml.core.extensions.StringValueSamlObject;
@@ -8,98 +9,95 @@ import uk.gov.ida.saml.core.extensions.impl.AddressImpl;
 import uk.gov.ida.verifyserviceprovider.dto.Address;
 import uk.gov.ida.verifyserviceprovider.dto.Attributes;
 import uk.gov.ida.verifyserviceprovider.dto.VerifiableAttribute;
+import uk.gov.ida.verifyserviceprovider.exceptions.FailedToRequestVerifiedException;
+import uk.gov.ida.verifyserviceprovider.exceptions.RequestedOnlyVerifiedException;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
-
-import static java.util.stream.Collectors.toList;
 
 public class AttributeTranslationService {
 
     public static Attributes translateAttributes(AttributeStatement attributeStatement) {
-        List<Attribute> statementAttributes = attributeStatement.getAttributes();
-
-        VerifiableAttribute<String> verifiableFirstName = getVerifiableStringAttribute(statementAttributes, "firstname", "firstname_verified");
-        VerifiableAttribute<String> verifiableMiddleName = getVerifiableStringAttribute(statementAttributes, "middlename", "middlename_verified");
-        VerifiableAttribute<String> verifiableSurname = getVerifiableStringAttribute(statementAttributes, "surname", "surname_verified");
-        VerifiableAttribute<LocalDate> verifiableDob = getVerifiableDateAttribute(statementAttributes, "dateofbirth", "dateofbirth_verified");
-        VerifiableAttribute<Address> verifiableAddress = getVerifiableAddressAttribute(statementAttributes, "currentaddress", "currentaddress_verified");
-        Optional<List<VerifiableAttribute<Address>>> addressHistory = getVerifiableAddressListAttribute(statementAttributes, "addresshistory");
-        Optional<String> cycle3 = getStringAttributeValue(statementAttributes, "cycle_3");
-        return new Attributes(verifiableFirstName, verifiableMiddleName, verifiableSurname, verifiableDob, verifiableAddress, addressHistory.orElse(null), cycle3.orElse(null));
-    }
-
-    private static VerifiableAttribute<String> getVerifiableStringAttribute(List<Attribute> statementAttributes, String attributeName, String attributeVerifiedName) {
-        final Optional<String> attributeValue = getStringAttributeValue(statementAttributes, attributeName);
-        final Optional<Boolean> attributeVerified = getBooleanAttributeValue(statementAttributes, attributeVerifiedName);
-        return VerifiableAttribute.fromOptionals(attributeValue, attributeVerified);
-    }
-
-    private static VerifiableAttribute<LocalDate> getVerifiableDateAttribute(List<Attribute> statementAttributes, String attributeName, String attributeVerifiedName) {
-        final Optional<LocalDate> attributeValue = getDateAttributeValue(statementAttributes, attributeName);
-        final Optional<Boolean> attributeVerified = getBooleanAttributeValue(statementAttributes, attributeVerifiedName);
-        return VerifiableAttribute.fromOptionals(attributeValue, attributeVerified);
-    }
-
-    private static VerifiableAttribute<Address> getVerifiableAddressAttribute(List<Attribute> statementAttributes, String attributeName, String attributeVerifiedName) {
-        final Optional<Address> attributeValue = getAddressAttributeValue(statementAttributes, attributeName);
-        final Optional<Boolean> attributeVerified = getBooleanAttributeValue(statementAttributes, attributeVerifiedName);
-        return VerifiableAttribute.fromOptionals(attributeValue, attributeVerified);
-    }
-
-    private static Optional<List<VerifiableAttribute<Address>>> getVerifiableAddressListAttribute(List<Attribute> statementAttributes, String attributeName) {
-        final Optional<Attribute> attribute = getAttribute(statementAttributes, attributeName);
-        return attribute.map(
-            attr -> attr.getAttributeValues().stream().map(
-                val -> toVerifiableAddress((AddressImpl) val)
-            ).collect(Collectors.toList())
-        );
+        MatchingAttributes attributes = new MatchingAttributes(attributeStatement.getAttributes());
+
+        VerifiableAttribute<String> verifiableFirstName = toVerifiableAttribute(getStringAttributeValue(attributes.firstName), attributes.firstNameVerified);
+        VerifiableAttribute<String> verifiableMiddleName = toVerifiableAttribute(getStringAttributeValue(attributes.middleName), attributes.middleNameVerified);
+        VerifiableAttribute<String> verifiableSurname = toVerifiableAttribute(getStringAttributeValue(attributes.surname), attributes.surnameVerified);
+        VerifiableAttribute<LocalDate> verifiableDob = toVerifiableAttribute(getDateAttributeValue(attributes.dateOfBirth), attributes.dateOfBirthVerified);
+        VerifiableAttribute<Address> verifiableAddress = toVerifiableAttribute(getAddressAttributeValue(attributes.currentAddress), attributes.currentAddressVerified);
+        List<VerifiableAttribute<Address>> addressHistory = getVerifiableAddressListAttribute(attributes.addressHistory);
+        String cycle3 = getStringAttributeValue(attributes.cycle3);
+        return new Attributes(verifiableFirstName, verifiableMiddleName, verifiableSurname, verifiableDob, verifiableAddress, addressHistory, cycle3);
     }
 
-    private static Optional<Attribute> getAttribute(List<Attribute> attributes, String name) {
-        return attributes.stream().filter(a -> a.getName().equals(name)).findFirst();
+    private static <T> VerifiableAttribute<T> toVerifiableAttribute(T attributeValue, Attribute verifiedAttribute) {
+        if (attributeValue == null && verifiedAttribute == null) {
+            return null;
+        }
+        if (verifiedAttribute == null) {
+            throw new FailedToRequestVerifiedException();
+        }
+        if (attributeValue == null) {
+            throw new RequestedOnlyVerifiedException();
+        }
+        return new VerifiableAttribute<>(attributeValue, ((Verified) verifiedAttribute.getAttributeValues().get(0)).getValue());
     }
 
-    private static Optional<String> getStringAttributeValue(List<Attribute> attributes, String attributeName) {
-        final Optional<Attribute> attribute = getAttribute(attributes, attributeName);
-        return attribute.map(attr -> {
-            StringValueSamlObject attributeValue = ((StringValueSamlObject) attr.getAttributeValues().get(0));
-            return Optional.ofNullable(attributeValue.getValue()).orElse("");
-        });
+    private static List<VerifiableAttribute<Address>> getVerifiableAddressListAttribute(Attribute attribute) {
+        if (attribute == null) {
+            return null;
+        }
+        List<XMLObject> attributeValues = attribute.getAttributeValues();
+        List<VerifiableAttribute<Address>> addresses = new ArrayList<>(attributeValues.size());
+        for (XMLObject attributeValue : attributeValues) {
+            addresses.add(toVerifiableAddress((AddressImpl) attributeValue));
+        }
+        return addresses;
     }
 
-    private static Optional<Boolean> getBooleanAttributeValue(List<Attribute> attributes, String attributeName) {
-        final Optional<Attribute> attribute = getAttribute(attributes, attributeName);
-        return attribute.map(attr -> ((Verified) attr.getAttributeValues().get(0)).getValue());
+    private static String getStringAttributeValue(Attribute attribute) {
+        if (attribute == null) {
+            return null;
+        }
+        String attributeValue = ((StringValueSamlObject) attribute.getAttributeValues().get(0)).getValue();
+        return attributeValue == null ? "" : attributeValue;
     }
 
-    private static Optional<LocalDate> getDateAttributeValue(List<Attribute> attributes, String attributeName) {
-        return getStringAttributeValue(attributes, attributeName).map(x -> {
-            try {
-                return LocalDate.parse(x, DateTimeFormatter.ISO_DATE);
-            } catch (DateTimeParseException e) {
-                throw new SamlResponseValidationException(
-                    String.format("Error in SAML date format for attribute '%s'. Expected ISO date format, got: '%s'",
-                        attributeName,
-                        e.getParsedString())
-                );
-            }
-        });
+    private static LocalDate getDateAttributeValue(Attribute attribute) {
+        String attributeValue = getStringAttributeValue(attribute);
+        if (attributeValue == null) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(attributeValue, DateTimeFormatter.ISO_DATE);
+        } catch (DateTimeParseException e) {
+            throw new SamlResponseValidationException(
+                String.format("Error in SAML date format for attribute '%s'. Expected ISO date format, got: '%s'",
+                    attribute.getName(),
+                    e.getParsedString())
+            );
+        }
     }
 
-    private static Optional<Address> getAddressAttributeValue(List<Attribute> attributes, String attributeName) {
-        final Optional<Attribute> attribute = getAttribute(attributes, attributeName);
-        return attribute.map(attr -> toAddress((AddressImpl) attr.getAttributeValues().get(0)));
+    private static Address getAddressAttributeValue(Attribute attribute) {
+        if (attribute == null) {
+            return null;
+        }
+        return toAddress((AddressImpl) attribute.getAttributeValues().get(0));
     }
 
     private static Address toAddress(AddressImpl address) {
+        List<? extends StringValueSamlObject> lines = address.getLines();
+        List<String> lineValues = new ArrayList<>(lines.size());
+        for (StringValueSamlObject line : lines) {
+            lineValues.add(line.getValue());
+        }
         return new Address(
-            address.getLines().stream().map(StringValueSamlObject::getValue).collect(toList()),
+            lineValues,
             getValueOrNull(address.getPostCode()),
             getValueOrNull(address.getInternationalPostCode()),
             getValueOrNull(address.getUPRN()),
@@ -113,7 +111,7 @@ public class AttributeTranslationService {
     }
 
     private static String getValueOrNull(StringValueSamlObject attributeValue) {
-        return Optional.ofNullable(attributeValue).map(StringValueSamlObject::getValue).orElse(null);
+        return attributeValue == null ? null : attributeValue.getValue();
     }
 
     private static LocalDate convertToJavaLocalDate(org.joda.time.DateTime joda) {
@@ -123,4 +121,51 @@ public class AttributeTranslationService {
 
         return LocalDate.of(joda.getYear(), joda.getMonthOfYear(), joda.getDayOfMonth());
     }
+
+    /**
+     * The attributes of an MSA assertion that we translate, found in a single pass over the
+     * attribute statement. If an attribute appears more than once the first one is used.
+     */
+    private static class MatchingAttributes {
+        private Attribute firstName;
+        private Attribute firstNameVerified;
+        private Attribute middleName;
+        private Attribute middleNameVerified;
+        private Attribute surname;
+        private Attribute surnameVerified;
+        private Attribute dateOfBirth;
+        private Attribute dateOfBirthVerified;
+        private Attribute currentAddress;
+        private Attribute currentAddressVerified;
+        private Attribute addressHistory;
+        private Attribute cycle3;
+
+        private MatchingAttributes(List<Attribute> attributes) {
+            for (Attribute attribute : attributes) {
+                String name = attribute.getName();
+                if (name == null) {
+                    continue;
+                }
+                switch (name) {
+                    case "firstname": firstName = firstNonNull(firstName, attribute); break;
+                    case "firstname_verified": firstNameVerified = firstNonNull(firstNameVerified, attribute); break;
+                    case "middlename": middleName = firstNonNull(middleName, attribute); break;
+                    case "middlename_verified": middleNameVerified = firstNonNull(middleNameVerified, attribute); break;
+                    case "surname": surname = firstNonNull(surname, attribute); break;
+                    case "surname_verified": surnameVerified = firstNonNull(surnameVerified, attribute); break;
+                    case "dateofbirth": dateOfBirth = firstNonNull(dateOfBirth, attribute); break;
+                    case "dateofbirth_verified": dateOfBirthVerified = firstNonNull(dateOfBirthVerified, attribute); break;
+                    case "currentaddress": currentAddress = firstNonNull(currentAddress, attribute); break;
+                    case "currentaddress_verified": currentAddressVerified = firstNonNull(currentAddressVerified, attribute); break;
+                    case "addresshistory": addressHistory = firstNonNull(addressHistory, attribute); break;
+                    case "cycle_3": cycle3 = firstNonNull(cycle3, attribute); break;
+                    default: break;
+                }
+            }
+        }
+
+        private static Attribute firstNonNull(Attribute existing, Attribute attribute) {
+            return existing != null ? existing : attribute;
+        }
+    }
 }
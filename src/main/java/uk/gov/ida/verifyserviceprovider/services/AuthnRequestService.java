@@ -0,0 +1,39 @@
+package uk.gov.ida.verifyserviceprovider.services;
+
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.slf4j.LoggerFactory;
+import uk.gov.ida.saml.serializers.XmlObjectToBase64EncodedStringTransformer;
+import uk.gov.ida.verifyserviceprovider.dto.RequestGenerationBody;
+import uk.gov.ida.verifyserviceprovider.dto.RequestResponseBody;
+import uk.gov.ida.verifyserviceprovider.factories.saml.AuthnRequestFactory;
+
+import java.net.URI;
+
+public class AuthnRequestService {
+
+    private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(AuthnRequestService.class);
+
+    private final AuthnRequestFactory authnRequestFactory;
+    private final URI ssoLocation;
+    private final EntityIdService entityIdService;
+
+    public AuthnRequestService(AuthnRequestFactory authnRequestFactory, URI ssoLocation, EntityIdService entityIdService) {
+        this.authnRequestFactory = authnRequestFactory;
+        this.ssoLocation = ssoLocation;
+        this.entityIdService = entityIdService;
+    }
+
+    public RequestResponseBody generateAuthnRequest(RequestGenerationBody requestGenerationBody) {
+        String entityId = entityIdService.getEntityId(requestGenerationBody);
+        AuthnRequest authnRequest = authnRequestFactory.build(requestGenerationBody.getLevelOfAssurance(), entityId);
+        XmlObjectToBase64EncodedStringTransformer xmlToBase64Transformer = new XmlObjectToBase64EncodedStringTransformer();
+        String samlRequest = xmlToBase64Transformer.apply(authnRequest);
+
+        RequestResponseBody requestResponseBody = new RequestResponseBody(samlRequest, authnRequest.getID(), ssoLocation);
+
+        LOG.info(String.format("AuthnRequest generated for entityId: %s with requestId: %s", entityId, requestResponseBody.getRequestId()));
+        LOG.debug(String.format("AuthnRequest generated for entityId: %s with saml: %s", entityId, requestResponseBody.getSamlRequest()));
+
+        return requestResponseBody;
+    }
+}
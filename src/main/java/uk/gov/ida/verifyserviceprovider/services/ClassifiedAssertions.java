@@ -0,0 +1,55 @@
+package uk.gov.ida.verifyserviceprovider.services;
+
+import org.opensaml.saml.saml2.core.Assertion;
+
+import java.util.List;
+
+/**
+ * The assertions of a response sorted, in a single pass, into the kinds the
+ * non-matching translation path cares about.
+ */
+public class ClassifiedAssertions {
+
+    private final List<Assertion> assertions;
+    private final List<Assertion> authnAssertions;
+    private final List<Assertion> mdsAssertions;
+    private final List<Assertion> countryAssertions;
+
+    public ClassifiedAssertions(
+            List<Assertion> assertions,
+            List<Assertion> authnAssertions,
+            List<Assertion> mdsAssertions,
+            List<Assertion> countryAssertions
+    ) {
+        this.assertions = assertions;
+        this.authnAssertions = authnAssertions;
+        this.mdsAssertions = mdsAssertions;
+        this.countryAssertions = countryAssertions;
+    }
+
+    public List<Assertion> getAssertions() {
+        return assertions;
+    }
+
+    /**
+     * Assertions with an authn statement that were not issued by a country.
+     */
+    public List<Assertion> getAuthnAssertions() {
+        return authnAssertions;
+    }
+
+    /**
+     * Assertions without an authn statement that were not issued by a country.
+     */
+    public List<Assertion> getMdsAssertions() {
+        return mdsAssertions;
+    }
+
+    public List<Assertion> getCountryAssertions() {
+        return countryAssertions;
+    }
+
+    public boolean hasCountryAssertions() {
+        return !countryAssertions.isEmpty();
+    }
+}
@@ -1,5 +1,7 @@
 package uk.gov.ida.verifyserviceprovider.services;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import org.opensaml.saml.saml2.core.Assertion;
 import org.opensaml.saml.saml2.core.StatusCode;
 import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
@@ -14,22 +16,42 @@ public class ClassifyingAssertionService implements AssertionService<TranslatedN
 
     private final IdpAssertionService idpAssertionService;
     private final EidasAssertionService eidasAssertionService;
+    private final AssertionClassifier assertionClassifier = new AssertionClassifier();
+    private final Timer idpTranslation;
+    private final Timer eidasTranslation;
 
 
     public ClassifyingAssertionService(
             IdpAssertionService idpAssertionService,
             EidasAssertionService eidasAssertionService
+    ) {
+        this(idpAssertionService, eidasAssertionService, new MetricRegistry());
+    }
+
+    public ClassifyingAssertionService(
+            IdpAssertionService idpAssertionService,
+            EidasAssertionService eidasAssertionService,
+            MetricRegistry metricRegistry
     ) {
         this.idpAssertionService = idpAssertionService;
         this.eidasAssertionService = eidasAssertionService;
+        this.idpTranslation = metricRegistry.timer(ResponseServiceMetrics.metricName(ResponseServiceMetrics.NON_MATCHING, "idp", "translation"));
+        this.eidasTranslation = metricRegistry.timer(ResponseServiceMetrics.metricName(ResponseServiceMetrics.NON_MATCHING, "eidas", "translation"));
     }
 
 
     @Override
     public TranslatedNonMatchingResponseBody translateSuccessResponse(List<Assertion> assertions, String expectedInResponseTo, LevelOfAssurance expectedLevelOfAssurance, String entityId) {
-        AssertionServiceV2 assertionService = isCountryAttributeQuery(assertions) ? eidasAssertionService : idpAssertionService;
+        ClassifiedAssertions classifiedAssertions = assertionClassifier.classifyAssertions(assertions, eidasAssertionService.getCountryIssuerMatcher());
 
-        return assertionService.translateSuccessResponse(assertions, expectedInResponseTo, expectedLevelOfAssurance, entityId);
+        if (classifiedAssertions.hasCountryAssertions()) {
+            try (Timer.Context ignored = eidasTranslation.time()) {
+                return eidasAssertionService.translateSuccessResponse(classifiedAssertions, expectedInResponseTo, expectedLevelOfAssurance, entityId);
+            }
+        }
+        try (Timer.Context ignored = idpTranslation.time()) {
+            return idpAssertionService.translateSuccessResponse(classifiedAssertions, expectedInResponseTo, expectedLevelOfAssurance, entityId);
+        }
     }
 
     @Override
@@ -50,9 +72,4 @@ public class ClassifyingAssertionService implements AssertionService<TranslatedN
         }
     }
 
-
-    private boolean isCountryAttributeQuery(List<Assertion> assertions) {
-        return assertions.stream().anyMatch(eidasAssertionService::isCountryAssertion);
-    }
-
 }
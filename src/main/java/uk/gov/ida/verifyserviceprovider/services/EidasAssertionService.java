@@ -1,25 +1,23 @@
 package uk.gov.ida.verifyserviceprovider.services;
 
 import org.opensaml.saml.saml2.core.Assertion;
-import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
 import uk.gov.ida.saml.core.transformers.AuthnContextFactory;
 import uk.gov.ida.saml.core.transformers.MatchingDatasetUnmarshaller;
-import uk.gov.ida.saml.metadata.EidasMetadataResolverRepository;
 import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
 import uk.gov.ida.verifyserviceprovider.dto.NonMatchingAttributes;
 import uk.gov.ida.verifyserviceprovider.dto.TranslatedNonMatchingResponseBody;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
-import uk.gov.ida.verifyserviceprovider.factories.saml.SignatureValidatorFactory;
 import uk.gov.ida.verifyserviceprovider.mappers.MatchingDatasetToNonMatchingAttributesMapper;
+import uk.gov.ida.verifyserviceprovider.saml.CountrySignatureValidators;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryIssuers;
 import uk.gov.ida.verifyserviceprovider.validators.ConditionsValidator;
 import uk.gov.ida.verifyserviceprovider.validators.InstantValidator;
 import uk.gov.ida.verifyserviceprovider.validators.LevelOfAssuranceValidator;
 import uk.gov.ida.verifyserviceprovider.validators.SubjectValidator;
 
 import java.util.List;
-import java.util.Optional;
+import java.util.function.Predicate;
 
-import static java.util.Collections.singletonList;
 import static uk.gov.ida.verifyserviceprovider.dto.NonMatchingScenario.IDENTITY_VERIFIED;
 
 public class EidasAssertionService extends AssertionServiceV2 {
@@ -28,8 +26,8 @@ public class EidasAssertionService extends AssertionServiceV2 {
     private final InstantValidator instantValidator;
     private final ConditionsValidator conditionsValidator;
     private final LevelOfAssuranceValidator levelOfAssuranceValidator;
-    private final Optional<EidasMetadataResolverRepository> metadataResolverRepository;
-    private final SignatureValidatorFactory signatureValidatorFactory;
+    private final EidasCountryIssuers countryIssuers;
+    private final CountrySignatureValidators countrySignatureValidators;
 
 
     public EidasAssertionService(
@@ -40,20 +38,25 @@ public class EidasAssertionService extends AssertionServiceV2 {
             InstantValidator instantValidator,
             ConditionsValidator conditionsValidator,
             LevelOfAssuranceValidator levelOfAssuranceValidator,
-            Optional<EidasMetadataResolverRepository> metadataResolverRepository,
-            SignatureValidatorFactory signatureValidatorFactory) {
+            EidasCountryIssuers countryIssuers,
+            CountrySignatureValidators countrySignatureValidators) {
         super(subjectValidator, matchingDatasetUnmarshaller, mdsMapper);
         this.isEnabled = isEnabled;
         this.instantValidator = instantValidator;
         this.conditionsValidator = conditionsValidator;
         this.levelOfAssuranceValidator = levelOfAssuranceValidator;
-        this.metadataResolverRepository = metadataResolverRepository;
-        this.signatureValidatorFactory = signatureValidatorFactory;
+        this.countryIssuers = countryIssuers;
+        this.countrySignatureValidators = countrySignatureValidators;
     }
 
 
     @Override
     public TranslatedNonMatchingResponseBody translateSuccessResponse(List<Assertion> assertions, String expectedInResponseTo, LevelOfAssurance expectedLevelOfAssurance, String entityId) {
+        return translateSuccessResponse(new AssertionClassifier().classifyAssertions(assertions, getCountryIssuerMatcher()), expectedInResponseTo, expectedLevelOfAssurance, entityId);
+    }
+
+    public TranslatedNonMatchingResponseBody translateSuccessResponse(ClassifiedAssertions classifiedAssertions, String expectedInResponseTo, LevelOfAssurance expectedLevelOfAssurance, String entityId) {
+        List<Assertion> assertions = classifiedAssertions.getAssertions();
         if (assertions.size() != 1) {
             throw new SamlResponseValidationException("Exactly one country assertion is expected.");
         }
@@ -73,9 +76,7 @@ public class EidasAssertionService extends AssertionServiceV2 {
     }
 
     private void validateCountryAssertion(Assertion assertion, String expectedInResponseTo, String entityId) {
-        signatureValidatorFactory.getSignatureValidator(metadataResolverRepository.get().getSignatureTrustEngine(assertion.getIssuer().getValue()))
-                .orElseThrow(() -> new SamlResponseValidationException("Unable to find metadata resolver for entity Id " + assertion.getIssuer().getValue()))
-                .validate(singletonList(assertion), IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        countrySignatureValidators.validate(assertion);
         instantValidator.validate(assertion.getIssueInstant(), "Country Assertion IssueInstant");
         subjectValidator.validate(assertion.getSubject(), expectedInResponseTo);
         conditionsValidator.validate(assertion.getConditions(), entityId);
@@ -92,7 +93,18 @@ public class EidasAssertionService extends AssertionServiceV2 {
     }
 
     public Boolean isCountryAssertion(Assertion assertion) {
-        return isEnabled && metadataResolverRepository.get().getResolverEntityIds().contains(assertion.getIssuer().getValue());
+        return isEnabled && countryIssuers.isCountryIssuer(assertion.getIssuer().getValue());
+    }
+
+    /**
+     * Matches the entity ids of the countries we have metadata for, as of the latest
+     * snapshot, so every assertion in a response is checked against the same countries.
+     */
+    public Predicate<String> getCountryIssuerMatcher() {
+        if (!isEnabled) {
+            return issuer -> false;
+        }
+        return countryIssuers.getEntityIds()::contains;
     }
 
 }
@@ -15,15 +15,11 @@ import uk.gov.ida.verifyserviceprovider.dto.TranslatedNonMatchingResponseBody;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
 import uk.gov.ida.verifyserviceprovider.factories.saml.UserIdHashFactory;
 import uk.gov.ida.verifyserviceprovider.mappers.MatchingDatasetToNonMatchingAttributesMapper;
-import uk.gov.ida.verifyserviceprovider.services.AssertionClassifier.AssertionType;
 import uk.gov.ida.verifyserviceprovider.validators.LevelOfAssuranceValidator;
 import uk.gov.ida.verifyserviceprovider.validators.SubjectValidator;
 import javax.xml.namespace.QName;
 import java.util.Arrays;
-import java.util.stream.Collectors;
-import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 import static java.util.Collections.singletonList;
@@ -60,6 +56,10 @@ public class IdpAssertionService extends AssertionServiceV2 {
 
     @Override
     public TranslatedNonMatchingResponseBody translateSuccessResponse(List<Assertion> assertions, String expectedInResponseTo, LevelOfAssurance expectedLevelOfAssurance, String entityId) {
+        return translateSuccessResponse(assertionClassifierService.classifyAssertions(assertions), expectedInResponseTo, expectedLevelOfAssurance, entityId);
+    }
+
+    public TranslatedNonMatchingResponseBody translateSuccessResponse(ClassifiedAssertions assertions, String expectedInResponseTo, LevelOfAssurance expectedLevelOfAssurance, String entityId) {
         Assertion authnAssertion = getAuthnAssertion(assertions);
         Assertion mdsAssertion = getMatchingDatasetAssertion(assertions);
 
@@ -144,24 +144,18 @@ public class IdpAssertionService extends AssertionServiceV2 {
     }
 
 
-    private Assertion getAuthnAssertion(Collection<Assertion> assertions) {
-        Map<AssertionType, List<Assertion>> assertionMap = assertions.stream()
-                .collect(Collectors.groupingBy(assertionClassifierService::classifyAssertion));
-
-        List<Assertion> authnAssertions = assertionMap.get(AssertionType.AUTHN_ASSERTION);
-        if (authnAssertions == null || authnAssertions.size() != 1) {
+    private Assertion getAuthnAssertion(ClassifiedAssertions assertions) {
+        List<Assertion> authnAssertions = assertions.getAuthnAssertions();
+        if (authnAssertions.size() != 1) {
             throw new SamlResponseValidationException("Exactly one authn statement is expected.");
         }
 
         return authnAssertions.get(0);
     }
 
-    private Assertion getMatchingDatasetAssertion(Collection<Assertion> assertions) {
-        Map<AssertionType, List<Assertion>> assertionMap = assertions.stream()
-                .collect(Collectors.groupingBy(assertionClassifierService::classifyAssertion));
-
-        List<Assertion> mdsAssertions = assertionMap.get(AssertionType.MDS_ASSERTION);
-        if (mdsAssertions == null || mdsAssertions.size() != 1) {
+    private Assertion getMatchingDatasetAssertion(ClassifiedAssertions assertions) {
+        List<Assertion> mdsAssertions = assertions.getMdsAssertions();
+        if (mdsAssertions.size() != 1) {
             throw new SamlResponseValidationException("Exactly one matching dataset assertion is expected.");
         }
 
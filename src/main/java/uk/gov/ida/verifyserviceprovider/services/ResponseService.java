@@ -1,39 +1,86 @@
 package uk.gov.ida.verifyserviceprovider.services;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import org.opensaml.saml.saml2.core.Assertion;
 import org.opensaml.saml.saml2.core.Response;
 import org.opensaml.saml.saml2.core.StatusCode;
 import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
-import uk.gov.ida.saml.deserializers.StringToOpenSamlObjectTransformer;
 import uk.gov.ida.saml.security.AssertionDecrypter;
 import uk.gov.ida.saml.security.validators.ValidatedResponse;
 import uk.gov.ida.saml.security.validators.signature.SamlResponseSignatureValidator;
 import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
+import uk.gov.ida.verifyserviceprovider.dto.TranslatedResponseBody;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
 import uk.gov.ida.verifyserviceprovider.validators.InstantValidator;
+import uk.gov.ida.verifyserviceprovider.validators.ReplayValidator;
 
 import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
-public class ResponseService<T> {
+public class ResponseService<T extends TranslatedResponseBody> {
 
-    private final StringToOpenSamlObjectTransformer<Response> stringToOpenSamlObjectTransformer;
+    private final Function<String, Response> stringToOpenSamlObjectTransformer;
     private final AssertionDecrypter assertionDecrypter;
     private final AssertionService<T> assertionService;
     private final SamlResponseSignatureValidator responseSignatureValidator;
     private final InstantValidator instantValidator;
+    private final ResponseServiceMetrics metrics;
+    private final ReplayValidator replayValidator;
 
     public ResponseService(
-        StringToOpenSamlObjectTransformer<Response> stringToOpenSamlObjectTransformer,
+        Function<String, Response> stringToOpenSamlObjectTransformer,
         AssertionDecrypter assertionDecrypter,
         AssertionService<T> assertionService,
         SamlResponseSignatureValidator responseSignatureValidator,
         InstantValidator instantValidator
+    ) {
+        this(
+            stringToOpenSamlObjectTransformer,
+            assertionDecrypter,
+            assertionService,
+            responseSignatureValidator,
+            instantValidator,
+            new ResponseServiceMetrics(new MetricRegistry(), "unregistered")
+        );
+    }
+
+    public ResponseService(
+        Function<String, Response> stringToOpenSamlObjectTransformer,
+        AssertionDecrypter assertionDecrypter,
+        AssertionService<T> assertionService,
+        SamlResponseSignatureValidator responseSignatureValidator,
+        InstantValidator instantValidator,
+        ResponseServiceMetrics metrics
+    ) {
+        this(
+            stringToOpenSamlObjectTransformer,
+            assertionDecrypter,
+            assertionService,
+            responseSignatureValidator,
+            instantValidator,
+            metrics,
+            ReplayValidator.disabled()
+        );
+    }
+
+    public ResponseService(
+        Function<String, Response> stringToOpenSamlObjectTransformer,
+        AssertionDecrypter assertionDecrypter,
+        AssertionService<T> assertionService,
+        SamlResponseSignatureValidator responseSignatureValidator,
+        InstantValidator instantValidator,
+        ResponseServiceMetrics metrics,
+        ReplayValidator replayValidator
     ) {
         this.stringToOpenSamlObjectTransformer = stringToOpenSamlObjectTransformer;
         this.assertionDecrypter = assertionDecrypter;
         this.assertionService = assertionService;
         this.responseSignatureValidator = responseSignatureValidator;
         this.instantValidator = instantValidator;
+        this.metrics = metrics;
+        this.replayValidator = replayValidator;
     }
 
     public T convertTranslatedResponseBody(
@@ -42,9 +89,15 @@ public class ResponseService<T> {
         LevelOfAssurance expectedLevelOfAssurance,
         String entityId
     ) {
-        Response response = stringToOpenSamlObjectTransformer.apply(decodedSamlResponse);
+        Response response;
+        try (Timer.Context ignored = metrics.timeParse(decodedSamlResponse)) {
+            response = stringToOpenSamlObjectTransformer.apply(decodedSamlResponse);
+        }
 
-        ValidatedResponse validatedResponse = responseSignatureValidator.validate(response, SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        ValidatedResponse validatedResponse;
+        try (Timer.Context ignored = metrics.timeResponseSignatureValidation()) {
+            validatedResponse = responseSignatureValidator.validate(response, SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        }
 
         if (!expectedInResponseTo.equals(validatedResponse.getInResponseTo())) {
             throw new SamlResponseValidationException(
@@ -57,14 +110,42 @@ public class ResponseService<T> {
         StatusCode statusCode = validatedResponse.getStatus().getStatusCode();
 
         switch (statusCode.getValue()) {
-            case StatusCode.RESPONDER:
-                return assertionService.translateNonSuccessResponse(statusCode);
-            case StatusCode.SUCCESS:
-                List<Assertion> assertions = assertionDecrypter.decryptAssertions(validatedResponse);
-                return assertionService.translateSuccessResponse(assertions, expectedInResponseTo, expectedLevelOfAssurance, entityId);
+            case StatusCode.RESPONDER: {
+                return timeTranslation(() -> assertionService.translateNonSuccessResponse(statusCode));
+            }
+            case StatusCode.SUCCESS: {
+                List<Assertion> assertions;
+                try (Timer.Context ignored = metrics.timeDecryption()) {
+                    assertions = assertionDecrypter.decryptAssertions(validatedResponse);
+                }
+                metrics.recordAssertionCount(assertions.size());
+
+                T translatedResponseBody = timeTranslation(
+                    () -> assertionService.translateSuccessResponse(assertions, expectedInResponseTo, expectedLevelOfAssurance, entityId)
+                );
+
+                // only once the response has been translated, so one that failed for a transient reason can be retried
+                replayValidator.validate(response, assertions);
+                return translatedResponseBody;
+            }
             default:
                 throw new SamlResponseValidationException(String.format("Unknown SAML status: %s", statusCode.getValue()));
         }
     }
 
+    private T timeTranslation(Supplier<T> translation) {
+        T translatedResponseBody = null;
+        Timer.Context context = metrics.timeTranslation();
+        try {
+            translatedResponseBody = translation.get();
+            return translatedResponseBody;
+        } finally {
+            // failed translations are timed too, but only successful ones have a scenario to record
+            long elapsedNanos = context.stop();
+            if (translatedResponseBody != null) {
+                metrics.recordScenario(translatedResponseBody.getScenario(), elapsedNanos);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,72 @@
+package uk.gov.ida.verifyserviceprovider.services;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import uk.gov.ida.verifyserviceprovider.dto.Scenario;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Timers and histograms for each stage of translating a SAML response, registered as
+ * translate-response.&lt;response type&gt;.&lt;stage&gt;, with the translation stage further
+ * broken down by the scenario it produced.
+ */
+public class ResponseServiceMetrics {
+
+    public static final String MATCHING = "matching";
+    public static final String NON_MATCHING = "non-matching";
+    private static final String PREFIX = "translate-response";
+
+    private final MetricRegistry metricRegistry;
+    private final String responseType;
+    private final Timer parse;
+    private final Timer responseSignatureValidation;
+    private final Timer decryption;
+    private final Timer translation;
+    private final Histogram responseSize;
+    private final Histogram assertionCount;
+
+    public ResponseServiceMetrics(MetricRegistry metricRegistry, String responseType) {
+        this.metricRegistry = metricRegistry;
+        this.responseType = responseType;
+        this.parse = metricRegistry.timer(metricName(responseType, "parse"));
+        this.responseSignatureValidation = metricRegistry.timer(metricName(responseType, "response-signature-validation"));
+        this.decryption = metricRegistry.timer(metricName(responseType, "decryption"));
+        this.translation = metricRegistry.timer(metricName(responseType, "translation"));
+        this.responseSize = metricRegistry.histogram(metricName(responseType, "response-size"));
+        this.assertionCount = metricRegistry.histogram(metricName(responseType, "assertion-count"));
+    }
+
+    public static String metricName(String responseType, String... names) {
+        return name(name(PREFIX, responseType), names);
+    }
+
+    public Timer.Context timeParse(String samlResponse) {
+        responseSize.update(samlResponse.length());
+        return parse.time();
+    }
+
+    public Timer.Context timeResponseSignatureValidation() {
+        return responseSignatureValidation.time();
+    }
+
+    public Timer.Context timeDecryption() {
+        return decryption.time();
+    }
+
+    public void recordAssertionCount(int count) {
+        assertionCount.update(count);
+    }
+
+    public Timer.Context timeTranslation() {
+        return translation.time();
+    }
+
+    public void recordScenario(Scenario scenario, long elapsedNanos) {
+        metricRegistry.timer(metricName(responseType, "translation", String.valueOf(scenario)))
+            .update(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+}
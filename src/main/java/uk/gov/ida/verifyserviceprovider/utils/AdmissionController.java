@@ -0,0 +1,141 @@
+package uk.gov.ida.verifyserviceprovider.utils;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides which requests to turn away so that those which are served still meet a target
+ * queueing delay, rather than every request slowing down together under overload.
+ *
+ * This follows CoDel: the queue only becomes overloaded once every piece of work taken off it
+ * for a whole interval has waited longer than the target, which a short burst cannot cause but a
+ * standing queue does, and it stops being overloaded as soon as one has not. While overloaded,
+ * work that has already waited longer than the target is shed when it reaches the front of the
+ * queue, and new requests are refused straight away when the work already queued would take
+ * longer than the target to get through. Otherwise work is only shed once it has waited a whole
+ * interval.
+ *
+ * How long the queue takes to get through is estimated from the number of requests in flight
+ * and a moving average of how long each takes. The state is kept in atomics rather than behind
+ * a lock, as it is updated by every crypto thread, and nothing is tracked at all when admission
+ * control is turned off.
+ */
+public class AdmissionController {
+
+    private static final String METRIC_PREFIX = "admission-control";
+    private static final double DURATION_WEIGHT = 0.1;
+    private static final long NOT_ABOVE_TARGET = Long.MIN_VALUE;
+
+    private final boolean enabled;
+    private final long targetDelayNanos;
+    private final long intervalNanos;
+    private final int threads;
+    private final LongSupplier nanoClock;
+    private final Meter refused;
+    private final Meter shed;
+
+    private final AtomicLong firstAboveTarget = new AtomicLong(NOT_ABOVE_TARGET);
+    private final AtomicLong averageDurationNanos = new AtomicLong(Double.doubleToLongBits(0));
+    private volatile boolean overloaded;
+
+    public AdmissionController(long targetDelay, long interval, TimeUnit unit, int threads, MetricRegistry metricRegistry) {
+        this(targetDelay, interval, unit, threads, System::nanoTime, metricRegistry);
+    }
+
+    public AdmissionController(long targetDelay, long interval, TimeUnit unit, int threads, LongSupplier nanoClock, MetricRegistry metricRegistry) {
+        this(true, targetDelay, interval, unit, threads, nanoClock, metricRegistry);
+    }
+
+    private AdmissionController(boolean enabled, long targetDelay, long interval, TimeUnit unit, int threads, LongSupplier nanoClock, MetricRegistry metricRegistry) {
+        this.enabled = enabled;
+        this.targetDelayNanos = unit.toNanos(targetDelay);
+        this.intervalNanos = unit.toNanos(interval);
+        this.threads = threads;
+        this.nanoClock = nanoClock;
+        this.refused = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "refused"));
+        this.shed = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "shed"));
+        metricRegistry.gauge(MetricRegistry.name(METRIC_PREFIX, "overloaded"), () -> (Gauge<Boolean>) this::isOverloaded);
+    }
+
+    /**
+     * Admits everything, for when admission control is turned off.
+     */
+    public static AdmissionController disabled() {
+        return new AdmissionController(false, Long.MAX_VALUE, Long.MAX_VALUE, TimeUnit.NANOSECONDS, 1, () -> 0, new MetricRegistry());
+    }
+
+    /**
+     * @param inFlight the number of requests queued or being worked on
+     * @return whether a new request should be accepted
+     */
+    public boolean admit(int inFlight) {
+        if (!overloaded) {
+            return true;
+        }
+        double estimatedDelayNanos = Double.longBitsToDouble(averageDurationNanos.get()) * inFlight / threads;
+        if (estimatedDelayNanos <= targetDelayNanos) {
+            return true;
+        }
+        refused.mark();
+        return false;
+    }
+
+    /**
+     * Called as work is taken off the queue.
+     *
+     * @return whether the work should be shed rather than done
+     */
+    public boolean shouldShed(long waitNanos) {
+        if (!enabled) {
+            return false;
+        }
+        if (waitNanos <= targetDelayNanos) {
+            // the queue has drained at least this far, so whatever was building up was only a burst
+            if (firstAboveTarget.get() != NOT_ABOVE_TARGET) {
+                firstAboveTarget.set(NOT_ABOVE_TARGET);
+            }
+            if (overloaded) {
+                overloaded = false;
+            }
+            return false;
+        }
+
+        long now = nanoClock.getAsLong();
+        firstAboveTarget.compareAndSet(NOT_ABOVE_TARGET, now);
+        long firstAbove = firstAboveTarget.get();
+        if (!overloaded && firstAbove != NOT_ABOVE_TARGET && now - firstAbove >= intervalNanos) {
+            overloaded = true;
+        }
+
+        long timeoutNanos = overloaded ? targetDelayNanos : intervalNanos;
+        if (waitNanos > timeoutNanos) {
+            shed.mark();
+            return true;
+        }
+        return false;
+    }
+
+    public void recordDuration(long durationNanos) {
+        if (!enabled) {
+            return;
+        }
+        long current;
+        long updated;
+        do {
+            current = averageDurationNanos.get();
+            double average = Double.longBitsToDouble(current);
+            updated = Double.doubleToLongBits(average == 0
+                    ? durationNanos
+                    : average + DURATION_WEIGHT * (durationNanos - average));
+        } while (!averageDurationNanos.compareAndSet(current, updated));
+    }
+
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+}
@@ -0,0 +1,226 @@
+package uk.gov.ida.verifyserviceprovider.utils;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Runs the XML and crypto work of a suspended request on a thread pool sized to the number of
+ * CPUs, so that Jetty's request threads are left free for I/O, health checks and admin calls.
+ *
+ * The work is queued on a bounded queue. Its depth is reported as the crypto-executor.queue-depth
+ * metric, the time each request waits in it as crypto-executor.wait and the time the work takes as
+ * crypto-executor.duration. When the queue is full the request is answered with a 503 straight
+ * away, which is counted by crypto-executor.rejections. Requests are also answered with a 503 when
+ * the {@link AdmissionController} refuses them on arrival or sheds them once they have waited too long.
+ *
+ * Each item of a batch is queued, timed and admitted as a piece of work of its own, so a batch
+ * takes its fair share of the pool and counts for as many requests as it has items.
+ */
+public class CryptoExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CryptoExecutor.class);
+    private static final String METRIC_PREFIX = "crypto-executor";
+
+    private final Executor executor;
+    private final AdmissionController admissionController;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Timer wait;
+    private final Timer duration;
+    private final Meter rejections;
+
+    public CryptoExecutor(Executor executor, Collection<Runnable> workQueue, MetricRegistry metricRegistry) {
+        this(executor, workQueue, AdmissionController.disabled(), metricRegistry);
+    }
+
+    public CryptoExecutor(Executor executor, Collection<Runnable> workQueue, AdmissionController admissionController, MetricRegistry metricRegistry) {
+        this.executor = executor;
+        this.admissionController = admissionController;
+        this.wait = metricRegistry.timer(MetricRegistry.name(METRIC_PREFIX, "wait"));
+        this.duration = metricRegistry.timer(MetricRegistry.name(METRIC_PREFIX, "duration"));
+        this.rejections = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "rejections"));
+        metricRegistry.gauge(MetricRegistry.name(METRIC_PREFIX, "queue-depth"), () -> (Gauge<Integer>) workQueue::size);
+    }
+
+    /**
+     * Runs the work on the calling thread, for resources that are not given an executor.
+     */
+    public static CryptoExecutor direct() {
+        return new CryptoExecutor(MoreExecutors.directExecutor(), Collections.emptyList(), new MetricRegistry());
+    }
+
+    /**
+     * Resumes the request with the response the work returns, or with whatever it throws so that
+     * the exception mappers can deal with it as they would for a synchronous resource.
+     */
+    public void resume(AsyncResponse asyncResponse, Callable<Response> work) {
+        if (!admissionController.admit(inFlight.get())) {
+            LOG.debug("Refusing request as the crypto executor is overloaded");
+            asyncResponse.resume(ServiceUnavailableResponse.create("The service is overloaded"));
+            return;
+        }
+
+        long queuedAt = System.nanoTime();
+        inFlight.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    long waitNanos = System.nanoTime() - queuedAt;
+                    wait.update(waitNanos, TimeUnit.NANOSECONDS);
+                    if (admissionController.shouldShed(waitNanos)) {
+                        LOG.debug("Shedding request after waiting {}ms for the crypto executor", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+                        asyncResponse.resume(ServiceUnavailableResponse.create("The service is overloaded"));
+                        return;
+                    }
+                    doWork(asyncResponse, work);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            rejections.mark();
+            LOG.warn("Rejecting request as the crypto executor queue is full");
+            asyncResponse.resume(ServiceUnavailableResponse.create("Too many requests are waiting to be processed"));
+        }
+    }
+
+    /**
+     * Runs each item of a batch as its own piece of work and resumes the request with the response
+     * built from their results, in the order the items were given. The whole batch is answered with
+     * a 503 if it is refused or any of its items is shed or does not fit in the queue, and with the
+     * first exception an item throws otherwise; the items still queued are then skipped.
+     */
+    public <T> void resumeAll(AsyncResponse asyncResponse, List<Callable<T>> items, Function<List<T>, Response> respond) {
+        if (items.isEmpty()) {
+            asyncResponse.resume(respond.apply(Collections.emptyList()));
+            return;
+        }
+        if (!admissionController.admit(inFlight.get() + items.size() - 1)) {
+            LOG.debug("Refusing batch of {} as the crypto executor is overloaded", items.size());
+            asyncResponse.resume(ServiceUnavailableResponse.create("The service is overloaded"));
+            return;
+        }
+
+        Batch<T> batch = new Batch<>(asyncResponse, items.size(), respond);
+        long queuedAt = System.nanoTime();
+        for (int i = 0; i < items.size(); i++) {
+            int index = i;
+            Callable<T> item = items.get(i);
+            inFlight.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    try {
+                        doItem(batch, index, item, queuedAt);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.decrementAndGet();
+                rejections.mark();
+                LOG.warn("Rejecting batch as the crypto executor queue is full");
+                batch.fail(ServiceUnavailableResponse.create("Too many requests are waiting to be processed"));
+                return;
+            }
+        }
+    }
+
+    private <T> void doItem(Batch<T> batch, int index, Callable<T> item, long queuedAt) {
+        if (batch.isFinished()) {
+            return;
+        }
+        long waitNanos = System.nanoTime() - queuedAt;
+        wait.update(waitNanos, TimeUnit.NANOSECONDS);
+        if (admissionController.shouldShed(waitNanos)) {
+            LOG.debug("Shedding batch after waiting {}ms for the crypto executor", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            batch.fail(ServiceUnavailableResponse.create("The service is overloaded"));
+            return;
+        }
+
+        long startedAt = System.nanoTime();
+        try (Timer.Context ignored = duration.time()) {
+            batch.complete(index, item.call());
+        } catch (Throwable e) {
+            batch.fail(e);
+        } finally {
+            admissionController.recordDuration(System.nanoTime() - startedAt);
+        }
+    }
+
+    private void doWork(AsyncResponse asyncResponse, Callable<Response> work) {
+        long startedAt = System.nanoTime();
+        try (Timer.Context ignored = duration.time()) {
+            asyncResponse.resume(work.call());
+        } catch (Throwable e) {
+            asyncResponse.resume(e);
+        } finally {
+            admissionController.recordDuration(System.nanoTime() - startedAt);
+        }
+    }
+
+    private static class Batch<T> {
+        private final AsyncResponse asyncResponse;
+        private final Function<List<T>, Response> respond;
+        private final AtomicReferenceArray<T> results;
+        private final AtomicInteger remaining;
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private Batch(AsyncResponse asyncResponse, int size, Function<List<T>, Response> respond) {
+            this.asyncResponse = asyncResponse;
+            this.respond = respond;
+            this.results = new AtomicReferenceArray<>(size);
+            this.remaining = new AtomicInteger(size);
+        }
+
+        private boolean isFinished() {
+            return finished.get();
+        }
+
+        private void complete(int index, T result) {
+            results.set(index, result);
+            if (remaining.decrementAndGet() == 0 && finished.compareAndSet(false, true)) {
+                List<T> orderedResults = new ArrayList<>(results.length());
+                for (int i = 0; i < results.length(); i++) {
+                    orderedResults.add(results.get(i));
+                }
+                try {
+                    asyncResponse.resume(respond.apply(orderedResults));
+                } catch (RuntimeException e) {
+                    asyncResponse.resume(e);
+                }
+            }
+        }
+
+        private void fail(Response response) {
+            if (finished.compareAndSet(false, true)) {
+                asyncResponse.resume(response);
+            }
+        }
+
+        private void fail(Throwable e) {
+            if (finished.compareAndSet(false, true)) {
+                asyncResponse.resume(e);
+            }
+        }
+    }
+}
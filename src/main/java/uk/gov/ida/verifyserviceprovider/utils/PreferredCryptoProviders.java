@@ -0,0 +1,239 @@
+package uk.gov.ida.verifyserviceprovider.utils;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Pins the JCE provider used for individual algorithms, leaving every other algorithm with
+ * the JVM's default provider order.
+ *
+ * OpenSAML and Santuario ask the JCE for algorithms by name without naming a provider, so the
+ * pinned algorithms are registered by a provider of our own, installed ahead of all the others,
+ * whose services hand out the implementations of the preferred providers. Algorithms are
+ * given as "Type.Algorithm", for example "Cipher.AES/GCM/NoPadding" or "Signature.SHA256withRSA",
+ * and the BouncyCastle provider is installed (after the JVM's own) if any algorithm is pinned to BC.
+ *
+ * Providers mostly register ciphers under their base algorithm alone, so a Cipher transformation
+ * is looked up the way Cipher.getInstance does: the full transformation, then algorithm/mode,
+ * then algorithm//padding, then the algorithm. Whatever it was found under is registered under
+ * the same name, limited to the mode and padding asked for, so that Cipher still sets those on
+ * the instance it gets and other transformations of the same algorithm are left alone.
+ */
+public class PreferredCryptoProviders {
+
+    public static final String PROVIDER_NAME = "VerifyServiceProviderPreferred";
+
+    private static final Logger LOG = LoggerFactory.getLogger(PreferredCryptoProviders.class);
+    private static final String CIPHER = "Cipher";
+    private static final String SUPPORTED_MODES = "SupportedModes";
+    private static final String SUPPORTED_PADDINGS = "SupportedPaddings";
+    private static final String[] SERVICE_ATTRIBUTES = {
+            SUPPORTED_MODES, SUPPORTED_PADDINGS, "SupportedKeyClasses", "SupportedKeyFormats", "KeySize", "ImplementedIn"
+    };
+
+    private PreferredCryptoProviders() {
+    }
+
+    public static synchronized void install(Map<String, String> preferredProviders) {
+        Security.removeProvider(PROVIDER_NAME);
+        if (preferredProviders.isEmpty()) {
+            return;
+        }
+        if (preferredProviders.containsValue(BouncyCastleProvider.PROVIDER_NAME) && Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+
+        PreferredProvider preferredProvider = new PreferredProvider();
+        preferredProviders.forEach((algorithm, providerName) -> {
+            preferredProvider.pin(algorithm, providerName);
+            LOG.info("Using the {} provider for {}", providerName, algorithm);
+        });
+        Security.insertProviderAt(preferredProvider, 1);
+        try {
+            preferredProviders.keySet().forEach(PreferredCryptoProviders::checkPinned);
+        } catch (RuntimeException e) {
+            Security.removeProvider(PROVIDER_NAME);
+            throw e;
+        }
+    }
+
+    private static void checkPinned(String algorithm) {
+        if (!algorithm.startsWith(CIPHER + ".")) {
+            return;
+        }
+        // a JVM that insists on signed JCE providers silently passes over ours for ciphers
+        String transformation = algorithm.substring(CIPHER.length() + 1);
+        try {
+            if (!PROVIDER_NAME.equals(Cipher.getInstance(transformation).getProvider().getName())) {
+                throw new IllegalArgumentException("This JVM will not use the preferred provider for " + algorithm);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Unable to use the preferred provider for " + algorithm, e);
+        }
+    }
+
+    private static class PreferredProvider extends Provider {
+
+        private PreferredProvider() {
+            super(PROVIDER_NAME, 1.0, "Algorithms pinned to a preferred provider by the Verify Service Provider configuration");
+        }
+
+        private void pin(String algorithm, String providerName) {
+            int separator = algorithm.indexOf('.');
+            if (separator <= 0 || separator == algorithm.length() - 1) {
+                throw new IllegalArgumentException("Preferred provider algorithms must be given as Type.Algorithm, not " + algorithm);
+            }
+            Provider provider = Security.getProvider(providerName);
+            if (provider == null) {
+                throw new IllegalArgumentException("No JCE provider named " + providerName + " is installed");
+            }
+            String type = algorithm.substring(0, separator);
+            String algorithmName = algorithm.substring(separator + 1);
+            if (CIPHER.equals(type) && algorithmName.contains("/")) {
+                pinTransformation(algorithm, provider, algorithmName);
+                return;
+            }
+            Service service = provider.getService(type, algorithmName);
+            if (service == null) {
+                throw noSuchAlgorithm(provider, algorithm);
+            }
+            // registered under the name asked for, which may only be an alias in the preferred provider
+            putPinned(algorithm, new DelegatingService(this, type, algorithmName, service));
+        }
+
+        private void pinTransformation(String algorithm, Provider provider, String transformation) {
+            String[] parts = transformation.split("/", -1);
+            if (parts.length != 3 || parts[0].isEmpty() || parts[1].isEmpty() || parts[2].isEmpty()) {
+                throw new IllegalArgumentException("Cipher transformations must be given as algorithm/mode/padding, not " + transformation);
+            }
+            String name = parts[0];
+            String mode = parts[1];
+            String padding = parts[2];
+
+            // the same order Cipher.getInstance looks them up in
+            Service service;
+            if ((service = provider.getService(CIPHER, transformation)) != null) {
+                putPinned(algorithm, new DelegatingService(this, CIPHER, transformation, service));
+            } else if ((service = provider.getService(CIPHER, name + "/" + mode)) != null) {
+                putPinned(algorithm, new DelegatingService(this, CIPHER, name + "/" + mode, service, null, padding));
+            } else if ((service = provider.getService(CIPHER, name + "//" + padding)) != null) {
+                putPinned(algorithm, new DelegatingService(this, CIPHER, name + "//" + padding, service, mode, null));
+            } else if ((service = provider.getService(CIPHER, name)) != null) {
+                putPinned(algorithm, new DelegatingService(this, CIPHER, name, service, mode, padding));
+            } else {
+                throw noSuchAlgorithm(provider, algorithm);
+            }
+        }
+
+        private void putPinned(String algorithm, DelegatingService service) {
+            Service existing = getService(service.getType(), service.getAlgorithm());
+            if (existing == null) {
+                putService(service);
+            } else if (((DelegatingService) existing).delegatesTo(service.delegate)) {
+                // e.g. two modes of AES both pinned to SunJCE, which only registers AES itself
+                removeService(existing);
+                putService(((DelegatingService) existing).alsoFor(service));
+            } else {
+                throw new IllegalArgumentException(algorithm + " is found under the same name as another algorithm pinned to a different provider, "
+                        + service.getType() + "." + service.getAlgorithm());
+            }
+        }
+
+        private static IllegalArgumentException noSuchAlgorithm(Provider provider, String algorithm) {
+            return new IllegalArgumentException(new NoSuchAlgorithmException(provider.getName() + " does not provide " + algorithm));
+        }
+    }
+
+    private static class DelegatingService extends Provider.Service {
+        private final Provider.Service delegate;
+        private final Set<String> modes;
+        private final Set<String> paddings;
+
+        private DelegatingService(Provider provider, String type, String algorithm, Provider.Service delegate) {
+            this(provider, type, algorithm, delegate, (Set<String>) null, null);
+        }
+
+        /**
+         * @param mode    if not null, the only cipher mode this service is offered for
+         * @param padding if not null, the only cipher padding this service is offered for
+         */
+        private DelegatingService(Provider provider, String type, String algorithm, Provider.Service delegate, String mode, String padding) {
+            this(provider, type, algorithm, delegate, onlyIfGiven(mode), onlyIfGiven(padding));
+        }
+
+        private DelegatingService(Provider provider, String type, String algorithm, Provider.Service delegate, Set<String> modes, Set<String> paddings) {
+            super(provider, type, algorithm, delegate.getClassName(), null, attributesOf(delegate, modes, paddings));
+            this.delegate = delegate;
+            this.modes = modes;
+            this.paddings = paddings;
+        }
+
+        private boolean delegatesTo(Provider.Service other) {
+            return delegate.getProvider() == other.getProvider() && delegate.getClassName().equals(other.getClassName());
+        }
+
+        private DelegatingService alsoFor(DelegatingService other) {
+            return new DelegatingService(getProvider(), getType(), getAlgorithm(), delegate, union(modes, other.modes), union(paddings, other.paddings));
+        }
+
+        @Override
+        public Object newInstance(Object constructorParameter) throws NoSuchAlgorithmException {
+            return delegate.newInstance(constructorParameter);
+        }
+
+        @Override
+        public boolean supportsParameter(Object parameter) {
+            return delegate.supportsParameter(parameter);
+        }
+
+        private static Set<String> onlyIfGiven(String value) {
+            return value == null ? null : Collections.singleton(value.toUpperCase(Locale.ENGLISH));
+        }
+
+        private static Set<String> union(Set<String> values, Set<String> otherValues) {
+            if (values == null || otherValues == null) {
+                return null;
+            }
+            Set<String> union = new TreeSet<>(values);
+            union.addAll(otherValues);
+            return union;
+        }
+
+        private static Map<String, String> attributesOf(Provider.Service service, Set<String> modes, Set<String> paddings) {
+            Map<String, String> attributes = new HashMap<>();
+            for (String attribute : SERVICE_ATTRIBUTES) {
+                String value = service.getAttribute(attribute);
+                if (value != null) {
+                    attributes.put(attribute, value);
+                }
+            }
+            // Cipher matches these patterns against the upper-cased mode and padding
+            if (modes != null) {
+                attributes.put(SUPPORTED_MODES, anyOf(modes));
+            }
+            if (paddings != null) {
+                attributes.put(SUPPORTED_PADDINGS, anyOf(paddings));
+            }
+            return attributes;
+        }
+
+        private static String anyOf(Set<String> values) {
+            return values.stream().map(Pattern::quote).collect(Collectors.joining("|"));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package uk.gov.ida.verifyserviceprovider.utils;
+
+import io.dropwizard.jersey.errors.ErrorMessage;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+
+/**
+ * The 503 given to requests that are turned away because the VSP already has as much work
+ * queued as it is configured to accept.
+ */
+public class ServiceUnavailableResponse {
+
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private ServiceUnavailableResponse() {
+    }
+
+    public static Response create(String message) {
+        return Response
+                .status(SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .entity(new ErrorMessage(SERVICE_UNAVAILABLE.getStatusCode(), message))
+                .build();
+    }
+}
@@ -0,0 +1,186 @@
+package uk.gov.ida.verifyserviceprovider.validators;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the IDs it has seen until they expire, so that a response or assertion can only be
+ * accepted once.
+ *
+ * IDs are kept as 64 bit hashes, keyed with a random seed so they cannot be chosen to collide,
+ * in open addressing tables of primitive longs. There is no object per entry for the garbage
+ * collector to trace, and the tables are striped so that concurrent inserts rarely contend.
+ * Expired entries are reused by later inserts and dropped whenever a table is resized.
+ *
+ * Once roughly maxEntries unexpired IDs are held new IDs are no longer remembered, which is counted by
+ * the overflows meter, rather than responses being rejected because the cache is full.
+ */
+public class ReplayCache {
+
+    private static final String METRIC_PREFIX = "replay-cache";
+    private static final int STRIPES = 64;
+    private static final int INITIAL_STRIPE_CAPACITY = 64;
+    private static final long EMPTY = 0;
+
+    private final HashFunction hashFunction = Hashing.murmur3_128(new SecureRandom().nextInt());
+    private final Stripe[] stripes;
+    private final LongSupplier clock;
+    private final Meter rejections;
+    private final Meter overflows;
+
+    public ReplayCache(int maxEntries, MetricRegistry metricRegistry) {
+        this(maxEntries, System::currentTimeMillis, metricRegistry);
+    }
+
+    public ReplayCache(int maxEntries, LongSupplier clock, MetricRegistry metricRegistry) {
+        this(STRIPES, maxEntries, clock, metricRegistry);
+    }
+
+    private ReplayCache(int stripeCount, int maxEntries, LongSupplier clock, MetricRegistry metricRegistry) {
+        int maxEntriesPerStripe = stripeCount == 0 ? 0 : Math.max(1, (maxEntries + stripeCount - 1) / stripeCount);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(maxEntriesPerStripe);
+        }
+        this.clock = clock;
+        this.rejections = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "rejections"));
+        this.overflows = metricRegistry.meter(MetricRegistry.name(METRIC_PREFIX, "overflows"));
+        metricRegistry.gauge(MetricRegistry.name(METRIC_PREFIX, "size"), () -> (Gauge<Long>) this::size);
+    }
+
+    /**
+     * A cache that remembers nothing, for when replay detection is turned off.
+     */
+    public static ReplayCache disabled() {
+        return new ReplayCache(0, 0, System::currentTimeMillis, new MetricRegistry());
+    }
+
+    /**
+     * Remembers the ID until expiresAtMillis.
+     *
+     * @return false if the ID has already been seen and has not yet expired
+     */
+    public boolean recordIfAbsent(String id, long expiresAtMillis) {
+        if (stripes.length == 0) {
+            return true;
+        }
+        long now = clock.getAsLong();
+        if (expiresAtMillis <= now) {
+            return true;
+        }
+
+        long key = hashFunction.hashString(id, StandardCharsets.UTF_8).asLong();
+        if (key == EMPTY) {
+            key = 1;
+        }
+        // the top bits choose the stripe and the bottom bits the slot within it
+        Stripe stripe = stripes[(int) (key >>> 58) & (stripes.length - 1)];
+        switch (stripe.insert(key, expiresAtMillis, now)) {
+            case PRESENT:
+                rejections.mark();
+                return false;
+            case FULL:
+                overflows.mark();
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * The number of slots in use, which includes expired IDs that have not been reused or dropped yet.
+     */
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.occupied;
+        }
+        return size;
+    }
+
+    private enum InsertResult { INSERTED, PRESENT, FULL }
+
+    private static final class Stripe {
+        private final int maxEntries;
+        private long[] keys = new long[INITIAL_STRIPE_CAPACITY];
+        private long[] expiries = new long[INITIAL_STRIPE_CAPACITY];
+        private volatile int occupied;
+
+        private Stripe(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        private synchronized InsertResult insert(long key, long expiresAt, long now) {
+            int mask = keys.length - 1;
+            int index = (int) key & mask;
+            int reusable = -1;
+            while (keys[index] != EMPTY) {
+                if (expiries[index] <= now) {
+                    if (reusable < 0) {
+                        reusable = index;
+                    }
+                } else if (keys[index] == key) {
+                    return InsertResult.PRESENT;
+                }
+                index = (index + 1) & mask;
+            }
+
+            if (reusable >= 0) {
+                keys[reusable] = key;
+                expiries[reusable] = expiresAt;
+                return InsertResult.INSERTED;
+            }
+            if ((occupied + 1) * 4L > keys.length * 3L) {
+                if (!resize(now)) {
+                    return InsertResult.FULL;
+                }
+                return insert(key, expiresAt, now);
+            }
+            keys[index] = key;
+            expiries[index] = expiresAt;
+            occupied++;
+            return InsertResult.INSERTED;
+        }
+
+        private boolean resize(long now) {
+            int live = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY && expiries[i] > now) {
+                    live++;
+                }
+            }
+            if (live >= maxEntries) {
+                return false;
+            }
+
+            int capacity = INITIAL_STRIPE_CAPACITY;
+            while ((live + 1) * 2L > capacity) {
+                capacity <<= 1;
+            }
+            long[] oldKeys = keys;
+            long[] oldExpiries = expiries;
+            keys = new long[capacity];
+            expiries = new long[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY && oldExpiries[i] > now) {
+                    int index = (int) oldKeys[i] & mask;
+                    while (keys[index] != EMPTY) {
+                        index = (index + 1) & mask;
+                    }
+                    keys[index] = oldKeys[i];
+                    expiries[index] = oldExpiries[i];
+                }
+            }
+            occupied = live;
+            return true;
+        }
+    }
+}
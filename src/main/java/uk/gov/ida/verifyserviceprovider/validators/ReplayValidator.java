@@ -0,0 +1,69 @@
+package uk.gov.ida.verifyserviceprovider.validators;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.core.SubjectConfirmation;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+
+import java.util.List;
+
+/**
+ * Rejects a response, or an assertion lifted into another response, that has already been
+ * translated.
+ *
+ * A response's ID is remembered for as long as InstantValidator would accept its IssueInstant,
+ * and an assertion's ID until the latest NotOnOrAfter it carries, both allowing for clock skew.
+ * After that the response or assertion is rejected as too old anyway.
+ */
+public class ReplayValidator {
+
+    private final ReplayCache replayCache;
+    private final Duration clockSkew;
+
+    public ReplayValidator(ReplayCache replayCache, Duration clockSkew) {
+        this.replayCache = replayCache;
+        this.clockSkew = clockSkew;
+    }
+
+    public static ReplayValidator disabled() {
+        return new ReplayValidator(ReplayCache.disabled(), Duration.ZERO);
+    }
+
+    public void validate(Response response, List<Assertion> assertions) {
+        DateTime responseExpiry = response.getIssueInstant().plus(InstantValidator.MAXIMUM_INSTANT_AGE).plus(clockSkew);
+        if (!replayCache.recordIfAbsent(response.getID(), responseExpiry.getMillis())) {
+            throw new SamlResponseValidationException(String.format("Response %s has already been translated", response.getID()));
+        }
+
+        for (Assertion assertion : assertions) {
+            if (!replayCache.recordIfAbsent(assertion.getID(), expiryOf(assertion, responseExpiry).getMillis())) {
+                throw new SamlResponseValidationException(String.format("Assertion %s has already been translated", assertion.getID()));
+            }
+        }
+    }
+
+    private DateTime expiryOf(Assertion assertion, DateTime responseExpiry) {
+        DateTime expiry = responseExpiry;
+        if (assertion.getConditions() != null) {
+            expiry = latest(expiry, assertion.getConditions().getNotOnOrAfter());
+        }
+        if (assertion.getSubject() != null) {
+            for (SubjectConfirmation subjectConfirmation : assertion.getSubject().getSubjectConfirmations()) {
+                if (subjectConfirmation.getSubjectConfirmationData() != null) {
+                    expiry = latest(expiry, subjectConfirmation.getSubjectConfirmationData().getNotOnOrAfter());
+                }
+            }
+        }
+        return expiry;
+    }
+
+    private DateTime latest(DateTime current, DateTime notOnOrAfter) {
+        if (notOnOrAfter == null) {
+            return current;
+        }
+        DateTime withSkew = notOnOrAfter.plus(clockSkew);
+        return withSkew.isAfter(current) ? withSkew : current;
+    }
+}
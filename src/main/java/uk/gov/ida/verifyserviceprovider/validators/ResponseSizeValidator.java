@@ -9,7 +9,14 @@ public class ResponseSizeValidator implements SizeValidator {
 
     @Override
     public void validate(String input) {
-        if (input.length() > MAX_SAML_RESPONSE_LENGTH) {
+        validateLength(input.length());
+    }
+
+    /**
+     * @param length the number of characters decoded so far, counted as String.length() would
+     */
+    public void validateLength(long length) {
+        if (length > MAX_SAML_RESPONSE_LENGTH) {
             throw new SamlResponseValidationException("SAML Response is too long.");
         }
     }
@@ -0,0 +1,106 @@
+package unit.uk.gov.ida.verifyserviceprovider.factories;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensaml.saml.saml2.encryption.Encrypter;
+import org.opensaml.security.credential.BasicCredential;
+import uk.gov.ida.common.shared.security.PublicKeyFactory;
+import uk.gov.ida.common.shared.security.X509CertificateFactory;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.saml.security.EncryptionCredentialResolver;
+import uk.gov.ida.verifyserviceprovider.factories.EncrypterFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.HUB_TEST_PUBLIC_ENCRYPTION_CERT;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PUBLIC_ENCRYPTION_CERT;
+
+public class EncrypterFactoryTest {
+
+    private static final String HUB_ENTITY_ID = "hub-entity-id";
+
+    private final EncryptionCredentialResolver encryptionCredentialResolver = mock(EncryptionCredentialResolver.class);
+    private final AtomicReference<Object> metadataGeneration = new AtomicReference<>("first");
+    private EncrypterFactory encrypterFactory;
+
+    @Before
+    public void setUp() {
+        IdaSamlBootstrap.bootstrap();
+        when(encryptionCredentialResolver.getEncryptingCredential(HUB_ENTITY_ID)).thenReturn(credentialFor(HUB_TEST_PUBLIC_ENCRYPTION_CERT));
+        encrypterFactory = new EncrypterFactory(encryptionCredentialResolver, HUB_ENTITY_ID, metadataGeneration::get);
+    }
+
+    @Test
+    public void shouldOnlyResolveTheCredentialOnceUntilMetadataIsRefreshed() {
+        encrypterFactory.createEncrypter();
+        encrypterFactory.createEncrypter();
+        verify(encryptionCredentialResolver, times(1)).getEncryptingCredential(HUB_ENTITY_ID);
+
+        metadataGeneration.set("second");
+        encrypterFactory.createEncrypter();
+        verify(encryptionCredentialResolver, times(2)).getEncryptingCredential(HUB_ENTITY_ID);
+    }
+
+    @Test
+    public void shouldReuseReleasedEncrypters() {
+        Encrypter encrypter = encrypterFactory.createEncrypter();
+        encrypterFactory.releaseEncrypter(encrypter);
+
+        assertThat(encrypterFactory.createEncrypter()).isSameAs(encrypter);
+    }
+
+    @Test
+    public void shouldKeepReusingEncryptersWhenRefreshedMetadataHasTheSameKey() {
+        Encrypter encrypter = encrypterFactory.createEncrypter();
+        encrypterFactory.releaseEncrypter(encrypter);
+
+        metadataGeneration.set("second");
+
+        assertThat(encrypterFactory.createEncrypter()).isSameAs(encrypter);
+    }
+
+    @Test
+    public void shouldNotReuseEncryptersForARotatedKey() {
+        Encrypter encrypter = encrypterFactory.createEncrypter();
+        encrypterFactory.releaseEncrypter(encrypter);
+
+        when(encryptionCredentialResolver.getEncryptingCredential(HUB_ENTITY_ID)).thenReturn(credentialFor(TEST_RP_PUBLIC_ENCRYPTION_CERT));
+        metadataGeneration.set("second");
+
+        assertThat(encrypterFactory.createEncrypter()).isNotSameAs(encrypter);
+    }
+
+    @Test
+    public void shouldNotPoolEncryptersIssuedBeforeAKeyRotation() {
+        Encrypter oldEncrypter = encrypterFactory.createEncrypter();
+
+        when(encryptionCredentialResolver.getEncryptingCredential(HUB_ENTITY_ID)).thenReturn(credentialFor(TEST_RP_PUBLIC_ENCRYPTION_CERT));
+        metadataGeneration.set("second");
+        Encrypter newEncrypter = encrypterFactory.createEncrypter();
+        encrypterFactory.releaseEncrypter(oldEncrypter);
+
+        assertThat(encrypterFactory.createEncrypter()).isNotSameAs(oldEncrypter).isNotSameAs(newEncrypter);
+    }
+
+    @Test
+    public void shouldNotHoldOnToEncryptersThatAreNeverReleased() throws Exception {
+        WeakReference<Encrypter> encrypter = new WeakReference<>(encrypterFactory.createEncrypter());
+
+        for (int i = 0; i < 10 && encrypter.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertThat(encrypter.get()).isNull();
+    }
+
+    private static BasicCredential credentialFor(String certificate) {
+        return new BasicCredential(new PublicKeyFactory(new X509CertificateFactory()).createPublicKey(certificate));
+    }
+}
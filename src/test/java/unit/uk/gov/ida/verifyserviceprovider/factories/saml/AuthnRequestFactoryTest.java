@@ -33,6 +33,8 @@ import java.security.KeyException;
 import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -42,6 +44,8 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static uk.gov.ida.saml.core.test.TestCertificateStrings.HUB_TEST_PRIVATE_ENCRYPTION_KEY;
 import static uk.gov.ida.saml.core.test.TestCertificateStrings.HUB_TEST_PUBLIC_ENCRYPTION_CERT;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_MS_PRIVATE_SIGNING_KEY;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PRIVATE_SIGNING_KEY;
 
 public class AuthnRequestFactoryTest {
 
@@ -130,6 +134,32 @@ public class AuthnRequestFactoryTest {
         verify(manifestReader, times(1)).getAttributeValueFor(VerifyServiceProviderApplication.class, "Version");
     }
 
+    @Test
+    public void shouldSignWithTheKeyCurrentlyReturnedByTheSigningKeyProvider() throws KeyException {
+        KeyPair firstKeyPair = createKeyPair(TEST_RP_PRIVATE_SIGNING_KEY);
+        KeyPair secondKeyPair = createKeyPair(TEST_RP_MS_PRIVATE_SIGNING_KEY);
+        AtomicReference<KeyPair> currentKeyPair = new AtomicReference<>(firstKeyPair);
+        AuthnRequestFactory rotatingFactory = new AuthnRequestFactory(
+            DESTINATION,
+            currentKeyPair::get,
+            manifestReader,
+            encrypterFactory,
+            Optional.empty()
+        );
+
+        AuthnRequest firstRequest = rotatingFactory.build(LevelOfAssurance.LEVEL_2, SERVICE_ENTITY_ID);
+        currentKeyPair.set(secondKeyPair);
+        AuthnRequest secondRequest = rotatingFactory.build(LevelOfAssurance.LEVEL_2, SERVICE_ENTITY_ID);
+
+        assertThat(firstRequest.getSignature().getSigningCredential().getPublicKey()).isEqualTo(firstKeyPair.getPublic());
+        assertThat(secondRequest.getSignature().getSigningCredential().getPublicKey()).isEqualTo(secondKeyPair.getPublic());
+    }
+
+    private KeyPair createKeyPair(String signingKey) throws KeyException {
+        PrivateKey privateKey = new PrivateKeyFactory().createPrivateKey(Base64.decodeBase64(signingKey));
+        return new KeyPair(KeySupport.derivePublicKey(privateKey), privateKey);
+    }
+
     private BasicCredential createBasicCredential() {
         final PublicKey publicKey = new PublicKeyFactory(new X509CertificateFactory()).createPublicKey(HUB_TEST_PUBLIC_ENCRYPTION_CERT);
         PrivateKey privateKey = new PrivateKeyFactory().createPrivateKey(Base64.decodeBase64(HUB_TEST_PRIVATE_ENCRYPTION_KEY));
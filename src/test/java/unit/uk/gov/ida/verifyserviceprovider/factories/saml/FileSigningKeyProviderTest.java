@@ -0,0 +1,82 @@
+package unit.uk.gov.ida.verifyserviceprovider.factories.saml;
+
+import io.dropwizard.util.Duration;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.gov.ida.verifyserviceprovider.factories.saml.FileSigningKeyProvider;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyPair;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_MS_PRIVATE_SIGNING_KEY;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PRIVATE_SIGNING_KEY;
+
+public class FileSigningKeyProviderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path signingKeyFile;
+
+    @Before
+    public void setUp() throws IOException {
+        signingKeyFile = temporaryFolder.newFile("signing-key").toPath();
+        writeSigningKey(TEST_RP_PRIVATE_SIGNING_KEY, 1000L);
+    }
+
+    @Test
+    public void shouldReadTheSigningKeyFromTheFile() {
+        KeyPair keyPair = new FileSigningKeyProvider(signingKeyFile, Duration.seconds(30)).getSigningKeyPair();
+
+        assertThat(keyPair.getPrivate().getEncoded()).isEqualTo(Base64.decodeBase64(TEST_RP_PRIVATE_SIGNING_KEY));
+        assertThat(keyPair.getPublic()).isNotNull();
+    }
+
+    @Test
+    public void shouldReturnTheSameKeyPairUntilTheFileChanges() {
+        FileSigningKeyProvider provider = new FileSigningKeyProvider(signingKeyFile, Duration.milliseconds(0));
+
+        assertThat(provider.getSigningKeyPair()).isSameAs(provider.getSigningKeyPair());
+    }
+
+    @Test
+    public void shouldReloadTheSigningKeyWhenTheFileIsModified() throws IOException {
+        FileSigningKeyProvider provider = new FileSigningKeyProvider(signingKeyFile, Duration.milliseconds(0));
+
+        writeSigningKey(TEST_RP_MS_PRIVATE_SIGNING_KEY, 2000L);
+
+        assertThat(provider.getSigningKeyPair().getPrivate().getEncoded()).isEqualTo(Base64.decodeBase64(TEST_RP_MS_PRIVATE_SIGNING_KEY));
+    }
+
+    @Test
+    public void shouldNotCheckTheFileMoreOftenThanTheCheckInterval() throws IOException {
+        FileSigningKeyProvider provider = new FileSigningKeyProvider(signingKeyFile, Duration.minutes(5));
+
+        writeSigningKey(TEST_RP_MS_PRIVATE_SIGNING_KEY, 2000L);
+
+        assertThat(provider.getSigningKeyPair().getPrivate().getEncoded()).isEqualTo(Base64.decodeBase64(TEST_RP_PRIVATE_SIGNING_KEY));
+    }
+
+    @Test
+    public void shouldKeepThePreviousKeyIfTheModifiedFileCannotBeRead() throws IOException {
+        FileSigningKeyProvider provider = new FileSigningKeyProvider(signingKeyFile, Duration.milliseconds(0));
+        KeyPair original = provider.getSigningKeyPair();
+
+        writeSigningKey("not-a-key", 2000L);
+
+        assertThat(provider.getSigningKeyPair()).isSameAs(original);
+    }
+
+    private void writeSigningKey(String signingKey, long lastModifiedMillis) throws IOException {
+        Files.write(signingKeyFile, signingKey.getBytes(StandardCharsets.US_ASCII));
+        Files.setLastModifiedTime(signingKeyFile, FileTime.fromMillis(lastModifiedMillis));
+    }
+}
@@ -0,0 +1,142 @@
+package unit.uk.gov.ida.verifyserviceprovider.factories.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import io.dropwizard.util.Duration;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.core.EncryptedAttribute;
+import org.opensaml.saml.saml2.encryption.Decrypter;
+import org.opensaml.security.credential.BasicCredential;
+import uk.gov.ida.common.shared.security.PrivateKeyFactory;
+import uk.gov.ida.common.shared.security.PublicKeyFactory;
+import uk.gov.ida.common.shared.security.X509CertificateFactory;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.saml.core.extensions.versioning.Version;
+import uk.gov.ida.saml.security.DecrypterFactory;
+import uk.gov.ida.saml.security.EncryptionCredentialResolver;
+import uk.gov.ida.shared.utils.manifest.ManifestReader;
+import uk.gov.ida.verifyserviceprovider.VerifyServiceProviderApplication;
+import uk.gov.ida.verifyserviceprovider.factories.EncrypterFactory;
+import uk.gov.ida.verifyserviceprovider.factories.saml.PreEncryptedVersionsPool;
+import uk.gov.ida.verifyserviceprovider.factories.saml.VersionsAttributeFactory;
+
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.HUB_TEST_PRIVATE_ENCRYPTION_KEY;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.HUB_TEST_PUBLIC_ENCRYPTION_CERT;
+import static uk.gov.ida.saml.core.test.TestCertificateStrings.TEST_RP_PUBLIC_ENCRYPTION_CERT;
+
+public class PreEncryptedVersionsPoolTest {
+
+    private static final String HUB_ENTITY_ID = "hub-entity-id";
+
+    private final EncryptionCredentialResolver encryptionCredentialResolver = mock(EncryptionCredentialResolver.class);
+    private final ManifestReader manifestReader = mock(ManifestReader.class);
+    private final AtomicReference<Object> metadataGeneration = new AtomicReference<>("first");
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final ScheduledExecutorService executorService = mock(ScheduledExecutorService.class);
+    private BasicCredential hubCredential;
+    private PreEncryptedVersionsPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        IdaSamlBootstrap.bootstrap();
+        hubCredential = new BasicCredential(
+                new PublicKeyFactory(new X509CertificateFactory()).createPublicKey(HUB_TEST_PUBLIC_ENCRYPTION_CERT),
+                new PrivateKeyFactory().createPrivateKey(Base64.decodeBase64(HUB_TEST_PRIVATE_ENCRYPTION_KEY))
+        );
+        when(encryptionCredentialResolver.getEncryptingCredential(HUB_ENTITY_ID)).thenReturn(hubCredential);
+        when(manifestReader.getAttributeValueFor(VerifyServiceProviderApplication.class, "Version")).thenReturn("some-version");
+
+        pool = new PreEncryptedVersionsPool(
+                new EncrypterFactory(encryptionCredentialResolver, HUB_ENTITY_ID, metadataGeneration::get),
+                new VersionsAttributeFactory(manifestReader)::createVersionsAttribute,
+                3,
+                Duration.minutes(1),
+                executorService,
+                metricRegistry
+        );
+    }
+
+    @Test
+    public void shouldHandOutEachPreEncryptedVersionsAttributeOnce() throws Exception {
+        pool.refill();
+
+        EncryptedAttribute first = pool.take().get();
+        EncryptedAttribute second = pool.take().get();
+        EncryptedAttribute third = pool.take().get();
+
+        assertThat(first).isNotSameAs(second).isNotSameAs(third);
+        assertThat(first.getEncryptedData().getCipherData().getCipherValue().getValue())
+                .isNotEqualTo(second.getEncryptedData().getCipherData().getCipherValue().getValue());
+        assertThat(pool.take()).isEqualTo(Optional.empty());
+        assertThat(metricRegistry.meter("pre-encrypted-versions.hits").getCount()).isEqualTo(3);
+        assertThat(metricRegistry.meter("pre-encrypted-versions.misses").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldEncryptTheVersionsAttributeForTheHub() throws Exception {
+        pool.refill();
+
+        Decrypter decrypter = new DecrypterFactory().createDecrypter(ImmutableList.of(hubCredential));
+        Attribute attribute = decrypter.decrypt(pool.take().get());
+
+        assertThat(attribute.getName()).isEqualTo("Versions");
+        assertThat(((Version) attribute.getAttributeValues().get(0)).getApplicationVersion().getValue()).isEqualTo("some-version");
+    }
+
+    @Test
+    public void shouldDiscardAttributesEncryptedForARotatedKey() {
+        pool.refill();
+
+        when(encryptionCredentialResolver.getEncryptingCredential(HUB_ENTITY_ID)).thenReturn(
+                new BasicCredential(new PublicKeyFactory(new X509CertificateFactory()).createPublicKey(TEST_RP_PUBLIC_ENCRYPTION_CERT))
+        );
+        metadataGeneration.set("second");
+
+        assertThat(pool.take()).isEqualTo(Optional.empty());
+        assertThat(metricRegistry.meter("pre-encrypted-versions.discarded").getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldLeaveTheCallerToEncryptWhenARefillCannotBeScheduled() {
+        doThrow(new RejectedExecutionException()).when(executorService).execute(any());
+
+        assertThat(pool.take()).isEqualTo(Optional.empty());
+        assertThat(pool.take()).isEqualTo(Optional.empty());
+
+        verify(executorService, times(2)).execute(any());
+    }
+
+    @Test
+    public void shouldEmptyThePoolAndStopRefillingWhenStopped() {
+        ScheduledFuture scheduledRefill = mock(ScheduledFuture.class);
+        when(executorService.scheduleWithFixedDelay(any(), anyLong(), anyLong(), any())).thenReturn(scheduledRefill);
+        pool.start();
+        pool.refill();
+
+        pool.stop();
+
+        verify(scheduledRefill).cancel(false);
+        assertThat(pool.take()).isEqualTo(Optional.empty());
+        pool.refill();
+        assertThat(pool.take()).isEqualTo(Optional.empty());
+        verify(executorService, never()).execute(any());
+    }
+}
@@ -0,0 +1,186 @@
+package unit.uk.gov.ida.verifyserviceprovider.resources;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import io.dropwizard.jersey.errors.ErrorMessage;
+import io.dropwizard.testing.junit.ResourceTestRule;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.opensaml.saml.saml2.core.impl.AuthnRequestBuilder;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
+import uk.gov.ida.verifyserviceprovider.dto.RequestGenerationBody;
+import uk.gov.ida.verifyserviceprovider.dto.RequestResponseBody;
+import uk.gov.ida.verifyserviceprovider.exceptions.InvalidEntityIdException;
+import uk.gov.ida.verifyserviceprovider.exceptions.InvalidEntityIdExceptionMapper;
+import uk.gov.ida.verifyserviceprovider.exceptions.JerseyViolationExceptionMapper;
+import uk.gov.ida.verifyserviceprovider.exceptions.JsonProcessingExceptionMapper;
+import uk.gov.ida.verifyserviceprovider.factories.saml.AuthnRequestFactory;
+import uk.gov.ida.verifyserviceprovider.resources.BatchGenerateAuthnRequestResource;
+import uk.gov.ida.verifyserviceprovider.services.AuthnRequestService;
+import uk.gov.ida.verifyserviceprovider.services.EntityIdService;
+import uk.gov.ida.verifyserviceprovider.utils.CryptoExecutor;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BatchGenerateAuthnRequestResourceTest {
+
+    private static final URI HUB_SSO_LOCATION = URI.create("http://example.com/SAML2/SSO");
+    private static final String DEFAULT_ENTITY_ID = "http://default-entity-id";
+    private static final int MAX_BATCH_SIZE = 3;
+
+    private static final AuthnRequestFactory authnRequestFactory = mock(AuthnRequestFactory.class);
+    private static final EntityIdService entityIdService = mock(EntityIdService.class);
+    private static final ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+    @ClassRule
+    public static final ResourceTestRule resources = ResourceTestRule.builder()
+        .addProvider(JerseyViolationExceptionMapper.class)
+        .addProvider(JsonProcessingExceptionMapper.class)
+        .addProvider(InvalidEntityIdExceptionMapper.class)
+        .addResource(new BatchGenerateAuthnRequestResource(
+            new AuthnRequestService(authnRequestFactory, HUB_SSO_LOCATION, entityIdService),
+            new CryptoExecutor(executorService, Collections.emptyList(), new MetricRegistry()),
+            MAX_BATCH_SIZE
+        ))
+        .build();
+
+    @AfterClass
+    public static void shutDownExecutor() {
+        executorService.shutdown();
+    }
+
+    @Before
+    public void setUp() {
+        IdaSamlBootstrap.bootstrap();
+        reset(authnRequestFactory, entityIdService);
+        when(entityIdService.getEntityId(any(RequestGenerationBody.class))).thenReturn(DEFAULT_ENTITY_ID);
+    }
+
+    @Test
+    public void shouldReturnTheGeneratedRequestsInTheOrderTheyWereAskedFor() {
+        when(authnRequestFactory.build(eq(LevelOfAssurance.LEVEL_1), any())).thenAnswer(invocation -> authnRequestWithId("level-1"));
+        when(authnRequestFactory.build(eq(LevelOfAssurance.LEVEL_2), any())).thenAnswer(invocation -> authnRequestWithId("level-2"));
+
+        Response response = post(ImmutableList.of(
+            new RequestGenerationBody(LevelOfAssurance.LEVEL_2, null),
+            new RequestGenerationBody(LevelOfAssurance.LEVEL_1, null),
+            new RequestGenerationBody(LevelOfAssurance.LEVEL_2, null)
+        ));
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        List<RequestResponseBody> requestResponseBodies = response.readEntity(new GenericType<List<RequestResponseBody>>() {});
+        assertThat(requestResponseBodies.stream().map(RequestResponseBody::getRequestId).collect(toList()))
+            .containsExactly("level-2", "level-1", "level-2");
+        assertThat(requestResponseBodies).allSatisfy(body -> {
+            assertThat(body.getSamlRequest()).isNotEmpty();
+            assertThat(body.getSsoLocation()).isEqualTo(HUB_SSO_LOCATION);
+        });
+    }
+
+    @Test
+    public void shouldReturnAnEmptyArrayForAnEmptyBatch() {
+        Response response = post(ImmutableList.of());
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(response.readEntity(new GenericType<List<RequestResponseBody>>() {})).isEmpty();
+    }
+
+    @Test
+    public void shouldReturn422IfTheBatchIsTooLarge() {
+        RequestGenerationBody body = new RequestGenerationBody(LevelOfAssurance.LEVEL_2, null);
+
+        Response response = post(ImmutableList.of(body, body, body, body));
+
+        assertThat(response.getStatus()).isEqualTo(422);
+        assertThat(response.readEntity(ErrorMessage.class)).isEqualTo(new ErrorMessage(422, "may not contain more than 3 requests"));
+    }
+
+    @Test
+    public void shouldReturn422IfAnyRequestIsInvalid() {
+        Response response = resources.target("/generate-requests")
+            .request()
+            .post(Entity.entity("[{\"levelOfAssurance\": \"LEVEL_2\"}, {}]", MediaType.APPLICATION_JSON_TYPE));
+
+        assertThat(response.getStatus()).isEqualTo(422);
+        assertThat(response.readEntity(ErrorMessage.class).getMessage()).contains("levelOfAssurance may not be null");
+    }
+
+    @Test
+    public void shouldReturn400IfAnyEntityIdIsInvalid() {
+        when(authnRequestFactory.build(any(), any())).thenReturn(authnRequestWithId("some-id"));
+        when(entityIdService.getEntityId(any(RequestGenerationBody.class))).thenThrow(new InvalidEntityIdException("bad entity id"));
+
+        Response response = post(ImmutableList.of(new RequestGenerationBody(LevelOfAssurance.LEVEL_2, "http://unknown")));
+
+        assertThat(response.getStatus()).isEqualTo(400);
+        assertThat(response.readEntity(ErrorMessage.class).getMessage()).isEqualTo("bad entity id");
+    }
+
+    @Test
+    public void shouldReturn500IfARuntimeExceptionIsThrown() {
+        when(authnRequestFactory.build(any(), any())).thenThrow(RuntimeException.class);
+
+        Response response = post(ImmutableList.of(new RequestGenerationBody(LevelOfAssurance.LEVEL_2, null)));
+
+        ErrorMessage responseEntity = response.readEntity(ErrorMessage.class);
+        assertThat(responseEntity.getCode()).isEqualTo(500);
+        assertThat(responseEntity.getMessage()).contains("There was an error processing your request. It has been logged (ID");
+    }
+
+    @Test
+    public void shouldReturn503IfTheExecutorQueueIsFull() {
+        CryptoExecutor fullCryptoExecutor = new CryptoExecutor(command -> {
+            throw new RejectedExecutionException();
+        }, Collections.emptyList(), new MetricRegistry());
+        BatchGenerateAuthnRequestResource resource = new BatchGenerateAuthnRequestResource(
+            new AuthnRequestService(authnRequestFactory, HUB_SSO_LOCATION, entityIdService),
+            fullCryptoExecutor,
+            MAX_BATCH_SIZE
+        );
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+
+        resource.generateAuthnRequests(ImmutableList.of(new RequestGenerationBody(LevelOfAssurance.LEVEL_2, null)), asyncResponse);
+
+        ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+        verify(asyncResponse).resume(captor.capture());
+        assertThat(captor.getValue().getStatus()).isEqualTo(Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        assertThat(captor.getValue().getHeaderString(HttpHeaders.RETRY_AFTER)).isNotNull();
+    }
+
+    private static Response post(List<RequestGenerationBody> requestGenerationBodies) {
+        return resources.target("/generate-requests")
+            .request()
+            .post(Entity.entity(requestGenerationBodies, MediaType.APPLICATION_JSON_TYPE));
+    }
+
+    private static AuthnRequest authnRequestWithId(String id) {
+        AuthnRequest authnRequest = new AuthnRequestBuilder().buildObject();
+        authnRequest.setID(id);
+        return authnRequest;
+    }
+}
@@ -0,0 +1,177 @@
+package unit.uk.gov.ida.verifyserviceprovider.resources;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.dropwizard.jersey.errors.ErrorMessage;
+import io.dropwizard.testing.junit.ResourceTestRule;
+import org.apache.http.HttpStatus;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import uk.gov.ida.verifyserviceprovider.dto.MatchingScenario;
+import uk.gov.ida.verifyserviceprovider.dto.TranslateSamlResponseBody;
+import uk.gov.ida.verifyserviceprovider.dto.TranslatedMatchingResponseBody;
+import uk.gov.ida.verifyserviceprovider.exceptions.InvalidEntityIdExceptionMapper;
+import uk.gov.ida.verifyserviceprovider.exceptions.JerseyViolationExceptionMapper;
+import uk.gov.ida.verifyserviceprovider.exceptions.JsonProcessingExceptionMapper;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+import uk.gov.ida.verifyserviceprovider.resources.BatchTranslateSamlResponseResource;
+import uk.gov.ida.verifyserviceprovider.services.EntityIdService;
+import uk.gov.ida.verifyserviceprovider.services.ResponseService;
+import uk.gov.ida.verifyserviceprovider.utils.CryptoExecutor;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.util.Collections.singletonList;
+import static javax.ws.rs.client.Entity.json;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance.LEVEL_2;
+
+public class BatchTranslateSamlResponseResourceTest {
+
+    private static final String DEFAULT_ENTITY_ID = "http://default-entity-id";
+    private static final int MAX_BATCH_SIZE = 3;
+
+    private static final ResponseService responseService = mock(ResponseService.class);
+    private static final EntityIdService entityIdService = mock(EntityIdService.class);
+    private static final ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+    @ClassRule
+    public static final ResourceTestRule resources = ResourceTestRule.builder()
+        .addProvider(JerseyViolationExceptionMapper.class)
+        .addProvider(JsonProcessingExceptionMapper.class)
+        .addProvider(InvalidEntityIdExceptionMapper.class)
+        .addResource(new BatchTranslateSamlResponseResource(
+            responseService,
+            entityIdService,
+            new CryptoExecutor(executorService, Collections.emptyList(), new MetricRegistry()),
+            MAX_BATCH_SIZE
+        ))
+        .build();
+
+    @AfterClass
+    public static void shutDownExecutor() {
+        executorService.shutdown();
+    }
+
+    @Before
+    public void setUp() {
+        reset(responseService, entityIdService);
+        when(entityIdService.getEntityId(any(TranslateSamlResponseBody.class))).thenReturn(DEFAULT_ENTITY_ID);
+    }
+
+    @Test
+    public void shouldReturnAResultForEachResponseInOrder() throws Exception {
+        when(responseService.convertTranslatedResponseBody(eq("good-response"), eq("first-request-id"), eq(LEVEL_2), eq(DEFAULT_ENTITY_ID)))
+            .thenReturn(new TranslatedMatchingResponseBody(MatchingScenario.SUCCESS_MATCH, "first-pid", LEVEL_2, null));
+        when(responseService.convertTranslatedResponseBody(eq("bad-response"), eq("second-request-id"), eq(LEVEL_2), eq(DEFAULT_ENTITY_ID)))
+            .thenThrow(new SamlResponseValidationException("Some error."));
+        when(responseService.convertTranslatedResponseBody(eq("good-response"), eq("third-request-id"), eq(LEVEL_2), eq(DEFAULT_ENTITY_ID)))
+            .thenReturn(new TranslatedMatchingResponseBody(MatchingScenario.NO_MATCH, "third-pid", LEVEL_2, null));
+
+        Response response = post(new JSONArray()
+            .put(translateResponseRequest("good-response", "first-request-id"))
+            .put(translateResponseRequest("bad-response", "second-request-id"))
+            .put(translateResponseRequest("good-response", "third-request-id")));
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        JsonNode results = response.readEntity(JsonNode.class);
+        assertThat(results.size()).isEqualTo(3);
+
+        assertThat(results.get(0).get("requestId").asText()).isEqualTo("first-request-id");
+        assertThat(results.get(0).get("translatedResponse").get("scenario").asText()).isEqualTo(MatchingScenario.SUCCESS_MATCH.name());
+        assertThat(results.get(0).has("error")).isFalse();
+
+        assertThat(results.get(1).get("requestId").asText()).isEqualTo("second-request-id");
+        assertThat(results.get(1).has("translatedResponse")).isFalse();
+        assertThat(results.get(1).get("error").get("code").asInt()).isEqualTo(BAD_REQUEST.getStatusCode());
+        assertThat(results.get(1).get("error").get("message").asText()).isEqualTo("Some error.");
+
+        assertThat(results.get(2).get("requestId").asText()).isEqualTo("third-request-id");
+        assertThat(results.get(2).get("translatedResponse").get("scenario").asText()).isEqualTo(MatchingScenario.NO_MATCH.name());
+    }
+
+    @Test
+    public void shouldReturnAnInternalServerErrorForTheItemThatFailedUnexpectedly() throws Exception {
+        when(responseService.convertTranslatedResponseBody(any(), eq("some-request-id"), eq(LEVEL_2), eq(DEFAULT_ENTITY_ID)))
+            .thenThrow(new RuntimeException("unexpected"));
+
+        Response response = post(new JSONArray().put(translateResponseRequest("some-response", "some-request-id")));
+
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        JsonNode error = response.readEntity(JsonNode.class).get(0).get("error");
+        assertThat(error.get("code").asInt()).isEqualTo(INTERNAL_SERVER_ERROR.getStatusCode());
+        assertThat(error.get("message").asText()).contains("There was an error processing your request. It has been logged (ID");
+    }
+
+    @Test
+    public void shouldReturn422IfTheBatchIsTooLarge() throws Exception {
+        JSONArray batch = new JSONArray();
+        for (int i = 0; i <= MAX_BATCH_SIZE; i++) {
+            batch.put(translateResponseRequest("some-response", "request-id-" + i));
+        }
+
+        Response response = post(batch);
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.SC_UNPROCESSABLE_ENTITY);
+        assertThat(response.readEntity(ErrorMessage.class))
+            .isEqualTo(new ErrorMessage(HttpStatus.SC_UNPROCESSABLE_ENTITY, "may not contain more than 3 responses"));
+    }
+
+    @Test
+    public void shouldReturn422IfAnyItemIsMissingMandatoryFields() throws Exception {
+        Response response = post(new JSONArray()
+            .put(translateResponseRequest("some-response", "some-request-id"))
+            .put(new JSONObject()));
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.SC_UNPROCESSABLE_ENTITY);
+    }
+
+    @Test
+    public void shouldReturn503IfTheExecutorQueueIsFull() {
+        CryptoExecutor fullCryptoExecutor = new CryptoExecutor(command -> {
+            throw new RejectedExecutionException();
+        }, Collections.emptyList(), new MetricRegistry());
+        BatchTranslateSamlResponseResource resource = new BatchTranslateSamlResponseResource(responseService, entityIdService, fullCryptoExecutor, MAX_BATCH_SIZE);
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+
+        resource.translateResponses(singletonList(new TranslateSamlResponseBody("some-response", "some-request-id", LEVEL_2, null)), asyncResponse);
+
+        ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+        verify(asyncResponse).resume(captor.capture());
+        assertThat(captor.getValue().getStatus()).isEqualTo(Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        assertThat(captor.getValue().getHeaderString(HttpHeaders.RETRY_AFTER)).isNotNull();
+    }
+
+    private static Response post(JSONArray batch) {
+        return resources.client()
+            .target("/translate-responses")
+            .request()
+            .post(json(batch.toString()));
+    }
+
+    private static JSONObject translateResponseRequest(String samlResponse, String requestId) throws Exception {
+        return new JSONObject()
+            .put("samlResponse", samlResponse)
+            .put("requestId", requestId)
+            .put("levelOfAssurance", LEVEL_2.name());
+    }
+}
@@ -0,0 +1,236 @@
+package unit.uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.criterion.ProtocolCriterion;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
+import org.opensaml.security.credential.BasicCredential;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialContext;
+import org.opensaml.security.credential.CredentialResolver;
+import org.opensaml.security.credential.UsageType;
+import org.opensaml.security.criteria.KeyAlgorithmCriterion;
+import org.opensaml.security.criteria.UsageCriterion;
+import org.opensaml.security.x509.X509Credential;
+import org.opensaml.security.x509.X509DigestCriterion;
+import org.opensaml.xmlsec.config.DefaultSecurityConfigurationBootstrap;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.Signer;
+import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.verifyserviceprovider.saml.CachingCredentialResolver;
+
+import javax.xml.namespace.QName;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingCredentialResolverTest {
+
+    private final CredentialResolver delegate = mock(CredentialResolver.class);
+    private final Credential credential = mock(Credential.class);
+    private final AtomicReference<Object> metadataGeneration = new AtomicReference<>("first");
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private CachingCredentialResolver credentialResolver;
+
+    private static KeyPair signingKeyPair;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        IdaSamlBootstrap.bootstrap();
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        signingKeyPair = keyPairGenerator.generateKeyPair();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        when(delegate.resolve(any())).thenReturn(singletonList(credential));
+        credentialResolver = new CachingCredentialResolver(delegate, metadataGeneration::get, metricRegistry, "hub");
+    }
+
+    @Test
+    public void shouldOnlyResolveCredentialsOnceForTheSameEntityAndRole() throws Exception {
+        assertThat(credentialResolver.resolve(criteria("entity", SPSSODescriptor.DEFAULT_ELEMENT_NAME))).containsExactly(credential);
+        assertThat(credentialResolver.resolve(criteria("entity", SPSSODescriptor.DEFAULT_ELEMENT_NAME))).containsExactly(credential);
+
+        verify(delegate, times(1)).resolve(any());
+        assertThat(metricRegistry.meter("credential-cache.hub.hits").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.meter("credential-cache.hub.misses").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCacheEachEntityAndRoleSeparately() throws Exception {
+        credentialResolver.resolve(criteria("entity", SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        credentialResolver.resolve(criteria("entity", IDPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        credentialResolver.resolve(criteria("other-entity", SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+
+        verify(delegate, times(3)).resolve(any());
+    }
+
+    @Test
+    public void shouldResolveAgainAfterTheMetadataIsRefreshed() throws Exception {
+        credentialResolver.resolve(criteria("entity", SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        metadataGeneration.set("second");
+        credentialResolver.resolve(criteria("entity", SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+
+        verify(delegate, times(2)).resolve(any());
+        assertThat(metricRegistry.meter("credential-cache.hub.invalidations").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotCacheLookupsWithOtherCriteria() throws Exception {
+        CriteriaSet criteria = criteria("entity", SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        criteria.add(new X509DigestCriterion("SHA-256", new byte[]{1, 2, 3}));
+
+        credentialResolver.resolve(criteria);
+        credentialResolver.resolve(criteria);
+
+        verify(delegate, times(2)).resolve(any());
+    }
+
+    @Test
+    public void shouldCacheX509CredentialsWithoutTheirMetadataContext() throws Exception {
+        X509Certificate certificate = mock(X509Certificate.class);
+        X509Credential metadataCredential = mock(X509Credential.class);
+        when(metadataCredential.getEntityCertificate()).thenReturn(certificate);
+        when(metadataCredential.getEntityCertificateChain()).thenReturn(singletonList(certificate));
+        when(metadataCredential.getEntityId()).thenReturn("entity");
+        when(metadataCredential.getUsageType()).thenReturn(UsageType.SIGNING);
+        when(delegate.resolve(any())).thenReturn(singletonList(metadataCredential));
+
+        Credential cached = credentialResolver.resolveSingle(criteria("entity", SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+
+        assertThat(cached).isInstanceOf(X509Credential.class);
+        assertThat(((X509Credential) cached).getEntityCertificate()).isSameAs(certificate);
+        assertThat(cached.getEntityId()).isEqualTo("entity");
+        assertThat(cached.getUsageType()).isEqualTo(UsageType.SIGNING);
+        assertThat(cached.getCredentialContextSet().isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldCacheKeyValueCredentialsWithoutTheirMetadataContext() throws Exception {
+        PublicKey publicKey = mock(PublicKey.class);
+        Credential metadataCredential = mock(Credential.class);
+        when(metadataCredential.getPublicKey()).thenReturn(publicKey);
+        when(metadataCredential.getEntityId()).thenReturn("entity");
+        when(metadataCredential.getUsageType()).thenReturn(UsageType.SIGNING);
+        when(metadataCredential.getKeyNames()).thenReturn(singleton("signing-key"));
+        when(delegate.resolve(any())).thenReturn(singletonList(metadataCredential));
+
+        Credential cached = credentialResolver.resolveSingle(criteria("entity", SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+
+        assertThat(cached).isNotSameAs(metadataCredential);
+        assertThat(cached.getPublicKey()).isSameAs(publicKey);
+        assertThat(cached.getEntityId()).isEqualTo("entity");
+        assertThat(cached.getUsageType()).isEqualTo(UsageType.SIGNING);
+        assertThat(cached.getKeyNames()).containsExactly("signing-key");
+        assertThat(cached.getCredentialContextSet().isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldOnlyResolveCredentialsOnceWhenValidatingThroughTheTrustEngine() throws Exception {
+        when(delegate.resolve(any())).thenReturn(singletonList(new BasicCredential(signingKeyPair.getPublic())));
+        ExplicitKeySignatureTrustEngine trustEngine = CachingCredentialResolver.cachingSignatureTrustEngine(
+                new ExplicitKeySignatureTrustEngine(delegate, DefaultSecurityConfigurationBootstrap.buildBasicInlineKeyInfoCredentialResolver()),
+                mock(MetadataResolver.class),
+                metricRegistry,
+                "hub"
+        );
+        Assertion assertion = aSignedAssertion();
+
+        assertThat(trustEngine.validate(assertion.getSignature(), trustBasis("entity", SPSSODescriptor.DEFAULT_ELEMENT_NAME))).isTrue();
+        assertThat(trustEngine.validate(assertion.getSignature(), trustBasis("entity", SPSSODescriptor.DEFAULT_ELEMENT_NAME))).isTrue();
+
+        verify(delegate, times(1)).resolve(any());
+        assertThat(metricRegistry.meter("credential-cache.hub.hits").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.meter("credential-cache.hub.uncacheable").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldValidateThroughTheTrustEngineWithDetachedCopiesOfTheCredentials() throws Exception {
+        BasicCredential metadataCredential = new BasicCredential(signingKeyPair.getPublic());
+        metadataCredential.setEntityId("entity");
+        metadataCredential.getCredentialContextSet().add(mock(CredentialContext.class));
+        when(delegate.resolve(any())).thenReturn(singletonList(metadataCredential));
+        ExplicitKeySignatureTrustEngine trustEngine = CachingCredentialResolver.cachingSignatureTrustEngine(
+                new ExplicitKeySignatureTrustEngine(delegate, DefaultSecurityConfigurationBootstrap.buildBasicInlineKeyInfoCredentialResolver()),
+                mock(MetadataResolver.class),
+                metricRegistry,
+                "hub"
+        );
+        Assertion assertion = aSignedAssertion();
+
+        assertThat(trustEngine.validate(assertion.getSignature(), trustBasis("entity", SPSSODescriptor.DEFAULT_ELEMENT_NAME))).isTrue();
+        assertThat(trustEngine.validate(assertion.getSignature(), trustBasis("entity", SPSSODescriptor.DEFAULT_ELEMENT_NAME))).isTrue();
+
+        // the criteria the trust engine resolved its credentials with, so this is a hit on what it validated against
+        CriteriaSet trustEngineCriteria = trustBasis("entity", SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        trustEngineCriteria.add(new UsageCriterion(UsageType.SIGNING));
+        trustEngineCriteria.add(new KeyAlgorithmCriterion("RSA"));
+        Credential validatedWith = trustEngine.getCredentialResolver().resolveSingle(trustEngineCriteria);
+
+        verify(delegate, times(1)).resolve(any());
+        assertThat(metricRegistry.meter("credential-cache.hub.hits").getCount()).isEqualTo(2);
+        assertThat(validatedWith).isNotSameAs(metadataCredential);
+        assertThat(validatedWith.getPublicKey()).isEqualTo(signingKeyPair.getPublic());
+        assertThat(validatedWith.getEntityId()).isEqualTo("entity");
+        assertThat(validatedWith.getCredentialContextSet().isEmpty()).isTrue();
+    }
+
+    private static Assertion aSignedAssertion() throws Exception {
+        Assertion assertion = (Assertion) XMLObjectProviderRegistrySupport.getBuilderFactory()
+                .getBuilder(Assertion.DEFAULT_ELEMENT_NAME)
+                .buildObject(Assertion.DEFAULT_ELEMENT_NAME);
+        assertion.setID("assertion-id");
+        Signature signature = (Signature) XMLObjectProviderRegistrySupport.getBuilderFactory()
+                .getBuilder(Signature.DEFAULT_ELEMENT_NAME)
+                .buildObject(Signature.DEFAULT_ELEMENT_NAME);
+        signature.setSigningCredential(new BasicCredential(signingKeyPair.getPublic(), signingKeyPair.getPrivate()));
+        signature.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        signature.setCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        assertion.setSignature(signature);
+        XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshaller(assertion).marshall(assertion);
+        Signer.signObject(signature);
+        return assertion;
+    }
+
+    private static CriteriaSet trustBasis(String entityId, QName role) {
+        // what saml-libs' MetadataBackedSignatureValidator passes; the trust engine adds the usage and key algorithm
+        return new CriteriaSet(
+                new EntityIdCriterion(entityId),
+                new EntityRoleCriterion(role),
+                new ProtocolCriterion(SAMLConstants.SAML20P_NS)
+        );
+    }
+
+    private static CriteriaSet criteria(String entityId, QName role) {
+        return new CriteriaSet(
+                new EntityIdCriterion(entityId),
+                new EntityRoleCriterion(role),
+                new UsageCriterion(UsageType.SIGNING)
+        );
+    }
+}
@@ -0,0 +1,104 @@
+package unit.uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.saml.security.SamlAssertionsSignatureValidator;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+import uk.gov.ida.verifyserviceprovider.factories.saml.SignatureValidatorFactory;
+import uk.gov.ida.verifyserviceprovider.saml.CountrySignatureValidators;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static uk.gov.ida.saml.core.test.builders.AssertionBuilder.anAssertion;
+import static uk.gov.ida.saml.core.test.builders.IssuerBuilder.anIssuer;
+
+public class CountrySignatureValidatorsTest {
+
+    private static final String COUNTRY_ONE = "country-one";
+    private static final String COUNTRY_TWO = "country-two";
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private final Map<String, ExplicitKeySignatureTrustEngine> trustEngines = new HashMap<>();
+    private final SignatureValidatorFactory signatureValidatorFactory = mock(SignatureValidatorFactory.class);
+    private final SamlAssertionsSignatureValidator signatureValidator = mock(SamlAssertionsSignatureValidator.class);
+    private final AtomicLong trustAnchorGeneration = new AtomicLong();
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private CountrySignatureValidators countrySignatureValidators;
+
+    @Before
+    public void setUp() {
+        IdaSamlBootstrap.bootstrap();
+        trustEngines.put(COUNTRY_ONE, mock(ExplicitKeySignatureTrustEngine.class));
+        trustEngines.put(COUNTRY_TWO, mock(ExplicitKeySignatureTrustEngine.class));
+        when(signatureValidatorFactory.getSignatureValidator(any())).thenReturn(Optional.of(signatureValidator));
+        countrySignatureValidators = new CountrySignatureValidators(
+                entityId -> Optional.ofNullable(trustEngines.get(entityId)),
+                signatureValidatorFactory,
+                trustAnchorGeneration::get,
+                metricRegistry
+        );
+    }
+
+    @Test
+    public void shouldBuildOneValidatorPerCountry() {
+        countrySignatureValidators.validate(anAssertionFrom(COUNTRY_ONE));
+        countrySignatureValidators.validate(anAssertionFrom(COUNTRY_ONE));
+        countrySignatureValidators.validate(anAssertionFrom(COUNTRY_TWO));
+
+        verify(signatureValidatorFactory, times(2)).getSignatureValidator(any());
+        verify(signatureValidator, times(3)).validate(any(), any());
+        assertThat(metricRegistry.getGauges().get("eidas-signature-validators.size").getValue()).isEqualTo(2);
+        assertThat(metricRegistry.timer(MetricRegistry.name("eidas-signature-validators", COUNTRY_ONE, "validation")).getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldRebuildTheValidatorWhenTheCountrysMetadataResolverIsReplaced() {
+        countrySignatureValidators.validate(anAssertionFrom(COUNTRY_ONE));
+
+        trustEngines.put(COUNTRY_ONE, mock(ExplicitKeySignatureTrustEngine.class));
+        countrySignatureValidators.validate(anAssertionFrom(COUNTRY_ONE));
+
+        verify(signatureValidatorFactory, times(2)).getSignatureValidator(any());
+    }
+
+    @Test
+    public void shouldDropAllValidatorsWhenTheTrustAnchorIsRefreshed() {
+        countrySignatureValidators.validate(anAssertionFrom(COUNTRY_ONE));
+        countrySignatureValidators.validate(anAssertionFrom(COUNTRY_TWO));
+
+        trustAnchorGeneration.incrementAndGet();
+        countrySignatureValidators.validate(anAssertionFrom(COUNTRY_ONE));
+
+        verify(signatureValidatorFactory, times(3)).getSignatureValidator(any());
+        assertThat(metricRegistry.getGauges().get("eidas-signature-validators.size").getValue()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldThrowForACountryWithoutMetadata() {
+        expectedException.expect(SamlResponseValidationException.class);
+        expectedException.expectMessage("Unable to find metadata resolver for entity Id unknown-country");
+
+        countrySignatureValidators.validate(anAssertionFrom("unknown-country"));
+    }
+
+    private static Assertion anAssertionFrom(String entityId) {
+        return anAssertion().withIssuer(anIssuer().withIssuerId(entityId).build()).buildUnencrypted();
+    }
+}
@@ -0,0 +1,81 @@
+package unit.uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.util.Duration;
+import org.junit.After;
+import org.junit.Test;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryIssuers;
+import uk.gov.ida.verifyserviceprovider.saml.MetadataRefreshScheduler;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EidasCountryIssuersTest {
+
+    private final AtomicReference<List<String>> countryEntityIds = new AtomicReference<>(asList("country-one"));
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final EidasCountryIssuers countryIssuers = new EidasCountryIssuers(countryEntityIds::get, metricRegistry);
+    private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    private final MetadataRefreshScheduler refreshScheduler = new MetadataRefreshScheduler(executorService, Duration.milliseconds(0), metricRegistry);
+
+    @After
+    public void tearDown() {
+        refreshScheduler.cancel();
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void shouldOnlyChangeTheCountriesWhenRefreshed() {
+        countryIssuers.refresh();
+        Set<String> firstSnapshot = countryIssuers.getEntityIds();
+
+        countryEntityIds.set(asList("country-one", "country-two"));
+        assertThat(countryIssuers.isCountryIssuer("country-two")).isFalse();
+
+        countryIssuers.refresh();
+        assertThat(countryIssuers.isCountryIssuer("country-two")).isTrue();
+        assertThat(firstSnapshot).containsExactly("country-one");
+    }
+
+    @Test
+    public void shouldReportTheGenerationOfTheSnapshot() {
+        countryIssuers.refresh();
+        countryIssuers.refresh();
+
+        assertThat(countryIssuers.getGeneration()).isEqualTo(2);
+        assertThat(metricRegistry.getGauges().get("eidas-country-issuers.generation").getValue()).isEqualTo(2L);
+        assertThat(metricRegistry.getGauges().get("eidas-country-issuers.size").getValue()).isEqualTo(1);
+        assertThat(metricRegistry.getGauges()).containsKey("eidas-country-issuers.age-ms");
+    }
+
+    @Test
+    public void shouldKeepThePreviousSnapshotIfTheCountriesCannotBeRead() {
+        countryIssuers.refresh();
+        countryEntityIds.set(null);
+
+        countryIssuers.refresh();
+
+        assertThat(countryIssuers.isCountryIssuer("country-one")).isTrue();
+        assertThat(countryIssuers.getGeneration()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRefreshAfterEachScheduledRefreshHasRun() throws Exception {
+        CountDownLatch refreshed = new CountDownLatch(1);
+        refreshScheduler.addRefreshListener(countryIssuers::refresh);
+        refreshScheduler.addRefreshListener(refreshed::countDown);
+
+        refreshScheduler.schedule(() -> countryEntityIds.set(asList("country-two")), 0, TimeUnit.MILLISECONDS);
+
+        assertThat(refreshed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(countryIssuers.getEntityIds()).containsExactly("country-two");
+    }
+}
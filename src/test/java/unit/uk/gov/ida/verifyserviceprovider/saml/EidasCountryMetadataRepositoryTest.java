@@ -0,0 +1,168 @@
+package unit.uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.RSAKey;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensaml.security.credential.CredentialResolver;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
+import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
+import uk.gov.ida.saml.metadata.EidasTrustAnchorResolver;
+import uk.gov.ida.saml.metadata.factories.MetadataSignatureTrustEngineFactory;
+import uk.gov.ida.verifyserviceprovider.saml.CachingCredentialResolver;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryMetadataRepository;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryMetadataResolver;
+
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EidasCountryMetadataRepositoryTest {
+
+    private static final String COUNTRY_ONE = "country-one";
+    private static final String COUNTRY_TWO = "country-two";
+
+    private final EidasTrustAnchorResolver trustAnchorResolver = mock(EidasTrustAnchorResolver.class);
+    private final MetadataSignatureTrustEngineFactory signatureTrustEngineFactory = mock(MetadataSignatureTrustEngineFactory.class);
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final Map<String, Integer> resolversCreated = new HashMap<>();
+    private EidasCountryMetadataRepository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        when(signatureTrustEngineFactory.createSignatureTrustEngine(any())).thenAnswer(invocation -> {
+            ExplicitKeySignatureTrustEngine signatureTrustEngine = mock(ExplicitKeySignatureTrustEngine.class);
+            when(signatureTrustEngine.getCredentialResolver()).thenReturn(mock(CredentialResolver.class));
+            when(signatureTrustEngine.getKeyInfoResolver()).thenReturn(mock(KeyInfoCredentialResolver.class));
+            return signatureTrustEngine;
+        });
+        repository = new EidasCountryMetadataRepository(
+                trustAnchorResolver,
+                (trustAnchor, refreshTrigger) -> {
+                    resolversCreated.merge(trustAnchor.getKeyID(), 1, Integer::sum);
+                    return mock(EidasCountryMetadataResolver.class);
+                },
+                signatureTrustEngineFactory,
+                metricRegistry
+        );
+    }
+
+    @Test
+    public void shouldCreateAResolverAndTrustEngineForEachCountry() throws Exception {
+        when(trustAnchorResolver.getTrustAnchors()).thenReturn(asList(trustAnchor(COUNTRY_ONE), trustAnchor(COUNTRY_TWO)));
+
+        repository.refreshTrustAnchors();
+
+        assertThat(repository.getResolverEntityIds()).containsExactly(COUNTRY_ONE, COUNTRY_TWO);
+        assertThat(repository.getMetadataResolver(COUNTRY_ONE)).isPresent();
+        assertThat(repository.getSignatureTrustEngine(COUNTRY_TWO)).isPresent();
+        assertThat(repository.getMetadataResolver("unknown")).isEmpty();
+    }
+
+    @Test
+    public void shouldCacheTheCredentialsOfEachCountrysTrustEngine() throws Exception {
+        when(trustAnchorResolver.getTrustAnchors()).thenReturn(singletonList(trustAnchor(COUNTRY_ONE)));
+
+        repository.refreshTrustAnchors();
+
+        assertThat(repository.getSignatureTrustEngine(COUNTRY_ONE).get().getCredentialResolver()).isInstanceOf(CachingCredentialResolver.class);
+        assertThat(metricRegistry.getMeters()).containsKey("credential-cache.eidas." + COUNTRY_ONE + ".hits");
+    }
+
+    @Test
+    public void shouldKeepTheResolverOfACountryWhoseTrustAnchorHasNotChanged() throws Exception {
+        JWK countryOne = trustAnchor(COUNTRY_ONE);
+        when(trustAnchorResolver.getTrustAnchors()).thenReturn(singletonList(countryOne));
+        repository.refreshTrustAnchors();
+        EidasCountryMetadataResolver resolver = repository.getCountryMetadataResolver(COUNTRY_ONE).get();
+
+        repository.refreshTrustAnchors();
+
+        assertThat(repository.getCountryMetadataResolver(COUNTRY_ONE)).containsSame(resolver);
+        assertThat(resolversCreated.get(COUNTRY_ONE)).isEqualTo(1);
+        verify(resolver, never()).destroy();
+    }
+
+    @Test
+    public void shouldReplaceAndDestroyTheResolverOfACountryWhoseTrustAnchorHasChanged() throws Exception {
+        when(trustAnchorResolver.getTrustAnchors()).thenReturn(singletonList(trustAnchor(COUNTRY_ONE)));
+        repository.refreshTrustAnchors();
+        EidasCountryMetadataResolver resolver = repository.getCountryMetadataResolver(COUNTRY_ONE).get();
+
+        when(trustAnchorResolver.getTrustAnchors()).thenReturn(singletonList(trustAnchor(COUNTRY_ONE)));
+        repository.refreshTrustAnchors();
+
+        assertThat(repository.getCountryMetadataResolver(COUNTRY_ONE).get()).isNotSameAs(resolver);
+        verify(resolver).destroy();
+    }
+
+    @Test
+    public void shouldDropAndDestroyTheResolverOfACountryThatLeavesTheTrustAnchor() throws Exception {
+        when(trustAnchorResolver.getTrustAnchors()).thenReturn(asList(trustAnchor(COUNTRY_ONE), trustAnchor(COUNTRY_TWO)));
+        repository.refreshTrustAnchors();
+        EidasCountryMetadataResolver resolver = repository.getCountryMetadataResolver(COUNTRY_TWO).get();
+
+        when(trustAnchorResolver.getTrustAnchors()).thenReturn(singletonList(trustAnchor(COUNTRY_ONE)));
+        repository.refreshTrustAnchors();
+
+        assertThat(repository.getResolverEntityIds()).containsExactly(COUNTRY_ONE);
+        verify(resolver).destroy();
+    }
+
+    @Test
+    public void shouldKeepTheOldResolverIfItsReplacementCannotBeCreated() throws Exception {
+        when(trustAnchorResolver.getTrustAnchors()).thenReturn(singletonList(trustAnchor(COUNTRY_ONE)));
+        repository.refreshTrustAnchors();
+        EidasCountryMetadataResolver resolver = repository.getCountryMetadataResolver(COUNTRY_ONE).get();
+
+        when(signatureTrustEngineFactory.createSignatureTrustEngine(any())).thenThrow(new RuntimeException("invalid trust anchor"));
+        when(trustAnchorResolver.getTrustAnchors()).thenReturn(singletonList(trustAnchor(COUNTRY_ONE)));
+        repository.refreshTrustAnchors();
+
+        assertThat(repository.getCountryMetadataResolver(COUNTRY_ONE)).containsSame(resolver);
+        verify(resolver, never()).destroy();
+    }
+
+    @Test
+    public void shouldKeepTheCountriesIfTheTrustAnchorCannotBeFetched() throws Exception {
+        when(trustAnchorResolver.getTrustAnchors()).thenReturn(singletonList(trustAnchor(COUNTRY_ONE)));
+        repository.refreshTrustAnchors();
+
+        when(trustAnchorResolver.getTrustAnchors()).thenThrow(new RuntimeException("trust anchor unavailable"));
+
+        assertThatThrownBy(repository::refreshTrustAnchors).isInstanceOf(IllegalStateException.class);
+        assertThat(repository.getResolverEntityIds()).containsExactly(COUNTRY_ONE);
+    }
+
+    @Test
+    public void shouldDestroyEveryResolverWhenClosed() throws Exception {
+        when(trustAnchorResolver.getTrustAnchors()).thenReturn(singletonList(trustAnchor(COUNTRY_ONE)));
+        repository.refreshTrustAnchors();
+        EidasCountryMetadataResolver resolver = repository.getCountryMetadataResolver(COUNTRY_ONE).get();
+
+        repository.close();
+
+        verify(resolver).destroy();
+        assertThat(repository.getResolverEntityIds()).isEmpty();
+    }
+
+    private static JWK trustAnchor(String entityId) throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(1024);
+        return new RSAKey.Builder((RSAPublicKey) keyPairGenerator.generateKeyPair().getPublic())
+                .keyID(entityId)
+                .build();
+    }
+}
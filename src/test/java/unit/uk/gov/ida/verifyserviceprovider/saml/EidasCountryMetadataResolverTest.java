@@ -0,0 +1,211 @@
+package unit.uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.util.Duration;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryMetadataResolver;
+import uk.gov.ida.verifyserviceprovider.saml.InstrumentedParserPool;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EidasCountryMetadataResolverTest {
+
+    private static final String COUNTRY = "https://country.example.com/metadata";
+    private static final URI METADATA_URI = URI.create(COUNTRY);
+    private static final String METADATA = "<md:EntityDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\" entityID=\"" + COUNTRY + "\">"
+            + "<md:IDPSSODescriptor protocolSupportEnumeration=\"urn:oasis:names:tc:SAML:2.0:protocol\">"
+            + "<md:SingleSignOnService Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST\" Location=\"https://country.example.com/sso\"/>"
+            + "</md:IDPSSODescriptor>"
+            + "</md:EntityDescriptor>";
+
+    private final Client client = mock(Client.class);
+    private final WebTarget webTarget = mock(WebTarget.class);
+    private final Invocation.Builder request = mock(Invocation.Builder.class);
+    private final Response response = mock(Response.class);
+    private final MetadataFilter metadataFilter = mock(MetadataFilter.class);
+    private final List<Runnable> refreshPool = new ArrayList<>();
+    private final Timer refreshTrigger = new Timer(true);
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private EidasCountryMetadataResolver metadataResolver;
+
+    @BeforeClass
+    public static void bootstrap() {
+        IdaSamlBootstrap.bootstrap();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        when(client.target(METADATA_URI)).thenReturn(webTarget);
+        when(webTarget.request()).thenReturn(request);
+        when(request.get()).thenReturn(response);
+        when(response.getStatus()).thenReturn(200);
+        when(response.readEntity(byte[].class)).thenReturn(METADATA.getBytes(StandardCharsets.UTF_8));
+        when(metadataFilter.filter(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        metadataResolver = new EidasCountryMetadataResolver(
+                COUNTRY,
+                METADATA_URI,
+                client,
+                refreshTrigger,
+                refreshPool::add,
+                Duration.milliseconds(0),
+                metricRegistry
+        );
+        metadataResolver.setId("eidas-country-metadata.test");
+        metadataResolver.setParserPool(new InstrumentedParserPool("test", 1, metricRegistry));
+        metadataResolver.setMetadataFilter(metadataFilter);
+        metadataResolver.setFailFastInitialization(false);
+        metadataResolver.initialize();
+    }
+
+    @After
+    public void tearDown() {
+        metadataResolver.destroy();
+        refreshTrigger.cancel();
+    }
+
+    @Test
+    public void shouldFetchTheMetadataOnTheRefreshPoolRatherThanWhileInitializing() throws Exception {
+        verify(request, never()).get();
+        assertThat(refreshPool).hasSize(1);
+        assertThat(metadataResolver.hasLoaded()).isFalse();
+
+        refreshPool.remove(0).run();
+
+        assertThat(metadataResolver.hasLoaded()).isTrue();
+        assertThat(metadataResolver.getLastFailure()).isEmpty();
+        assertThat(metadataResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(COUNTRY)))).isNotNull();
+        verify(response).close();
+    }
+
+    @Test
+    public void shouldRecordTheDurationOfEachRefreshForTheCountry() {
+        refreshPool.remove(0).run();
+
+        assertThat(metricRegistry.timer("eidas-metadata-refresh." + COUNTRY + ".duration").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.meter("eidas-metadata-refresh." + COUNTRY + ".failures").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRecordAFailedRefreshAndWhyItFailed() {
+        when(response.getStatus()).thenReturn(500);
+        refreshPool.clear();
+
+        CompletableFuture<Void> refreshed = metadataResolver.refreshAsync();
+        refreshPool.remove(0).run();
+
+        assertThat(refreshed).isCompletedExceptionally();
+        assertThat(metadataResolver.hasLoaded()).isFalse();
+        assertThat(metadataResolver.getLastFailure()).isPresent();
+        assertThat(metricRegistry.meter("eidas-metadata-refresh." + COUNTRY + ".failures").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldSkipARefreshThatFetchesTheDocumentAlreadyApplied() throws Exception {
+        refreshPool.remove(0).run();
+
+        metadataResolver.refreshAsync();
+        refreshPool.remove(0).run();
+
+        verify(metadataFilter, times(1)).filter(any());
+        assertThat(metadataResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(COUNTRY)))).isNotNull();
+        assertThat(metricRegistry.meter("eidas-metadata-refresh." + COUNTRY + ".applied").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.meter("eidas-metadata-refresh." + COUNTRY + ".skipped").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldMakeRepeatFetchesConditionalAndSkipARefreshTheServerSaysIsNotModified() throws Exception {
+        when(response.getHeaderString(HttpHeaders.ETAG)).thenReturn("\"v1\"");
+        when(response.getHeaderString(HttpHeaders.LAST_MODIFIED)).thenReturn("Wed, 21 Oct 2026 07:28:00 GMT");
+        refreshPool.remove(0).run();
+        verify(request, never()).header(any(), any());
+
+        when(response.getStatus()).thenReturn(304);
+        metadataResolver.refreshAsync();
+        refreshPool.remove(0).run();
+
+        verify(request).header(HttpHeaders.IF_NONE_MATCH, "\"v1\"");
+        verify(request).header(HttpHeaders.IF_MODIFIED_SINCE, "Wed, 21 Oct 2026 07:28:00 GMT");
+        verify(metadataFilter, times(1)).filter(any());
+        assertThat(metadataResolver.getLastFailure()).isEmpty();
+        assertThat(metricRegistry.meter("eidas-metadata-refresh." + COUNTRY + ".skipped").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldApplyADocumentThatHasChanged() throws Exception {
+        refreshPool.remove(0).run();
+
+        when(response.readEntity(byte[].class)).thenReturn(METADATA.replace("/sso", "/sso/v2").getBytes(StandardCharsets.UTF_8));
+        metadataResolver.refreshAsync();
+        refreshPool.remove(0).run();
+
+        verify(metadataFilter, times(2)).filter(any());
+        assertThat(metricRegistry.meter("eidas-metadata-refresh." + COUNTRY + ".applied").getCount()).isEqualTo(2);
+        assertThat(metricRegistry.meter("eidas-metadata-refresh." + COUNTRY + ".skipped").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotTreatANotModifiedAnswerAsUnchangedBeforeAnyDocumentHasBeenApplied() {
+        when(response.getStatus()).thenReturn(304);
+
+        refreshPool.remove(0).run();
+
+        assertThat(metadataResolver.hasLoaded()).isFalse();
+        assertThat(metadataResolver.getLastFailure()).isPresent();
+        assertThat(metricRegistry.meter("eidas-metadata-refresh." + COUNTRY + ".skipped").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotFetchTheMetadataOnceDestroyed() throws Exception {
+        metadataResolver.destroy();
+
+        refreshPool.remove(0).run();
+
+        verify(request, never()).get();
+        assertThat(metricRegistry.meter("eidas-metadata-refresh." + COUNTRY + ".failures").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldFailTheRefreshIfTheRefreshPoolRejectsIt() {
+        EidasCountryMetadataResolver rejectingResolver = new EidasCountryMetadataResolver(
+                COUNTRY,
+                METADATA_URI,
+                client,
+                refreshTrigger,
+                runnable -> {
+                    throw new RejectedExecutionException();
+                },
+                Duration.milliseconds(0),
+                metricRegistry
+        );
+
+        assertThat(rejectingResolver.refreshAsync()).isCompletedExceptionally();
+        verify(request, never()).get();
+    }
+}
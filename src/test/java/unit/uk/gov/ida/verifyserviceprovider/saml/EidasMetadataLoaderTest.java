@@ -0,0 +1,277 @@
+package unit.uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheck;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import io.dropwizard.util.Duration;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryMetadataRepository;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryMetadataResolver;
+import uk.gov.ida.verifyserviceprovider.saml.EidasMetadataLoader;
+import uk.gov.ida.verifyserviceprovider.saml.MetadataRefreshScheduler;
+
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EidasMetadataLoaderTest {
+
+    private static final String COUNTRY_ONE = "country-one";
+    private static final String COUNTRY_TWO = "country-two";
+
+    private final EidasCountryMetadataRepository repository = mock(EidasCountryMetadataRepository.class);
+    private final EidasCountryMetadataResolver countryOneResolver = mock(EidasCountryMetadataResolver.class);
+    private final EidasCountryMetadataResolver countryTwoResolver = mock(EidasCountryMetadataResolver.class);
+    private final ScheduledExecutorService executorService = mock(ScheduledExecutorService.class);
+    private final HealthCheckRegistry healthChecks = new HealthCheckRegistry();
+    private EidasMetadataLoader loader;
+
+    @Before
+    public void setUp() throws Exception {
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(executorService).execute(any());
+        doReturn(mock(ScheduledFuture.class)).when(executorService).scheduleWithFixedDelay(any(), anyLong(), anyLong(), any());
+        when(repository.getResolverEntityIds()).thenReturn(asList(COUNTRY_ONE, COUNTRY_TWO));
+        givenCountry(COUNTRY_ONE, countryOneResolver);
+        givenCountry(COUNTRY_TWO, countryTwoResolver);
+
+        MetadataRefreshScheduler refreshScheduler = new MetadataRefreshScheduler(executorService, Duration.milliseconds(0), new MetricRegistry());
+        loader = new EidasMetadataLoader(
+                repository,
+                refreshScheduler,
+                executorService,
+                Duration.hours(1),
+                Duration.seconds(30),
+                healthChecks
+        );
+    }
+
+    @Test
+    public void shouldBeUnhealthyUntilTheTrustAnchorHasLoaded() {
+        doAnswer(invocation -> null).when(executorService).execute(any());
+
+        loader.start();
+
+        assertThat(loader.get()).isEmpty();
+        assertThat(healthChecks.runHealthCheck("eidas-metadata.trust-anchor").isHealthy()).isFalse();
+    }
+
+    @Test
+    public void shouldLoadEachCountryAndRegisterAHealthCheckForIt() {
+        loader.start();
+
+        verify(repository).refreshTrustAnchors();
+        assertThat(loader.get()).contains(repository);
+        assertThat(healthChecks.runHealthCheck("eidas-metadata.trust-anchor").isHealthy()).isTrue();
+        assertThat(healthChecks.runHealthCheck("eidas-metadata.countries").isHealthy()).isTrue();
+        assertThat(loader.getCountryHealthChecks().runHealthCheck(COUNTRY_ONE).isHealthy()).isTrue();
+        assertThat(loader.getCountryHealthChecks().runHealthCheck(COUNTRY_TWO).isHealthy()).isTrue();
+        verify(executorService, times(2)).schedule(any(Runnable.class), eq(30_000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldRefreshTheTrustAnchorOnTheSchedulerOnceItHasLoaded() {
+        loader.start();
+
+        verify(executorService).scheduleWithFixedDelay(any(), eq(3_600_000L), eq(3_600_000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldReportACountryThatFailedToLoadAsUnhealthyWithoutFailingTheMainHealthCheck() throws Exception {
+        when(countryTwoResolver.hasLoaded()).thenReturn(false);
+        when(countryTwoResolver.getLastFailure()).thenReturn(Optional.of(new ResolverException("metadata unavailable")));
+        when(countryTwoResolver.resolveSingle(any())).thenReturn(null);
+
+        loader.start();
+
+        assertThat(loader.getCountryHealthChecks().runHealthCheck(COUNTRY_ONE).isHealthy()).isTrue();
+        HealthCheck.Result countryTwo = loader.getCountryHealthChecks().runHealthCheck(COUNTRY_TWO);
+        assertThat(countryTwo.isHealthy()).isFalse();
+        assertThat(countryTwo.getMessage()).contains("metadata unavailable");
+        HealthCheck.Result countries = healthChecks.runHealthCheck("eidas-metadata.countries");
+        assertThat(countries.isHealthy()).isTrue();
+        assertThat(countries.getMessage()).contains(COUNTRY_TWO);
+    }
+
+    @Test
+    public void shouldReportACountryThatIsStillLoadingAsUnhealthy() throws Exception {
+        givenStillLoading(countryTwoResolver);
+
+        loader.start();
+
+        HealthCheck.Result countryTwo = loader.getCountryHealthChecks().runHealthCheck(COUNTRY_TWO);
+        assertThat(countryTwo.isHealthy()).isFalse();
+        assertThat(countryTwo.getMessage()).contains("still loading");
+    }
+
+    @Test
+    public void shouldNotBeReadyWhileACountryIsStillLoading() throws Exception {
+        givenStillLoading(countryTwoResolver);
+
+        loader.start();
+
+        HealthCheck.Result countries = healthChecks.runHealthCheck("eidas-metadata.countries");
+        assertThat(countries.isHealthy()).isFalse();
+        assertThat(countries.getMessage()).contains(COUNTRY_TWO).doesNotContain(COUNTRY_ONE);
+    }
+
+    @Test
+    public void shouldBecomeReadyOnceACountryThatIsStillLoadingTimesOut() throws Exception {
+        givenStillLoading(countryTwoResolver);
+        loader.start();
+
+        runLoadTimeouts();
+
+        HealthCheck.Result countryTwo = loader.getCountryHealthChecks().runHealthCheck(COUNTRY_TWO);
+        assertThat(countryTwo.isHealthy()).isFalse();
+        assertThat(countryTwo.getMessage()).contains("has not loaded after 30000ms");
+        HealthCheck.Result countries = healthChecks.runHealthCheck("eidas-metadata.countries");
+        assertThat(countries.isHealthy()).isTrue();
+        assertThat(countries.getMessage()).contains(COUNTRY_TWO);
+    }
+
+    @Test
+    public void shouldNotTimeOutACountryThatLoadedInTime() throws Exception {
+        givenStillLoading(countryTwoResolver);
+        loader.start();
+
+        when(countryTwoResolver.hasLoaded()).thenReturn(true);
+        when(countryTwoResolver.resolveSingle(any())).thenReturn(mock(EntityDescriptor.class));
+        runLoadTimeouts();
+
+        assertThat(loader.getCountryHealthChecks().runHealthCheck(COUNTRY_TWO).isHealthy()).isTrue();
+    }
+
+    @Test
+    public void shouldStayReadyWhenACountryAddedLaterIsStillLoading() throws Exception {
+        loader.start();
+        assertThat(healthChecks.runHealthCheck("eidas-metadata.countries").isHealthy()).isTrue();
+
+        EidasCountryMetadataResolver countryThreeResolver = mock(EidasCountryMetadataResolver.class);
+        givenCountry("country-three", countryThreeResolver);
+        givenStillLoading(countryThreeResolver);
+        when(repository.getResolverEntityIds()).thenReturn(asList(COUNTRY_ONE, COUNTRY_TWO, "country-three"));
+        loader.loadCountries();
+
+        assertThat(healthChecks.runHealthCheck("eidas-metadata.countries").isHealthy()).isTrue();
+        assertThat(loader.getCountryHealthChecks().runHealthCheck("country-three").isHealthy()).isFalse();
+    }
+
+    @Test
+    public void shouldStartANewLoadTimeoutWhenACountrysResolverIsReplaced() {
+        loader.start();
+
+        EidasCountryMetadataResolver replacement = mock(EidasCountryMetadataResolver.class);
+        when(repository.getCountryMetadataResolver(COUNTRY_TWO)).thenReturn(Optional.of(replacement));
+        loader.loadCountries();
+        loader.loadCountries();
+
+        verify(executorService, times(3)).schedule(any(Runnable.class), eq(30_000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldFailTheMainHealthCheckWhenNoCountryIsUsable() {
+        when(repository.getCountryMetadataResolver(COUNTRY_ONE)).thenReturn(Optional.empty());
+        when(repository.getCountryMetadataResolver(COUNTRY_TWO)).thenReturn(Optional.empty());
+
+        loader.start();
+
+        assertThat(healthChecks.runHealthCheck("eidas-metadata.countries").isHealthy()).isFalse();
+    }
+
+    @Test
+    public void shouldReflectTheCurrentResolverOfACountryWhoseTrustAnchorHasChanged() throws Exception {
+        loader.start();
+
+        EidasCountryMetadataResolver replacement = mock(EidasCountryMetadataResolver.class);
+        when(replacement.hasLoaded()).thenReturn(false);
+        when(replacement.resolveSingle(any())).thenReturn(null);
+        when(repository.getCountryMetadataResolver(COUNTRY_TWO)).thenReturn(Optional.of(replacement));
+
+        assertThat(loader.getCountryHealthChecks().runHealthCheck(COUNTRY_TWO).isHealthy()).isFalse();
+    }
+
+    @Test
+    public void shouldRetryTheTrustAnchorIfItCannotBeLoaded() {
+        doThrow(new IllegalStateException("trust anchor unavailable")).when(repository).refreshTrustAnchors();
+
+        loader.start();
+
+        verify(repository).refreshTrustAnchors();
+        assertThat(loader.get()).isEmpty();
+        verify(executorService).schedule(any(Runnable.class), eq(30L), eq(TimeUnit.SECONDS));
+        verify(executorService, never()).scheduleWithFixedDelay(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void shouldRefreshCountriesFromTheNetworkOnceLoadedWhenAskedTo() {
+        loader.refreshCountriesFromNetwork();
+        loader.start();
+        loader.loadCountries();
+
+        verify(countryOneResolver, times(1)).refreshAsync();
+        verify(countryTwoResolver, times(1)).refreshAsync();
+    }
+
+    @Test
+    public void shouldDropTheHealthChecksOfCountriesThatLeaveTheTrustAnchor() {
+        loader.start();
+
+        when(repository.getResolverEntityIds()).thenReturn(singletonList(COUNTRY_ONE));
+        loader.loadCountries();
+
+        assertThat(healthChecks.getNames()).containsOnly("eidas-metadata.trust-anchor", "eidas-metadata.countries");
+        assertThat(loader.getCountryHealthChecks().getNames()).containsOnly(COUNTRY_ONE);
+    }
+
+    @Test
+    public void shouldCloseTheRepositoryWhenStopped() throws Exception {
+        loader.start();
+
+        loader.stop();
+
+        verify(repository).close();
+    }
+
+    private void givenStillLoading(EidasCountryMetadataResolver resolver) throws Exception {
+        when(resolver.hasLoaded()).thenReturn(false);
+        when(resolver.resolveSingle(any())).thenReturn(null);
+    }
+
+    private void runLoadTimeouts() {
+        ArgumentCaptor<Runnable> timeouts = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService, atLeastOnce()).schedule(timeouts.capture(), eq(30_000L), eq(TimeUnit.MILLISECONDS));
+        timeouts.getAllValues().forEach(Runnable::run);
+    }
+
+    private void givenCountry(String entityId, EidasCountryMetadataResolver resolver) throws Exception {
+        when(resolver.getEntityId()).thenReturn(entityId);
+        when(resolver.hasLoaded()).thenReturn(true);
+        when(resolver.getLastFailure()).thenReturn(Optional.empty());
+        when(resolver.resolveSingle(any())).thenReturn(mock(EntityDescriptor.class));
+        when(repository.getCountryMetadataResolver(entityId)).thenReturn(Optional.of(resolver));
+    }
+}
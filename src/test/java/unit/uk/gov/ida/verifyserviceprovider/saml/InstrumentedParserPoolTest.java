@@ -0,0 +1,92 @@
+package unit.uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.w3c.dom.Document;
+import uk.gov.ida.verifyserviceprovider.saml.InstrumentedParserPool;
+
+import javax.xml.parsers.DocumentBuilder;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InstrumentedParserPoolTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private MetricRegistry metricRegistry;
+    private InstrumentedParserPool parserPool;
+
+    @Before
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        parserPool = new InstrumentedParserPool("test", 2, metricRegistry);
+    }
+
+    @Test
+    public void shouldReuseReturnedBuilders() throws Exception {
+        DocumentBuilder builder = parserPool.getBuilder();
+        parserPool.returnBuilder(builder);
+
+        assertThat(parserPool.getBuilder()).isSameAs(builder);
+        assertThat(metricRegistry.timer("saml-parser-pool.test.misses").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotKeepMoreIdleBuildersThanTheMaximumPoolSize() throws Exception {
+        DocumentBuilder first = parserPool.getBuilder();
+        DocumentBuilder second = parserPool.getBuilder();
+        DocumentBuilder third = parserPool.getBuilder();
+
+        parserPool.returnBuilder(first);
+        parserPool.returnBuilder(second);
+        parserPool.returnBuilder(third);
+
+        assertThat(metricRegistry.getGauges().get("saml-parser-pool.test.idle").getValue()).isEqualTo(2);
+        assertThat(metricRegistry.timer("saml-parser-pool.test.misses").getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldReportEachPoolOnTheSameRegistrySeparately() throws Exception {
+        InstrumentedParserPool otherPool = new InstrumentedParserPool("other", 2, metricRegistry);
+        otherPool.returnBuilder(otherPool.getBuilder());
+
+        assertThat(metricRegistry.getGauges().get("saml-parser-pool.test.idle").getValue()).isEqualTo(0);
+        assertThat(metricRegistry.getGauges().get("saml-parser-pool.other.idle").getValue()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldParseNamespacedXml() throws Exception {
+        Document document = parserPool.parse(toInputStream("<saml2p:Response xmlns:saml2p=\"urn:oasis:names:tc:SAML:2.0:protocol\"/>"));
+
+        assertThat(document.getDocumentElement().getLocalName()).isEqualTo("Response");
+        assertThat(document.getDocumentElement().getNamespaceURI()).isEqualTo("urn:oasis:names:tc:SAML:2.0:protocol");
+    }
+
+    @Test
+    public void shouldRejectDocumentsWithADoctype() throws Exception {
+        expectedException.expect(XMLParserException.class);
+        parserPool.parse(toInputStream("<!DOCTYPE foo [<!ENTITY bar \"baz\">]><foo>&bar;</foo>"));
+    }
+
+    @Test
+    public void shouldReturnBuilderToThePoolWhenParsingFails() throws Exception {
+        try {
+            parserPool.parse(toInputStream("<unclosed>"));
+        } catch (XMLParserException e) {
+            // expected
+        }
+
+        assertThat(metricRegistry.getGauges().get("saml-parser-pool.test.idle").getValue()).isEqualTo(1);
+    }
+
+    private static ByteArrayInputStream toInputStream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,83 @@
+package unit.uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.security.credential.BasicCredential;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCriterion;
+import org.opensaml.xmlsec.keyinfo.KeyInfoSupport;
+import org.opensaml.xmlsec.signature.KeyInfo;
+import uk.gov.ida.saml.core.IdaSamlBootstrap;
+import uk.gov.ida.verifyserviceprovider.saml.KeyHintCredentialResolver;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeyHintCredentialResolverTest {
+
+    private static Credential primary;
+    private static Credential secondary;
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        IdaSamlBootstrap.bootstrap();
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        primary = credential(keyPairGenerator.generateKeyPair());
+        secondary = credential(keyPairGenerator.generateKeyPair());
+    }
+
+    @Test
+    public void shouldSelectTheKeyNamedByAnRsaKeyValue() {
+        KeyHintCredentialResolver resolver = new KeyHintCredentialResolver(asList(primary, secondary), metricRegistry);
+
+        assertThat(resolver.resolve(criteriaFor(secondary))).containsExactly(secondary);
+        assertThat(resolver.resolve(criteriaFor(primary))).containsExactly(primary);
+
+        assertThat(metricRegistry.meter("decryption-keys.primary.selected").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.meter("decryption-keys.secondary.selected").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.meter("decryption-keys.trial-decryptions").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldTryEveryKeyWhenThereIsNoHint() {
+        KeyHintCredentialResolver resolver = new KeyHintCredentialResolver(asList(primary, secondary), metricRegistry);
+
+        assertThat(resolver.resolve(new CriteriaSet())).containsExactly(primary, secondary);
+        assertThat(resolver.resolve(new CriteriaSet(new KeyInfoCriterion(buildKeyInfo())))).containsExactly(primary, secondary);
+
+        assertThat(metricRegistry.meter("decryption-keys.trial-decryptions").getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldTryEveryKeyWhenTheHintMatchesNone() {
+        KeyHintCredentialResolver resolver = new KeyHintCredentialResolver(asList(primary), metricRegistry);
+
+        assertThat(resolver.resolve(criteriaFor(secondary))).containsExactly(primary);
+        assertThat(metricRegistry.meter("decryption-keys.trial-decryptions").getCount()).isEqualTo(1);
+    }
+
+    private static CriteriaSet criteriaFor(Credential credential) {
+        KeyInfo keyInfo = buildKeyInfo();
+        KeyInfoSupport.addPublicKey(keyInfo, credential.getPublicKey());
+        return new CriteriaSet(new KeyInfoCriterion(keyInfo));
+    }
+
+    private static KeyInfo buildKeyInfo() {
+        return (KeyInfo) XMLObjectProviderRegistrySupport.getBuilderFactory()
+                .getBuilder(KeyInfo.DEFAULT_ELEMENT_NAME)
+                .buildObject(KeyInfo.DEFAULT_ELEMENT_NAME);
+    }
+
+    private static Credential credential(KeyPair keyPair) {
+        return new BasicCredential(keyPair.getPublic(), keyPair.getPrivate());
+    }
+}
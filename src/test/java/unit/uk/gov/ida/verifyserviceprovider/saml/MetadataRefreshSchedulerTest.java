@@ -0,0 +1,93 @@
+package unit.uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.util.Duration;
+import org.junit.After;
+import org.junit.Test;
+import uk.gov.ida.verifyserviceprovider.saml.MetadataRefreshScheduler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class MetadataRefreshSchedulerTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    private final MetadataRefreshScheduler refreshScheduler = new MetadataRefreshScheduler(executorService, Duration.milliseconds(0), metricRegistry);
+
+    @After
+    public void tearDown() {
+        refreshScheduler.cancel();
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void shouldRunRefreshesOnTheExecutorAndThenTheListeners() throws Exception {
+        CountDownLatch refreshed = new CountDownLatch(1);
+        refreshScheduler.addRefreshListener(refreshed::countDown);
+
+        AtomicReference<Thread> refreshThread = new AtomicReference<>();
+        refreshScheduler.schedule(() -> refreshThread.set(Thread.currentThread()), 0, TimeUnit.MILLISECONDS);
+
+        assertThat(refreshed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(refreshThread.get()).isNotNull().isNotEqualTo(Thread.currentThread());
+        assertThat(metricRegistry.timer("eidas-metadata-refresh.duration").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCountFailedRefreshesAndStillRunTheListeners() throws Exception {
+        CountDownLatch refreshed = new CountDownLatch(1);
+        refreshScheduler.addRefreshListener(refreshed::countDown);
+
+        refreshScheduler.schedule(() -> {
+            throw new RuntimeException("trust anchor unavailable");
+        }, 0, TimeUnit.MILLISECONDS);
+
+        assertThat(refreshed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(metricRegistry.meter("eidas-metadata-refresh.failures").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDelayEachRefreshByUpToTheJitter() {
+        ScheduledExecutorService mockExecutorService = mock(ScheduledExecutorService.class);
+        doReturn(mock(ScheduledFuture.class)).when(mockExecutorService).schedule(any(Runnable.class), anyLong(), any());
+        MetadataRefreshScheduler jitteringScheduler = new MetadataRefreshScheduler(mockExecutorService, Duration.seconds(10), metricRegistry);
+
+        jitteringScheduler.schedule(() -> { }, 1, TimeUnit.SECONDS);
+
+        verify(mockExecutorService).schedule(any(Runnable.class), longThat(delay -> delay >= 1000 && delay <= 11000), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldCancelPendingRefreshesWhenCancelled() {
+        ScheduledExecutorService mockExecutorService = mock(ScheduledExecutorService.class);
+        ScheduledFuture<?> oneOff = mock(ScheduledFuture.class);
+        ScheduledFuture<?> periodic = mock(ScheduledFuture.class);
+        doReturn(oneOff).when(mockExecutorService).schedule(any(Runnable.class), anyLong(), any());
+        doReturn(periodic).when(mockExecutorService).scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(), any());
+        MetadataRefreshScheduler cancellableScheduler = new MetadataRefreshScheduler(mockExecutorService, Duration.seconds(0), metricRegistry);
+        cancellableScheduler.schedule(() -> { }, 1, TimeUnit.MINUTES);
+        cancellableScheduler.scheduleWithFixedDelay(() -> { }, 1, 1, TimeUnit.MINUTES);
+
+        cancellableScheduler.cancel();
+
+        verify(oneOff).cancel(false);
+        verify(periodic).cancel(false);
+        assertThatThrownBy(() -> cancellableScheduler.schedule(() -> { }, 0, TimeUnit.MILLISECONDS))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
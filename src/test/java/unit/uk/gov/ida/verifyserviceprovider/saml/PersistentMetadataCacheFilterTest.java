@@ -0,0 +1,114 @@
+package unit.uk.gov.ida.verifyserviceprovider.saml;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.io.ByteStreams;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import uk.gov.ida.verifyserviceprovider.saml.MetadataDiskCache;
+import uk.gov.ida.verifyserviceprovider.saml.PersistentMetadataCacheFilter;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PersistentMetadataCacheFilterTest {
+
+    private static final URI METADATA_URI = URI.create("https://country.example.com/metadata");
+    private static final byte[] METADATA = "<EntityDescriptor/>".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final ClientRequestContext requestContext = mock(ClientRequestContext.class);
+    private final Runnable onCacheHit = mock(Runnable.class);
+    private MetadataDiskCache metadataDiskCache;
+    private PersistentMetadataCacheFilter filter;
+
+    @Before
+    public void setUp() {
+        metadataDiskCache = new MetadataDiskCache(temporaryFolder.getRoot().toPath().resolve("metadata"));
+        filter = new PersistentMetadataCacheFilter(metadataDiskCache, onCacheHit, metricRegistry);
+        when(requestContext.getMethod()).thenReturn("GET");
+        when(requestContext.getUri()).thenReturn(METADATA_URI);
+    }
+
+    @Test
+    public void shouldCacheFetchedDocumentsAndStillPassThemOn() throws Exception {
+        ClientResponseContext responseContext = okResponse();
+
+        filter.filter(requestContext, responseContext);
+
+        ArgumentCaptor<InputStream> entityStream = ArgumentCaptor.forClass(InputStream.class);
+        verify(responseContext).setEntityStream(entityStream.capture());
+        assertThat(ByteStreams.toByteArray(entityStream.getValue())).isEqualTo(METADATA);
+        assertThat(metadataDiskCache.read(METADATA_URI)).hasValueSatisfying(cached -> assertThat(cached).isEqualTo(METADATA));
+        assertThat(metricRegistry.meter("metadata-disk-cache.writes").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldOnlyAnswerTheFirstRequestFromTheCache() {
+        metadataDiskCache.write(METADATA_URI, METADATA);
+
+        filter.filter(requestContext);
+        filter.filter(requestContext);
+
+        ArgumentCaptor<Response> cachedResponse = ArgumentCaptor.forClass(Response.class);
+        verify(requestContext).abortWith(cachedResponse.capture());
+        assertThat(cachedResponse.getValue().getStatus()).isEqualTo(200);
+        assertThat(cachedResponse.getValue().getEntity()).isEqualTo(METADATA);
+        assertThat(metricRegistry.meter("metadata-disk-cache.hits").getCount()).isEqualTo(1);
+        verify(onCacheHit).run();
+    }
+
+    @Test
+    public void shouldGoToTheNetworkWhenNothingIsCached() {
+        filter.filter(requestContext);
+
+        verify(requestContext, never()).abortWith(any());
+        verify(onCacheHit, never()).run();
+    }
+
+    @Test
+    public void shouldNotCacheUnsuccessfulResponses() throws Exception {
+        ClientResponseContext responseContext = okResponse();
+        when(responseContext.getStatus()).thenReturn(503);
+
+        filter.filter(requestContext, responseContext);
+
+        assertThat(metadataDiskCache.read(METADATA_URI)).isEmpty();
+    }
+
+    @Test
+    public void shouldReplaceThePreviousCopyWithoutLeavingTemporaryFiles() {
+        metadataDiskCache.write(METADATA_URI, "old".getBytes(StandardCharsets.UTF_8));
+        metadataDiskCache.write(METADATA_URI, METADATA);
+
+        File[] cachedFiles = temporaryFolder.getRoot().toPath().resolve("metadata").toFile().listFiles();
+        assertThat(cachedFiles).hasSize(1);
+        assertThat(metadataDiskCache.read(METADATA_URI)).hasValueSatisfying(cached -> assertThat(cached).isEqualTo(METADATA));
+    }
+
+    private ClientResponseContext okResponse() {
+        ClientResponseContext responseContext = mock(ClientResponseContext.class);
+        when(responseContext.getStatus()).thenReturn(200);
+        when(responseContext.hasEntity()).thenReturn(true);
+        when(responseContext.getEntityStream()).thenReturn(new ByteArrayInputStream(METADATA));
+        return responseContext;
+    }
+}
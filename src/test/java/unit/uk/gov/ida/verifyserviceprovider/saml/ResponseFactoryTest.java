@@ -1,23 +1,27 @@
 package unit.uk.gov.ida.verifyserviceprovider.saml;
 
+import com.codahale.metrics.MetricRegistry;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.opensaml.saml.saml2.core.Response;
 import uk.gov.ida.saml.core.validation.SamlTransformationErrorException;
-import uk.gov.ida.saml.deserializers.StringToOpenSamlObjectTransformer;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
 import uk.gov.ida.verifyserviceprovider.factories.saml.ResponseFactory;
+import uk.gov.ida.verifyserviceprovider.saml.InstrumentedParserPool;
 
 import java.util.Base64;
 import java.util.Collections;
+import java.util.function.Function;
 
 public class ResponseFactoryTest {
 
     @Rule
     public ExpectedException expectedException = ExpectedException.none();
 
-    private StringToOpenSamlObjectTransformer<Response> stringToResponseTransformer = ResponseFactory.createStringToResponseTransformer();
+    private Function<String, Response> stringToResponseTransformer = ResponseFactory.createStringToResponseTransformer(
+        new InstrumentedParserPool("test", 2, new MetricRegistry())
+    );
 
     @Test
     public void shouldNotAllowNullSamlResponse() {
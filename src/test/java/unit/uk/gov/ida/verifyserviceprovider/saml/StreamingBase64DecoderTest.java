@@ -0,0 +1,55 @@
+package unit.uk.gov.ida.verifyserviceprovider.saml;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+import uk.gov.ida.verifyserviceprovider.saml.StreamingBase64Decoder;
+
+import java.util.Base64;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StreamingBase64DecoderTest {
+
+    @Test
+    public void shouldDecodeTheSameBytesAsTheJdkDecoder() throws Exception {
+        Random random = new Random(1234);
+        for (int length = 0; length < 300; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            String encoded = Base64.getEncoder().encodeToString(bytes);
+
+            assertThat(ByteStreams.toByteArray(StreamingBase64Decoder.decode(encoded))).isEqualTo(bytes);
+        }
+    }
+
+    @Test
+    public void shouldIgnoreLineBreaks() throws Exception {
+        byte[] bytes = new byte[1000];
+        new Random(5678).nextBytes(bytes);
+        String encoded = Base64.getMimeEncoder().encodeToString(bytes);
+
+        assertThat(encoded).contains("\r\n");
+        assertThat(ByteStreams.toByteArray(StreamingBase64Decoder.decode(encoded))).isEqualTo(bytes);
+    }
+
+    @Test
+    public void shouldNotAcceptCharactersOutsideTheBase64Alphabet() {
+        assertNotBase64("not-encoded-string");
+        assertNotBase64("YWJj_A==");
+    }
+
+    @Test
+    public void shouldNotAcceptMisplacedOrIncompletePadding() {
+        assertNotBase64("YW=j");
+        assertNotBase64("YWJjZA=");
+        assertNotBase64("YWJjZ===");
+        assertNotBase64("YWJjZ");
+    }
+
+    private static void assertNotBase64(String input) {
+        assertThatThrownBy(() -> ByteStreams.toByteArray(StreamingBase64Decoder.decode(input)))
+                .isInstanceOf(StreamingBase64Decoder.NotBase64Exception.class);
+    }
+}
@@ -1,5 +1,6 @@
 package unit.uk.gov.ida.verifyserviceprovider.saml;
 
+import org.apache.commons.codec.binary.Hex;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -10,8 +11,11 @@ import uk.gov.ida.saml.core.domain.PersistentId;
 import uk.gov.ida.verifyserviceprovider.exceptions.AuthnContextMissingException;
 import uk.gov.ida.verifyserviceprovider.factories.saml.UserIdHashFactory;
 
+import java.security.MessageDigest;
+import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.Random;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static uk.gov.ida.saml.core.test.builders.PersistentIdBuilder.aPersistentId;
@@ -50,6 +54,38 @@ public class UserIdHashFactoryTest {
         assertThat(numberOfUniqueGeneratedHashedPids).isEqualTo(5);
     }
 
+    @Test
+    public void shouldProduceTheSameHashesAsMessageFormatAndStringGetBytes() throws Exception {
+        Random random = new Random(20181018L);
+
+        for (int i = 0; i < 20000; i++) {
+            String issuerId = randomString(random);
+            String persistentId = randomString(random);
+            String hashingEntityId = randomString(random);
+            AuthnContext authnContext = AuthnContext.values()[random.nextInt(AuthnContext.values().length)];
+
+            String hashedId = new UserIdHashFactory(hashingEntityId).hashId(issuerId, persistentId, Optional.of(authnContext));
+
+            assertThat(hashedId)
+                .describedAs("hash of issuer %s, hashing entity %s, persistent id %s at %s", issuerId, hashingEntityId, persistentId, authnContext)
+                .isEqualTo(referenceHash(issuerId, hashingEntityId, persistentId, authnContext));
+        }
+    }
+
+    @Test
+    public void shouldHashIdsLongerThanTheReusedBuffers() throws Exception {
+        StringBuilder persistentId = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            persistentId.append("\u00e9\u4e2d\ud83d\ude00");
+        }
+
+        String hashedId = userIdHashFactory.hashId("partner", persistentId.toString(), Optional.of(AuthnContext.LEVEL_1));
+
+        assertThat(hashedId).isEqualTo(referenceHash("partner", HASHING_ENTITY_ID, persistentId.toString(), AuthnContext.LEVEL_1));
+        assertThat(userIdHashFactory.hashId("partner", aPersistentId().build().getNameId(), Optional.of(AuthnContext.LEVEL_2)))
+            .isEqualTo("a5fbea969c3837a712cbe9e188804796828f369106478e623a436fa07e8fd298");
+    }
+
     @Test
     public void shouldThrowErrorWhenAuthnContextAbsent() {
         exception.expect(AuthnContextMissingException.class);
@@ -57,4 +93,38 @@ public class UserIdHashFactoryTest {
 
         userIdHashFactory.hashId("", "pid", Optional.empty());
     }
+
+    private static String referenceHash(String issuerId, String hashingEntityId, String persistentId, AuthnContext authnContext) throws Exception {
+        String toHash = authnContext.equals(AuthnContext.LEVEL_2)
+            ? MessageFormat.format("{0}{1}{2}", issuerId, hashingEntityId, persistentId)
+            : MessageFormat.format("{0}{1}{2}{3}", issuerId, hashingEntityId, persistentId, authnContext.name());
+        return Hex.encodeHexString(MessageDigest.getInstance("SHA-256").digest(toHash.getBytes("UTF-8")));
+    }
+
+    private static String randomString(Random random) {
+        int length = random.nextInt(100);
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(6)) {
+                case 0:
+                    builder.append((char) (0x20 + random.nextInt(0x5f)));
+                    break;
+                case 1:
+                    builder.append((char) (0x80 + random.nextInt(0x780)));
+                    break;
+                case 2:
+                    builder.append((char) (0x800 + random.nextInt(0xd000)));
+                    break;
+                case 3:
+                    builder.appendCodePoint(0x10000 + random.nextInt(0x100000));
+                    break;
+                case 4:
+                    builder.append((char) (Character.MIN_SURROGATE + random.nextInt(0x800)));
+                    break;
+                default:
+                    builder.append("{0}'");
+            }
+        }
+        return builder.toString();
+    }
 }
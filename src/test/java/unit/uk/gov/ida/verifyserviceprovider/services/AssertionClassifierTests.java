@@ -8,7 +8,13 @@ import uk.gov.ida.saml.core.extensions.IdaAuthnContext;
 import uk.gov.ida.saml.core.test.builders.AssertionBuilder;
 import uk.gov.ida.verifyserviceprovider.services.AssertionClassifier;
 import uk.gov.ida.verifyserviceprovider.services.AssertionClassifier.AssertionType;
+import uk.gov.ida.verifyserviceprovider.services.ClassifiedAssertions;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
 import static org.assertj.core.api.Java6Assertions.assertThat;
+import static uk.gov.ida.saml.core.test.TestEntityIds.STUB_COUNTRY_ONE;
 import static uk.gov.ida.saml.core.test.TestEntityIds.STUB_IDP_ONE;
 import static uk.gov.ida.saml.core.test.builders.AssertionBuilder.anAssertion;
 import static uk.gov.ida.saml.core.test.builders.AttributeStatementBuilder.anAttributeStatement;
@@ -37,6 +43,36 @@ public class AssertionClassifierTests {
         assertThat(assertionClassifier.classifyAssertion(authnStatementAssertion)).isEqualTo(AssertionType.AUTHN_ASSERTION);
     }
 
+    @Test
+    public void shouldSortAssertionsIntoAuthnMdsAndCountryAssertionsInOnePass() {
+        Assertion mdsAssertion = aMatchingDatasetAssertion("requestId").buildUnencrypted();
+        Assertion authnStatementAssertion = anAuthnStatementAssertion(IdaAuthnContext.LEVEL_2_AUTHN_CTX, "requestId").buildUnencrypted();
+        Assertion countryAssertion = anAuthnStatementAssertion(IdaAuthnContext.LEVEL_2_AUTHN_CTX, "requestId")
+                .withIssuer(anIssuer().withIssuerId(STUB_COUNTRY_ONE).build())
+                .buildUnencrypted();
+        List<Assertion> assertions = asList(mdsAssertion, countryAssertion, authnStatementAssertion);
+
+        ClassifiedAssertions classifiedAssertions = new AssertionClassifier().classifyAssertions(assertions, STUB_COUNTRY_ONE::equals);
+
+        assertThat(classifiedAssertions.getAssertions()).isSameAs(assertions);
+        assertThat(classifiedAssertions.getAuthnAssertions()).containsExactly(authnStatementAssertion);
+        assertThat(classifiedAssertions.getMdsAssertions()).containsExactly(mdsAssertion);
+        assertThat(classifiedAssertions.getCountryAssertions()).containsExactly(countryAssertion);
+        assertThat(classifiedAssertions.hasCountryAssertions()).isTrue();
+    }
+
+    @Test
+    public void shouldNotFindCountryAssertionsWithoutACountryMatcher() {
+        Assertion mdsAssertion = aMatchingDatasetAssertion("requestId").buildUnencrypted();
+        Assertion authnStatementAssertion = anAuthnStatementAssertion(IdaAuthnContext.LEVEL_2_AUTHN_CTX, "requestId").buildUnencrypted();
+
+        ClassifiedAssertions classifiedAssertions = new AssertionClassifier().classifyAssertions(asList(authnStatementAssertion, mdsAssertion));
+
+        assertThat(classifiedAssertions.getAuthnAssertions()).containsExactly(authnStatementAssertion);
+        assertThat(classifiedAssertions.getMdsAssertions()).containsExactly(mdsAssertion);
+        assertThat(classifiedAssertions.hasCountryAssertions()).isFalse();
+    }
+
     public static AssertionBuilder aMatchingDatasetAssertion(String requestId) {
         return anAssertion()
                 .withId("mds-assertion")
@@ -134,6 +134,27 @@ public class AttributeTranslationServiceTests {
         assertThat(result.getAddressHistory().size()).isEqualTo(2);
     }
 
+    @Test
+    public void shouldUseTheFirstAttributeWhenAnAttributeIsRepeated() {
+        AttributeStatement attributeStatement = anAttributeStatement()
+            .addAttribute(new SimpleStringAttributeBuilder()
+                .withName("firstname")
+                .withSimpleStringValue("Joe")
+                .build())
+            .addAttribute(createVerifiedAttribute("firstname_verified", true))
+            .addAttribute(new SimpleStringAttributeBuilder()
+                .withName("firstname")
+                .withSimpleStringValue("Bob")
+                .build())
+            .addAttribute(createVerifiedAttribute("firstname_verified", false))
+            .build();
+
+        Attributes result = AttributeTranslationService.translateAttributes(attributeStatement);
+
+        assertThat(result.getFirstName().getValue()).isEqualTo("Joe");
+        assertThat(result.getFirstName().isVerified()).isTrue();
+    }
+
     @Test
     public void shouldIncludeEmptyAttributes() {
         AttributeStatement attributeStatement = anAttributeStatement()
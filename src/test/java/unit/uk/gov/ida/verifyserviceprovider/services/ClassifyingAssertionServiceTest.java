@@ -2,10 +2,14 @@ package unit.uk.gov.ida.verifyserviceprovider.services;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.AuthnStatement;
+import org.opensaml.saml.saml2.core.Issuer;
 import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
 import uk.gov.ida.verifyserviceprovider.dto.TranslatedNonMatchingResponseBody;
+import uk.gov.ida.verifyserviceprovider.services.ClassifiedAssertions;
 import uk.gov.ida.verifyserviceprovider.services.ClassifyingAssertionService;
 import uk.gov.ida.verifyserviceprovider.services.EidasAssertionService;
 import uk.gov.ida.verifyserviceprovider.services.IdpAssertionService;
@@ -13,9 +17,13 @@ import uk.gov.ida.verifyserviceprovider.services.IdpAssertionService;
 import java.util.Arrays;
 import java.util.List;
 
+import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Java6Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -42,16 +50,16 @@ public class ClassifyingAssertionServiceTest {
 
     @Test
     public void shouldUseIdpAssertionServiceIfNoAssertionIsACountryAttributeQuery() {
-        Assertion assertion1 = mock(Assertion.class);
-        Assertion assertion2 = mock(Assertion.class);
+        Assertion assertion1 = anAssertionIssuedBy("idp");
+        Assertion assertion2 = anAssertionIssuedBy("idp");
         List<Assertion> assertions = Arrays.asList(assertion1, assertion2);
         String expectedInResponseTo = "somesuch";
         LevelOfAssurance loa = LevelOfAssurance.LEVEL_2;
         String entityId = "someEntityId";
         TranslatedNonMatchingResponseBody expectedResult = mock(TranslatedNonMatchingResponseBody.class);
 
-        when(eidasAssertionService.isCountryAssertion(any())).thenReturn(false);
-        when(idpAssertionService.translateSuccessResponse(assertions, expectedInResponseTo, loa, entityId)).thenReturn(expectedResult);
+        when(eidasAssertionService.getCountryIssuerMatcher()).thenReturn("country"::equals);
+        when(idpAssertionService.translateSuccessResponse(any(ClassifiedAssertions.class), eq(expectedInResponseTo), eq(loa), eq(entityId))).thenReturn(expectedResult);
 
 
         TranslatedNonMatchingResponseBody actualResult = classifyingAssertionService.translateSuccessResponse(assertions, expectedInResponseTo, loa, entityId);
@@ -62,17 +70,16 @@ public class ClassifyingAssertionServiceTest {
 
     @Test
     public void shouldUseEidasAssertionServiceIfAnyAssertionIsACountryAttributeQuery() {
-        Assertion assertion1 = mock(Assertion.class);
-        Assertion assertion2 = mock(Assertion.class);
+        Assertion assertion1 = anAssertionIssuedBy("idp");
+        Assertion assertion2 = anAssertionIssuedBy("country");
         List<Assertion> assertions = Arrays.asList(assertion1, assertion2);
         String expectedInResponseTo = "somesuch";
         LevelOfAssurance loa = LevelOfAssurance.LEVEL_2;
         String entityId = "someEntityId";
         TranslatedNonMatchingResponseBody expectedResult = mock(TranslatedNonMatchingResponseBody.class);
 
-        when(eidasAssertionService.isCountryAssertion(assertion1)).thenReturn(false);
-        when(eidasAssertionService.isCountryAssertion(assertion2)).thenReturn(true);
-        when(eidasAssertionService.translateSuccessResponse(assertions, expectedInResponseTo, loa, entityId)).thenReturn(expectedResult);
+        when(eidasAssertionService.getCountryIssuerMatcher()).thenReturn("country"::equals);
+        when(eidasAssertionService.translateSuccessResponse(any(ClassifiedAssertions.class), eq(expectedInResponseTo), eq(loa), eq(entityId))).thenReturn(expectedResult);
 
 
         TranslatedNonMatchingResponseBody actualResult = classifyingAssertionService.translateSuccessResponse(assertions, expectedInResponseTo, loa, entityId);
@@ -80,4 +87,31 @@ public class ClassifyingAssertionServiceTest {
 
         assertThat(actualResult).isEqualTo(expectedResult);
     }
+
+    @Test
+    public void shouldClassifyTheAssertionsOnlyOnce() {
+        Assertion authnAssertion = anAssertionIssuedBy("idp");
+        when(authnAssertion.getAuthnStatements()).thenReturn(singletonList(mock(AuthnStatement.class)));
+        Assertion mdsAssertion = anAssertionIssuedBy("idp");
+        List<Assertion> assertions = Arrays.asList(authnAssertion, mdsAssertion);
+
+        when(eidasAssertionService.getCountryIssuerMatcher()).thenReturn("country"::equals);
+
+        classifyingAssertionService.translateSuccessResponse(assertions, "somesuch", LevelOfAssurance.LEVEL_2, "someEntityId");
+
+        ArgumentCaptor<ClassifiedAssertions> classifiedAssertions = ArgumentCaptor.forClass(ClassifiedAssertions.class);
+        verify(eidasAssertionService, times(1)).getCountryIssuerMatcher();
+        verify(idpAssertionService).translateSuccessResponse(classifiedAssertions.capture(), eq("somesuch"), eq(LevelOfAssurance.LEVEL_2), eq("someEntityId"));
+        assertThat(classifiedAssertions.getValue().getAuthnAssertions()).containsExactly(authnAssertion);
+        assertThat(classifiedAssertions.getValue().getMdsAssertions()).containsExactly(mdsAssertion);
+        assertThat(classifiedAssertions.getValue().hasCountryAssertions()).isFalse();
+    }
+
+    private static Assertion anAssertionIssuedBy(String issuerId) {
+        Issuer issuer = mock(Issuer.class);
+        when(issuer.getValue()).thenReturn(issuerId);
+        Assertion assertion = mock(Assertion.class);
+        when(assertion.getIssuer()).thenReturn(issuer);
+        return assertion;
+    }
 }
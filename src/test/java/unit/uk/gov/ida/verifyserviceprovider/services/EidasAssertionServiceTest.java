@@ -1,21 +1,25 @@
 package unit.uk.gov.ida.verifyserviceprovider.services;
 
+import com.codahale.metrics.MetricRegistry;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.opensaml.saml.saml2.core.Assertion;
 import org.opensaml.saml.saml2.core.Subject;
+import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
 import uk.gov.ida.saml.core.IdaSamlBootstrap;
 import uk.gov.ida.saml.core.test.builders.AssertionBuilder;
 import uk.gov.ida.saml.core.transformers.EidasMatchingDatasetUnmarshaller;
-import uk.gov.ida.saml.metadata.EidasMetadataResolverRepository;
 import uk.gov.ida.saml.security.SamlAssertionsSignatureValidator;
 import uk.gov.ida.verifyserviceprovider.dto.LevelOfAssurance;
 import uk.gov.ida.verifyserviceprovider.dto.NonMatchingAttributes;
 import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
 import uk.gov.ida.verifyserviceprovider.factories.saml.SignatureValidatorFactory;
 import uk.gov.ida.verifyserviceprovider.mappers.MatchingDatasetToNonMatchingAttributesMapper;
+import uk.gov.ida.verifyserviceprovider.saml.CountrySignatureValidators;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryIssuers;
+import uk.gov.ida.verifyserviceprovider.saml.EidasCountryMetadataRepository;
 import uk.gov.ida.verifyserviceprovider.services.EidasAssertionService;
 import uk.gov.ida.verifyserviceprovider.validators.ConditionsValidator;
 import uk.gov.ida.verifyserviceprovider.validators.InstantValidator;
@@ -65,16 +69,20 @@ public class EidasAssertionServiceTest {
     @Mock
     private LevelOfAssuranceValidator levelOfAssuranceValidator;
     @Mock
-    private EidasMetadataResolverRepository metadataResolverRepository;
+    private EidasCountryMetadataRepository metadataRepository;
     @Mock
     private SignatureValidatorFactory signatureValidatorFactory;
     @Mock
     private SamlAssertionsSignatureValidator samlAssertionsSignatureValidator;
+    @Mock
+    private ExplicitKeySignatureTrustEngine countrySignatureTrustEngine;
+    private EidasCountryIssuers countryIssuers;
 
     @Before
     public void setUp() {
         IdaSamlBootstrap.bootstrap();
         initMocks(this);
+        countryIssuers = new EidasCountryIssuers(metadataRepository::getResolverEntityIds, new MetricRegistry());
         eidasAssertionService = new EidasAssertionService(
             true,
             subjectValidator,
@@ -83,13 +91,18 @@ public class EidasAssertionServiceTest {
             instantValidator,
             conditionsValidator,
             levelOfAssuranceValidator,
-            Optional.of(metadataResolverRepository),
-            signatureValidatorFactory);
+            countryIssuers,
+            new CountrySignatureValidators(
+                metadataRepository::getSignatureTrustEngine,
+                signatureValidatorFactory,
+                countryIssuers::getGeneration,
+                new MetricRegistry()));
         doNothing().when(instantValidator).validate(any(), any());
         doNothing().when(subjectValidator).validate(any(), any());
         doNothing().when(conditionsValidator).validate(any(), any());
         doNothing().when(levelOfAssuranceValidator).validate(any(), any());
-        when(metadataResolverRepository.getResolverEntityIds()).thenReturn(asList(STUB_COUNTRY_ONE));
+        when(metadataRepository.getResolverEntityIds()).thenReturn(asList(STUB_COUNTRY_ONE));
+        when(metadataRepository.getSignatureTrustEngine(any())).thenReturn(Optional.of(countrySignatureTrustEngine));
         when(signatureValidatorFactory.getSignatureValidator(any())).thenReturn(Optional.of(samlAssertionsSignatureValidator));
         when(samlAssertionsSignatureValidator.validate(any(), any())).thenReturn(null);
         when(mdsMapper.mapToNonMatchingAttributes(any())).thenReturn(mock(NonMatchingAttributes.class));
@@ -107,6 +120,17 @@ public class EidasAssertionServiceTest {
         verify(levelOfAssuranceValidator, times(1)).validate(any(), any());
     }
 
+    @Test
+    public void shouldReuseTheSignatureValidatorForACountry() {
+        eidasAssertionService.translateSuccessResponse(singletonList(
+            anAssertionWithAuthnStatement(EIDAS_LOA_SUBSTANTIAL, "requestId").buildUnencrypted()), "requestId", LevelOfAssurance.LEVEL_2, null);
+        eidasAssertionService.translateSuccessResponse(singletonList(
+            anAssertionWithAuthnStatement(EIDAS_LOA_SUBSTANTIAL, "requestId").buildUnencrypted()), "requestId", LevelOfAssurance.LEVEL_2, null);
+
+        verify(signatureValidatorFactory, times(1)).getSignatureValidator(any());
+        verify(samlAssertionsSignatureValidator, times(2)).validate(any(), any());
+    }
+
     @Test
     public void shouldTranslateEidasAssertion() {
         Assertion eidasAssertion = anAssertionWithAuthnStatement(EIDAS_LOA_SUBSTANTIAL, "requestId").buildUnencrypted();
@@ -125,7 +149,8 @@ public class EidasAssertionServiceTest {
     @Test
     public void shouldCorrectlyIdentifyCountryAssertions() {
         List<String> resolverEntityIds = asList("ID1", "ID2");
-        when(metadataResolverRepository.getResolverEntityIds()).thenReturn(resolverEntityIds);
+        when(metadataRepository.getResolverEntityIds()).thenReturn(resolverEntityIds);
+        countryIssuers.refresh();
 
         Assertion countryAssertion = anAssertion().withIssuer(anIssuer().withIssuerId("ID1").build()).buildUnencrypted();
         Assertion idpAssertion = anAssertion().withIssuer(anIssuer().withIssuerId("ID3").build()).buildUnencrypted();
@@ -134,6 +159,20 @@ public class EidasAssertionServiceTest {
         assertThat(eidasAssertionService.isCountryAssertion(idpAssertion)).isFalse();
     }
 
+    @Test
+    public void shouldOnlySeeNewCountriesOnceTheCountryIssuersHaveBeenRefreshed() {
+        when(metadataRepository.getResolverEntityIds()).thenReturn(asList("ID1"));
+        countryIssuers.refresh();
+        Assertion newCountryAssertion = anAssertion().withIssuer(anIssuer().withIssuerId("ID2").build()).buildUnencrypted();
+
+        when(metadataRepository.getResolverEntityIds()).thenReturn(asList("ID1", "ID2"));
+        assertThat(eidasAssertionService.isCountryAssertion(newCountryAssertion)).isFalse();
+
+        countryIssuers.refresh();
+        assertThat(eidasAssertionService.isCountryAssertion(newCountryAssertion)).isTrue();
+        verify(metadataRepository, times(2)).getResolverEntityIds();
+    }
+
 
     private static AssertionBuilder anAssertionWithAuthnStatement(String authnContext, String inResponseTo) {
         return anAssertion()
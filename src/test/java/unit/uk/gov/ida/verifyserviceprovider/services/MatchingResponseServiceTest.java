@@ -1,5 +1,6 @@
 package unit.uk.gov.ida.verifyserviceprovider.services;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import org.joda.time.DateTime;
@@ -55,6 +56,7 @@ import java.util.List;
 import static common.uk.gov.ida.verifyserviceprovider.utils.SamlResponseHelper.createVerifiedAttribute;
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -99,6 +101,7 @@ public class MatchingResponseServiceTest {
     public ExpectedException expectedException = ExpectedException.none();
     private TestCredentialFactory encryptionCredentialFactory;
     private Credential testRpSigningCredential;
+    private MetricRegistry metricRegistry;
 
     @Before
     public void setUp() throws ComponentInitializationException, KeyException {
@@ -111,7 +114,8 @@ public class MatchingResponseServiceTest {
 
         hubMetadataResolver = mock(MetadataResolver.class);
 
-        ResponseFactory responseFactory = new ResponseFactory(keyPairs);
+        metricRegistry = new MetricRegistry();
+        ResponseFactory responseFactory = new ResponseFactory(keyPairs, metricRegistry);
         DateTimeComparator dateTimeComparator = new DateTimeComparator(Duration.standardSeconds(5));
         TimeRestrictionValidator timeRestrictionValidator = new TimeRestrictionValidator(dateTimeComparator);
 
@@ -162,6 +166,31 @@ public class MatchingResponseServiceTest {
         ));
     }
 
+    @Test
+    public void shouldRecordTimingsForEachStageOfTranslation() throws Exception {
+        EntityDescriptor entityDescriptor = createEntityDescriptorWithSigningCertificate(TEST_RP_PUBLIC_SIGNING_CERT);
+        when(hubMetadataResolver.resolve(any())).thenReturn(ImmutableList.of(entityDescriptor));
+
+        Status successStatus = aStatus().
+            withStatusCode(aStatusCode().withValue(StatusCode.SUCCESS).build())
+            .build();
+        Response response = signResponse(createNoAttributeResponseBuilder(successStatus), testRpSigningCredential);
+
+        responseService.convertTranslatedResponseBody(
+            responseToBase64StringTransformer.apply(response),
+            response.getInResponseTo(),
+            LevelOfAssurance.LEVEL_2,
+            VERIFY_SERVICE_PROVIDER_ENTITY_ID
+        );
+
+        assertThat(metricRegistry.timer("translate-response.matching.parse").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("translate-response.matching.response-signature-validation").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("translate-response.matching.decryption").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("translate-response.matching.translation").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("translate-response.matching.translation.SUCCESS_MATCH").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.histogram("translate-response.matching.assertion-count").getSnapshot().getMax()).isEqualTo(1);
+    }
+
     @Test
     public void shouldHandleAccountCreationSaml() throws Exception {
         EntityDescriptor entityDescriptor = createEntityDescriptorWithSigningCertificate(TEST_RP_PUBLIC_SIGNING_CERT);
@@ -328,6 +357,30 @@ public class MatchingResponseServiceTest {
         );
     }
 
+    @Test
+    public void shouldTimeTranslationsThatFail() throws Exception {
+        EntityDescriptor entityDescriptor = createEntityDescriptorWithSigningCertificate(TEST_RP_PUBLIC_SIGNING_CERT);
+        when(hubMetadataResolver.resolve(any())).thenReturn(ImmutableList.of(entityDescriptor));
+
+        Status unknownStatus = aStatus().
+            withStatusCode(
+                aStatusCode()
+                    .withValue(StatusCode.RESPONDER)
+                    .withSubStatusCode(aStatusCode().withValue("UNKNOWN").build())
+                    .build())
+            .build();
+        Response response = signResponse(createNoAttributeResponseBuilder(unknownStatus), testRpSigningCredential);
+
+        assertThatThrownBy(() -> responseService.convertTranslatedResponseBody(
+            responseToBase64StringTransformer.apply(response),
+            response.getInResponseTo(),
+            LevelOfAssurance.LEVEL_2,
+            VERIFY_SERVICE_PROVIDER_ENTITY_ID
+        )).isInstanceOf(SamlResponseValidationException.class);
+
+        assertThat(metricRegistry.timer("translate-response.matching.translation").getCount()).isEqualTo(1);
+    }
+
     @Test
     public void shouldFailValidationWhenMetadataDoesNotContainCorrectCertificate() throws Exception {
         expectedException.expect(SamlTransformationErrorException.class);
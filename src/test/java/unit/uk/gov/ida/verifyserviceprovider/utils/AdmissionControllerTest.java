@@ -0,0 +1,111 @@
+package unit.uk.gov.ida.verifyserviceprovider.utils;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+import uk.gov.ida.verifyserviceprovider.utils.AdmissionController;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdmissionControllerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final AdmissionController admissionController = new AdmissionController(100, 500, MILLISECONDS, 1, clock::get, metricRegistry);
+
+    @Test
+    public void shouldOnlyShedWorkThatHasWaitedAWholeIntervalWhenNotOverloaded() {
+        assertThat(admissionController.shouldShed(millis(200))).isFalse();
+        assertThat(admissionController.shouldShed(millis(600))).isTrue();
+        assertThat(admissionController.isOverloaded()).isFalse();
+    }
+
+    @Test
+    public void shouldNotBecomeOverloadedAfterAShortBurst() {
+        admissionController.shouldShed(millis(300));
+        admissionController.shouldShed(millis(50));
+        clock.set(millis(600));
+
+        assertThat(admissionController.shouldShed(millis(200))).isFalse();
+        assertThat(admissionController.isOverloaded()).isFalse();
+    }
+
+    @Test
+    public void shouldNotShedABriefBurstThatSpansTheEndOfAnInterval() {
+        clock.set(millis(450));
+        assertThat(admissionController.shouldShed(millis(200))).isFalse();
+        clock.set(millis(510));
+        assertThat(admissionController.shouldShed(millis(200))).isFalse();
+        clock.set(millis(560));
+        assertThat(admissionController.shouldShed(millis(50))).isFalse();
+        clock.set(millis(1000));
+        assertThat(admissionController.shouldShed(millis(200))).isFalse();
+
+        assertThat(admissionController.isOverloaded()).isFalse();
+        assertThat(metricRegistry.meter("admission-control.shed").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldOnlyBecomeOverloadedOnceWaitsHaveStayedAboveTheTargetForAWholeInterval() {
+        admissionController.shouldShed(millis(200));
+        clock.set(millis(499));
+        assertThat(admissionController.shouldShed(millis(200))).isFalse();
+        assertThat(admissionController.isOverloaded()).isFalse();
+
+        clock.set(millis(500));
+        assertThat(admissionController.shouldShed(millis(200))).isTrue();
+        assertThat(admissionController.isOverloaded()).isTrue();
+    }
+
+    @Test
+    public void shouldShedWorkThatHasWaitedLongerThanTheTargetOnceOverloaded() {
+        admissionController.shouldShed(millis(200));
+        clock.set(millis(600));
+
+        assertThat(admissionController.shouldShed(millis(200))).isTrue();
+        assertThat(admissionController.isOverloaded()).isTrue();
+        assertThat(admissionController.shouldShed(millis(50))).isFalse();
+        assertThat(metricRegistry.meter("admission-control.shed").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRecoverOnceTheShortestWaitIsBackUnderTheTarget() {
+        admissionController.shouldShed(millis(200));
+        clock.set(millis(600));
+        admissionController.shouldShed(millis(200));
+        admissionController.shouldShed(millis(50));
+        clock.set(millis(1200));
+
+        admissionController.shouldShed(millis(50));
+        assertThat(admissionController.isOverloaded()).isFalse();
+    }
+
+    @Test
+    public void shouldRefuseNewRequestsWhenTheWorkInFlightWouldTakeLongerThanTheTarget() {
+        admissionController.recordDuration(millis(40));
+        assertThat(admissionController.admit(10)).isTrue();
+
+        admissionController.shouldShed(millis(200));
+        clock.set(millis(600));
+        admissionController.shouldShed(millis(200));
+
+        assertThat(admissionController.admit(2)).isTrue();
+        assertThat(admissionController.admit(3)).isFalse();
+        assertThat(metricRegistry.meter("admission-control.refused").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldAdmitEverythingWhenDisabled() {
+        AdmissionController disabled = AdmissionController.disabled();
+
+        assertThat(disabled.shouldShed(TimeUnit.HOURS.toNanos(1))).isFalse();
+        assertThat(disabled.admit(Integer.MAX_VALUE)).isTrue();
+    }
+
+    private static long millis(long millis) {
+        return MILLISECONDS.toNanos(millis);
+    }
+}
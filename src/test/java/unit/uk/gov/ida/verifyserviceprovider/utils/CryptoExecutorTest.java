@@ -0,0 +1,141 @@
+package unit.uk.gov.ida.verifyserviceprovider.utils;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.jersey.errors.ErrorMessage;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import uk.gov.ida.verifyserviceprovider.utils.AdmissionController;
+import uk.gov.ida.verifyserviceprovider.utils.CryptoExecutor;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CryptoExecutorTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final List<Runnable> workQueue = new ArrayList<>();
+    private final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+
+    @Test
+    public void shouldResumeWithTheResponseOnceTheWorkHasRun() {
+        CryptoExecutor cryptoExecutor = new CryptoExecutor(workQueue::add, workQueue, metricRegistry);
+        Response response = Response.ok().build();
+
+        cryptoExecutor.resume(asyncResponse, () -> response);
+        assertThat(metricRegistry.getGauges().get("crypto-executor.queue-depth").getValue()).isEqualTo(1);
+
+        workQueue.remove(0).run();
+        verify(asyncResponse).resume(response);
+        assertThat(metricRegistry.timer("crypto-executor.wait").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("crypto-executor.duration").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldResumeWithTheExceptionTheWorkThrows() {
+        CryptoExecutor cryptoExecutor = new CryptoExecutor(Runnable::run, workQueue, metricRegistry);
+        IllegalStateException exception = new IllegalStateException("failed");
+
+        cryptoExecutor.resume(asyncResponse, () -> {
+            throw exception;
+        });
+
+        verify(asyncResponse).resume(exception);
+    }
+
+    @Test
+    public void shouldRespondWithServiceUnavailableWhenTheQueueIsFull() {
+        Executor fullExecutor = command -> {
+            throw new RejectedExecutionException();
+        };
+        CryptoExecutor cryptoExecutor = new CryptoExecutor(fullExecutor, workQueue, metricRegistry);
+
+        cryptoExecutor.resume(asyncResponse, () -> Response.ok().build());
+
+        ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+        verify(asyncResponse).resume(captor.capture());
+        Response response = captor.getValue();
+        assertThat(response.getStatus()).isEqualTo(Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        assertThat(response.getHeaderString(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(((ErrorMessage) response.getEntity()).getCode()).isEqualTo(503);
+        assertThat(metricRegistry.meter("crypto-executor.rejections").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldQueueEachItemOfABatchAndResumeWithTheResultsInOrder() {
+        CryptoExecutor cryptoExecutor = new CryptoExecutor(workQueue::add, workQueue, metricRegistry);
+        List<Callable<String>> items = asList(() -> "first", () -> "second", () -> "third");
+
+        cryptoExecutor.resumeAll(asyncResponse, items, results -> Response.ok(results).build());
+        assertThat(metricRegistry.getGauges().get("crypto-executor.queue-depth").getValue()).isEqualTo(3);
+
+        workQueue.remove(2).run();
+        workQueue.remove(0).run();
+        workQueue.remove(0).run();
+        ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+        verify(asyncResponse).resume(captor.capture());
+        assertThat(captor.getValue().getEntity()).isEqualTo(asList("first", "second", "third"));
+        assertThat(metricRegistry.timer("crypto-executor.wait").getCount()).isEqualTo(3);
+        assertThat(metricRegistry.timer("crypto-executor.duration").getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldAdmitABatchAsAsManyRequestsAsItHasItems() {
+        AdmissionController admissionController = mock(AdmissionController.class);
+        CryptoExecutor cryptoExecutor = new CryptoExecutor(workQueue::add, workQueue, admissionController, metricRegistry);
+        List<Callable<String>> items = asList(() -> "first", () -> "second", () -> "third");
+
+        cryptoExecutor.resumeAll(asyncResponse, items, results -> Response.ok(results).build());
+
+        verify(admissionController).admit(2);
+        ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+        verify(asyncResponse).resume(captor.capture());
+        assertThat(captor.getValue().getStatus()).isEqualTo(Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        assertThat(workQueue).isEmpty();
+    }
+
+    @Test
+    public void shouldRespondWithServiceUnavailableAndSkipTheRestOfTheBatchWhenAnItemIsShed() {
+        AdmissionController admissionController = mock(AdmissionController.class);
+        when(admissionController.admit(2)).thenReturn(true);
+        when(admissionController.shouldShed(anyLong())).thenReturn(true);
+        CryptoExecutor cryptoExecutor = new CryptoExecutor(workQueue::add, workQueue, admissionController, metricRegistry);
+        List<Callable<String>> items = asList(() -> "first", () -> "second", () -> "third");
+
+        cryptoExecutor.resumeAll(asyncResponse, items, results -> Response.ok(results).build());
+        workQueue.remove(0).run();
+        workQueue.remove(0).run();
+        workQueue.remove(0).run();
+
+        ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+        verify(asyncResponse).resume(captor.capture());
+        assertThat(captor.getValue().getStatus()).isEqualTo(Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        assertThat(metricRegistry.timer("crypto-executor.wait").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldResumeWithTheFirstExceptionAnItemOfABatchThrows() {
+        CryptoExecutor cryptoExecutor = new CryptoExecutor(Runnable::run, workQueue, metricRegistry);
+        IllegalStateException exception = new IllegalStateException("failed");
+        List<Callable<String>> items = asList(() -> "first", () -> {
+            throw exception;
+        }, () -> "third");
+
+        cryptoExecutor.resumeAll(asyncResponse, items, results -> Response.ok(results).build());
+
+        verify(asyncResponse).resume(exception);
+        assertThat(metricRegistry.timer("crypto-executor.duration").getCount()).isEqualTo(2);
+    }
+}
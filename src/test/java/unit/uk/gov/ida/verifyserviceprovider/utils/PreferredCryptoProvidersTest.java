@@ -0,0 +1,109 @@
+package unit.uk.gov.ida.verifyserviceprovider.utils;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Test;
+import uk.gov.ida.verifyserviceprovider.utils.PreferredCryptoProviders;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.Signature;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PreferredCryptoProvidersTest {
+
+    @After
+    public void tearDown() {
+        PreferredCryptoProviders.install(Collections.emptyMap());
+    }
+
+    @Test
+    public void shouldServePinnedAlgorithmsFromThePreferredProvider() throws Exception {
+        PreferredCryptoProviders.install(ImmutableMap.of("Signature.SHA256withRSA", "BC"));
+
+        KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        byte[] message = "message".getBytes(StandardCharsets.UTF_8);
+        Signature signer = Signature.getInstance("SHA256withRSA");
+        signer.initSign(keyPair.getPrivate());
+        signer.update(message);
+        byte[] signature = signer.sign();
+
+        Signature verifier = Signature.getInstance("SHA256withRSA", "SunRsaSign");
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(message);
+
+        assertThat(signer.getProvider().getName()).isEqualTo(PreferredCryptoProviders.PROVIDER_NAME);
+        assertThat(verifier.verify(signature)).isTrue();
+        assertThat(Security.getProvider("BC")).isNotNull();
+    }
+
+    @Test
+    public void shouldServePinnedCipherTransformationsFromThePreferredProvider() throws Exception {
+        // SunJCE only registers AES itself, leaving Cipher to set the mode and padding
+        PreferredCryptoProviders.install(ImmutableMap.of("Cipher.AES/GCM/NoPadding", "SunJCE"));
+
+        SecretKey key = KeyGenerator.getInstance("AES").generateKey();
+        GCMParameterSpec parameters = new GCMParameterSpec(128, new byte[12]);
+        byte[] message = "message".getBytes(StandardCharsets.UTF_8);
+        Cipher encrypter = Cipher.getInstance("AES/GCM/NoPadding");
+        encrypter.init(Cipher.ENCRYPT_MODE, key, parameters);
+        byte[] ciphertext = encrypter.doFinal(message);
+
+        Cipher decrypter = Cipher.getInstance("AES/GCM/NoPadding", "SunJCE");
+        decrypter.init(Cipher.DECRYPT_MODE, key, parameters);
+
+        assertThat(encrypter.getProvider().getName()).isEqualTo(PreferredCryptoProviders.PROVIDER_NAME);
+        assertThat(decrypter.doFinal(ciphertext)).isEqualTo(message);
+        assertThat(Cipher.getInstance("AES/CTR/NoPadding").getProvider().getName()).isNotEqualTo(PreferredCryptoProviders.PROVIDER_NAME);
+    }
+
+    @Test
+    public void shouldPinSeveralTransformationsOfTheSameCipherToOneProvider() throws Exception {
+        PreferredCryptoProviders.install(ImmutableMap.of(
+                "Cipher.AES/GCM/NoPadding", "SunJCE",
+                "Cipher.AES/CBC/PKCS5Padding", "SunJCE"
+        ));
+
+        assertThat(Cipher.getInstance("AES/GCM/NoPadding").getProvider().getName()).isEqualTo(PreferredCryptoProviders.PROVIDER_NAME);
+        assertThat(Cipher.getInstance("AES/CBC/PKCS5Padding").getProvider().getName()).isEqualTo(PreferredCryptoProviders.PROVIDER_NAME);
+    }
+
+    @Test
+    public void shouldLeaveOtherAlgorithmsWithTheirDefaultProvider() throws Exception {
+        PreferredCryptoProviders.install(ImmutableMap.of("Signature.SHA256withRSA", "SunRsaSign"));
+
+        assertThat(Cipher.getInstance("AES/GCM/NoPadding").getProvider().getName()).isNotEqualTo(PreferredCryptoProviders.PROVIDER_NAME);
+    }
+
+    @Test
+    public void shouldRemoveThePinnedAlgorithmsWhenNoneAreConfigured() throws Exception {
+        PreferredCryptoProviders.install(ImmutableMap.of("Signature.SHA256withRSA", "SunRsaSign"));
+        PreferredCryptoProviders.install(Collections.emptyMap());
+
+        assertThat(Security.getProvider(PreferredCryptoProviders.PROVIDER_NAME)).isNull();
+    }
+
+    @Test
+    public void shouldRejectUnknownProvidersAndAlgorithms() {
+        assertThatThrownBy(() -> PreferredCryptoProviders.install(ImmutableMap.of("Signature.SHA256withRSA", "NoSuchProvider")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PreferredCryptoProviders.install(ImmutableMap.of("Signature.NoSuchAlgorithm", "SunRsaSign")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PreferredCryptoProviders.install(ImmutableMap.of("SHA256withRSA", "SunRsaSign")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PreferredCryptoProviders.install(ImmutableMap.of("Cipher.AES/GCM", "SunJCE")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PreferredCryptoProviders.install(ImmutableMap.of("Cipher.NoSuchCipher/GCM/NoPadding", "SunJCE")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(Security.getProvider(PreferredCryptoProviders.PROVIDER_NAME)).isNull();
+    }
+}
@@ -0,0 +1,75 @@
+package unit.uk.gov.ida.verifyserviceprovider.validators;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+import uk.gov.ida.verifyserviceprovider.validators.ReplayCache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReplayCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    @Test
+    public void shouldRejectAnIdSeenBeforeItExpires() {
+        ReplayCache replayCache = new ReplayCache(100, now::get, metricRegistry);
+
+        assertThat(replayCache.recordIfAbsent("id", now.get() + 1000)).isTrue();
+        assertThat(replayCache.recordIfAbsent("id", now.get() + 1000)).isFalse();
+        assertThat(replayCache.recordIfAbsent("other-id", now.get() + 1000)).isTrue();
+
+        assertThat(metricRegistry.meter("replay-cache.rejections").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.getGauges().get("replay-cache.size").getValue()).isEqualTo(2L);
+    }
+
+    @Test
+    public void shouldAcceptAnIdAgainOnceItHasExpired() {
+        ReplayCache replayCache = new ReplayCache(100, now::get, metricRegistry);
+        replayCache.recordIfAbsent("id", now.get() + 1000);
+
+        now.addAndGet(1000);
+
+        assertThat(replayCache.recordIfAbsent("id", now.get() + 1000)).isTrue();
+        assertThat(replayCache.recordIfAbsent("id", now.get() + 1000)).isFalse();
+    }
+
+    @Test
+    public void shouldRememberManyIdsAcrossResizes() {
+        ReplayCache replayCache = new ReplayCache(1_000_000, now::get, metricRegistry);
+
+        for (int i = 0; i < 100_000; i++) {
+            assertThat(replayCache.recordIfAbsent("id-" + i, now.get() + 1000)).isTrue();
+        }
+        for (int i = 0; i < 100_000; i++) {
+            assertThat(replayCache.recordIfAbsent("id-" + i, now.get() + 1000)).isFalse();
+        }
+    }
+
+    @Test
+    public void shouldDropExpiredIdsToMakeRoomAndStopRememberingWhenFull() {
+        ReplayCache replayCache = new ReplayCache(64 * 64, now::get, metricRegistry);
+        for (int i = 0; i < 64 * 64 * 2; i++) {
+            replayCache.recordIfAbsent("id-" + i, now.get() + 1000);
+        }
+        assertThat(metricRegistry.meter("replay-cache.overflows").getCount()).isGreaterThan(0);
+
+        now.addAndGet(1000);
+        long overflows = metricRegistry.meter("replay-cache.overflows").getCount();
+        for (int i = 0; i < 64 * 16; i++) {
+            replayCache.recordIfAbsent("new-id-" + i, now.get() + 1000);
+        }
+
+        assertThat(metricRegistry.meter("replay-cache.overflows").getCount()).isEqualTo(overflows);
+    }
+
+    @Test
+    public void shouldRememberNothingWhenDisabled() {
+        ReplayCache replayCache = ReplayCache.disabled();
+
+        assertThat(replayCache.recordIfAbsent("id", System.currentTimeMillis() + 1000)).isTrue();
+        assertThat(replayCache.recordIfAbsent("id", System.currentTimeMillis() + 1000)).isTrue();
+    }
+}
@@ -0,0 +1,54 @@
+package unit.uk.gov.ida.verifyserviceprovider.validators;
+
+import com.codahale.metrics.MetricRegistry;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Response;
+import uk.gov.ida.verifyserviceprovider.exceptions.SamlResponseValidationException;
+import uk.gov.ida.verifyserviceprovider.validators.ReplayCache;
+import uk.gov.ida.verifyserviceprovider.validators.ReplayValidator;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReplayValidatorTest {
+
+    private final ReplayValidator replayValidator = new ReplayValidator(new ReplayCache(1000, new MetricRegistry()), Duration.standardSeconds(30));
+    private final Assertion assertion = mock(Assertion.class);
+
+    @Before
+    public void setUp() {
+        when(assertion.getID()).thenReturn("assertion-id");
+    }
+
+    @Test
+    public void shouldRejectAResponseThatHasAlreadyBeenTranslated() {
+        Response response = aResponse("response-id");
+        replayValidator.validate(response, singletonList(assertion));
+
+        assertThatThrownBy(() -> replayValidator.validate(response, singletonList(assertion)))
+                .isInstanceOf(SamlResponseValidationException.class)
+                .hasMessage("Response response-id has already been translated");
+    }
+
+    @Test
+    public void shouldRejectAnAssertionLiftedIntoAnotherResponse() {
+        replayValidator.validate(aResponse("response-id"), singletonList(assertion));
+
+        assertThatThrownBy(() -> replayValidator.validate(aResponse("another-response-id"), singletonList(assertion)))
+                .isInstanceOf(SamlResponseValidationException.class)
+                .hasMessage("Assertion assertion-id has already been translated");
+    }
+
+    private static Response aResponse(String id) {
+        Response response = mock(Response.class);
+        when(response.getID()).thenReturn(id);
+        when(response.getIssueInstant()).thenReturn(DateTime.now());
+        return response;
+    }
+}